@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
+/**
+ * Base class for {@link ExtendedScmHandler} implementations.
+ * <br>
+ * Implements the bulk change detection by calling the per module methods, concurrently if the
+ * parallelism (property "parallelism" passed to init()) is greater than 1.
+ * Implementations with a more efficient backend should override {@link #checkChanges(java.util.List)}.
+ * <br>
+ * This fallback doesn't support excluded directories, changes within nested modules count for the parent as well.
+ *
+ * @author Juergen Kofler
+ */
+public abstract class AbstractScmHandler implements ExtendedScmHandler {
+
+  private int parallelism = 1;
+
+  /**
+   * @return int - The max number of concurrent queries against the SCM
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Set the parallelism from the "parallelism" property (if present).
+   *
+   * @param properties Properties
+   */
+  protected void initParallelism(Properties properties) {
+    this.parallelism = 1;
+    if (properties != null && properties.getProperty("parallelism") != null) {
+      this.parallelism = Math.max(1, Integer.parseInt(properties.getProperty("parallelism")));
+    }
+  }
+
+  @Override
+  public Map<File, ScmModuleStatus> checkChanges(List<ScmModuleQuery> queries) {
+    List<Callable<ScmModuleStatus>> tasks = new ArrayList<>(queries.size());
+    for (final ScmModuleQuery query : queries) {
+      tasks.add(new Callable<ScmModuleStatus>() {
+        @Override
+        public ScmModuleStatus call() {
+          return checkChanges(query);
+        }
+      });
+    }
+
+    Map<File, ScmModuleStatus> result = new LinkedHashMap<>();
+    for (ScmModuleStatus status : ConcurrencyUtil.invokeAll(tasks, this.parallelism)) {
+      result.put(status.getModuleDirectory(), status);
+    }
+
+    return result;
+  }
+
+  private ScmModuleStatus checkChanges(ScmModuleQuery query) {
+    ScmModuleHistory history = new ScmModuleHistory(this, query.getModuleDirectory());
+    history.isChangedSince(query);
+    return history.toStatus();
+  }
+
+}
@@ -0,0 +1,81 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+
+/**
+ * Utility to execute independent tasks on a bounded thread pool
+ *
+ * @author Juergen Kofler
+ */
+public final class ConcurrencyUtil {
+
+  private ConcurrencyUtil() {}
+
+  /**
+   * Execute all given tasks with at most the given number of threads.
+   * <br>
+   * With a parallelism of 1 (or less) the tasks are executed one after another in the calling thread.
+   *
+   * @param tasks List&lt;Callable&lt;T&gt;&gt;
+   * @param parallelism int
+   * @return List&lt;T&gt; - The results in the same order as the tasks
+   * @throws NonSnapshotPluginException If a task failed (runtime exceptions of the tasks are rethrown as they are)
+   */
+  public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, int parallelism) {
+    List<T> results = new ArrayList<>(tasks.size());
+
+    if (parallelism <= 1 || tasks.size() <= 1) {
+      for (Callable<T> task : tasks) {
+        results.add(call(task));
+      }
+      return results;
+    }
+
+    ExecutorService executorService = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+    try {
+      List<Future<T>> futures = executorService.invokeAll(tasks);
+      for (Future<T> future : futures) {
+        results.add(get(future));
+      }
+      return results;
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NonSnapshotPluginException("Interrupted while waiting for concurrent tasks", e);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private static <T> T call(Callable<T> task) {
+    try {
+      return task.call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new NonSnapshotPluginException("Task failed: " + e.getMessage(), e);
+    }
+  }
+
+  private static <T> T get(Future<T> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new NonSnapshotPluginException("Task failed: " + e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+}
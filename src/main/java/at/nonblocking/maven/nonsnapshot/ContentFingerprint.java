@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+
+/**
+ * Deterministic fingerprint of the content of a module directory,
+ * calculated from the relative paths and content ids of the committed files.
+ * <br><br>
+ * Since the plugin itself changes versions within the POM file of the module, it is hashed without the version elements
+ * the plugin rewrites (see {@link at.nonblocking.maven.nonsnapshot.impl.PomFingerprintNormalizer}).
+ * Changes of all other versions (third party dependencies, plugins, properties) are detected.
+ * The fingerprint file itself is ignored.
+ * <br>
+ * The fingerprint a version has been assigned for is stored in the file {@value #FINGERPRINT_FILE} within the module directory.
+ *
+ * @author Juergen Kofler
+ */
+public class ContentFingerprint {
+
+  public static final String FINGERPRINT_FILE = "nonsnapshot.fingerprint";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private MessageDigest digest = createDigest();
+
+  /**
+   * Add an entry. Entries must be added in a deterministic order.
+   *
+   * @param path String - Path relative to the module directory
+   * @param contentId String - Hash of the content (or any other id that changes with the content)
+   */
+  public void add(String path, String contentId) {
+    this.digest.update((path + '\0' + contentId + '\n').getBytes(UTF8));
+  }
+
+  /**
+   * @return String - The fingerprint of all added entries
+   */
+  public String getValue() {
+    return toHex(this.digest.digest());
+  }
+
+  /**
+   * @param path String - Path relative to the module directory
+   * @return boolean True if the path is the POM file of the module
+   */
+  public static boolean isModulePom(String path) {
+    return "pom.xml".equals(path);
+  }
+
+  /**
+   * @param content byte[]
+   * @return String - The SHA-1 hash of given content
+   */
+  public static String hash(byte[] content) {
+    return toHex(createDigest().digest(content));
+  }
+
+  /**
+   * @param moduleDirectory File
+   * @return String - The stored fingerprint, null if there is none
+   */
+  public static String read(File moduleDirectory) {
+    File fingerprintFile = getFile(moduleDirectory);
+    if (!fingerprintFile.exists()) {
+      return null;
+    }
+    try {
+      return new String(Files.readAllBytes(fingerprintFile.toPath()), UTF8).trim();
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to read fingerprint file: " + fingerprintFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * @param moduleDirectory File
+   * @param fingerprint String
+   */
+  public static void write(File moduleDirectory, String fingerprint) {
+    File fingerprintFile = getFile(moduleDirectory);
+    try {
+      Files.write(fingerprintFile.toPath(), (fingerprint + "\n").getBytes(UTF8));
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to write fingerprint file: " + fingerprintFile.getAbsolutePath(), e);
+    }
+  }
+
+  public static File getFile(File moduleDirectory) {
+    return new File(moduleDirectory, FINGERPRINT_FILE);
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new NonSnapshotPluginException("SHA-1 not supported", e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+
+}
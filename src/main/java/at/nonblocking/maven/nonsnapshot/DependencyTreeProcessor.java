@@ -41,6 +41,8 @@ public interface DependencyTreeProcessor {
 
   /**
    * Mark all artifacts with dirty dependencies dirty.
+   * <br>
+   * The dirty state is propagated transitively, so a single call is sufficient.
    *
    * @param modules List&lt;MavenModule&gt;
    * @return boolean True if any new artifacts have been marked dirty
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optional extension of {@link ScmHandler} with bulk queries, content fingerprints and commit conflict handling.
+ * <br>
+ * The plugin checks if the configured handler implements this interface and otherwise falls back to
+ * the per module methods of {@link ScmHandler}: The modules are checked one by one, content fingerprints
+ * are not supported (the SCM history is used instead) and rejected commits are not retried.
+ * <br>
+ * Existing handlers can migrate by extending {@link AbstractScmHandler}, which implements {@link #checkChanges(java.util.List)}
+ * on top of the per module methods, and implementing the remaining two methods.
+ *
+ * @author Juergen Kofler
+ */
+public interface ExtendedScmHandler extends ScmHandler {
+
+  /**
+   * Check all given module directories for changes at once.
+   * <br>
+   * Revision queries fill the current revision of the module, date queries the last commit date.
+   * Changes within the excluded directories of a query (nested modules) should be ignored for that module.
+   *
+   * @param queries List&lt;ScmModuleQuery&gt;
+   * @return Map&lt;File, ScmModuleStatus&gt; - The status per module directory
+   */
+  Map<File, ScmModuleStatus> checkChanges(List<ScmModuleQuery> queries);
+
+  /**
+   * Calculate a deterministic fingerprint of the committed content of all given module directories (see {@link ContentFingerprint}).
+   * Local modifications don't count, and changes within the excluded directories (nested modules) don't affect the fingerprint.
+   *
+   * @param moduleDirectories Map&lt;File, List&lt;File&gt;&gt; - The module directories with their excluded directories
+   * @param rewrittenArtifacts Set&lt;String&gt; - groupId:artifactId of the artifacts the plugin rewrites the versions of (modules and upstream dependencies)
+   * @return Map&lt;File, String&gt; - The fingerprint per module directory, modules without committed content are missing
+   */
+  Map<File, String> getContentFingerprints(Map<File, List<File>> moduleDirectories, Set<String> rewrittenArtifacts);
+
+  /**
+   * Discard the local changes of given files and update the working copy to the latest remote state,
+   * so a commit rejected with a conflict can be retried.
+   * <br>
+   * Only called after {@link #commitFiles(java.util.List, String)} has thrown a
+   * {@link at.nonblocking.maven.nonsnapshot.exception.NonSnapshotCommitConflictException}.
+   *
+   * @param files List&lt;File&gt; - The files of the rejected commit
+   */
+  void updateToRemote(List<File> files);
+
+}
@@ -16,6 +16,7 @@
 package at.nonblocking.maven.nonsnapshot;
 
 import java.io.File;
+import java.util.List;
 
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 import org.apache.maven.model.Model;
@@ -35,6 +36,16 @@ public interface MavenPomHandler {
    */
   MavenModule readArtifact(Model model);
 
+  /**
+   * Convert all POM models of a run to WorkspaceArtifact objects. Equal coordinates of all models share a single instance.
+   * <br>
+   * Every model is released (the list element is set to null) as soon as it has been converted.
+   *
+   * @param models List&lt;Model&gt;
+   * @return List&lt;WorkspaceArtifact&gt;
+   */
+  List<MavenModule> readArtifacts(List<Model> models);
+
   /**
    * Read the POM model from given file and return a completely filled WorkspaceArtifact object.
    *
@@ -45,9 +56,21 @@ public interface MavenPomHandler {
 
   /**
    * Update the project version and all the versions of dirty dependencies.
+   * The POM file is not written if the new content is identical to the current one.
    *
    * @param workspaceArtifact WorkspaceArtifact
+   * @return boolean - True if the POM file actually changed
+   */
+  boolean updateArtifact(MavenModule workspaceArtifact);
+
+  /**
+   * Update given artifacts all or nothing: If one of the POM files cannot be written none of them is changed.
+   * POM files where the new content is identical to the current one are not written.
+   *
+   * @param workspaceArtifacts List&lt;WorkspaceArtifact&gt;
+   * @param parallelism int - The number of POM files to rewrite in parallel
+   * @return List&lt;WorkspaceArtifact&gt; - The artifacts whose POM file actually changed
    */
-  void updateArtifact(MavenModule workspaceArtifact);
+  List<MavenModule> updateArtifacts(List<MavenModule> workspaceArtifacts, int parallelism);
 
 }
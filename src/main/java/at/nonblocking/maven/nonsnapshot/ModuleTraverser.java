@@ -20,6 +20,7 @@ import org.apache.maven.model.Profile;
 import org.apache.maven.project.MavenProject;
 
 import java.util.List;
+import java.util.Properties;
 
 /**
  * Traverses all nested Maven modules
@@ -28,6 +29,16 @@ import java.util.List;
  */
 public interface ModuleTraverser {
 
+  /**
+   * Configure the traverser before use.
+   * <br>
+   * Supported properties: parallelism (number of POM files parsed concurrently, default 1),
+   * pomCacheFile (file to cache the parsed POM data in, optional)
+   *
+   * @param properties Properties
+   */
+  void init(Properties properties);
+
   /**
    * Find (recursively) all Maven modules
    *
@@ -16,6 +16,7 @@
 package at.nonblocking.maven.nonsnapshot;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
@@ -37,6 +38,7 @@ import org.eclipse.aether.repository.RemoteRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotCommitConflictException;
 import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
 
 /**
@@ -52,6 +54,8 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
   private static final String DEFAULT_TIMESTAMP_QUALIFIER_PATTERN = "yyyyMMddHHmm";
 
   protected static final String DIRTY_MODULES_REGISTRY_FILE = "nonSnapshotDirtyModules.txt";
+  protected static final String POM_CACHE_FILE = "target/nonsnapshot-pom-cache.bin";
+  protected static final String UPSTREAM_VERSION_CACHE_FILE = "target/nonsnapshot-upstream-cache.bin";
 
   /**
    * The SCM (Source Code Management System) type
@@ -83,6 +87,36 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
   @Parameter(defaultValue = "false")
   private boolean dontFailOnUpstreamVersionResolution;
 
+  /**
+   * Number of upstream versions which are resolved concurrently
+   */
+  @Parameter(defaultValue = "1")
+  private int upstreamResolutionParallelism = 1;
+
+  /**
+   * Max. time in milliseconds the resolution of a single upstream version may take, 0 for no limit.
+   * <br/>
+   * A resolution which takes longer fails like an unresolvable upstream version (see dontFailOnUpstreamVersionResolution).
+   */
+  @Parameter(defaultValue = "60000")
+  private long upstreamResolutionTimeout = 60000;
+
+  /**
+   * Time in seconds a resolved upstream version is cached in target/nonsnapshot-upstream-cache.bin,
+   * so subsequent builds don't have to ask the repositories again. 0 disables the cache.
+   * <br/>
+   * Negative answers (no newer version, artifact not found) are cached as well.
+   */
+  @Parameter(defaultValue = "0")
+  private long upstreamVersionCacheTtl;
+
+  /**
+   * Ignore the cached upstream versions and ask the repositories (e.g. for release builds).
+   * The fresh answers are cached anyway.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean bypassUpstreamVersionCache;
+
   /**
    * Don't let the build fail if the commit of the POM files fails.
    * <br/>
@@ -92,6 +126,21 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
   @Parameter(defaultValue = "false")
   private boolean dontFailOnCommit;
 
+  /**
+   * Number of retries if the commit of the POM files is rejected because of a concurrent change.
+   * <br/>
+   * Before each retry the working copy is updated to the latest remote state and the version edits are applied again.
+   * Custom SCM handlers which don't implement {@link ExtendedScmHandler} are never retried.
+   */
+  @Parameter(defaultValue = "3")
+  private int commitRetries = 3;
+
+  /**
+   * Wait time in milliseconds before the first commit retry, doubled for every further retry (plus a random jitter)
+   */
+  @Parameter(defaultValue = "1000")
+  private long commitRetryBackoff = 1000;
+
   @Parameter(defaultValue = "${project}")
   private MavenProject mavenProject;
 
@@ -120,6 +169,60 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
   @Parameter(defaultValue = "false")
   private boolean generateChangedProjectsPropertyFile;
 
+  /**
+   * The POM parser: "default" reads complete Maven models, "streaming" only extracts
+   * the coordinates and version locations this plugin needs (faster and less memory)
+   */
+  @Parameter(defaultValue = "default")
+  private String pomParser;
+
+  /**
+   * Number of POM files which are parsed concurrently while scanning for modules
+   */
+  @Parameter(defaultValue = "1")
+  private int moduleTraverserParallelism = 1;
+
+  /**
+   * Number of modules which are evaluated concurrently against the SCM (working copy info, history, log requests)
+   */
+  @Parameter(defaultValue = "1")
+  private int scmParallelism = 1;
+
+  /**
+   * Number of POM files which are rewritten concurrently when the versions are updated
+   */
+  @Parameter(defaultValue = "1")
+  private int pomWriteParallelism = 1;
+
+  /**
+   * SVN only: Read the info of the whole working copy with a single crawl, instead of querying it for each module
+   */
+  @Parameter(defaultValue = "false")
+  private boolean svnCrawlWorkingCopy;
+
+  /**
+   * SVN only: Store the fetched log entries locally, so only new revisions have to be fetched on the next build
+   */
+  @Parameter(defaultValue = "false")
+  private boolean svnLogCache;
+
+  /**
+   * Cache the relevant parts of the parsed POM files in target/nonsnapshot-pom-cache.bin,
+   * so unchanged POM files don't have to be parsed again on the next run
+   */
+  @Parameter(defaultValue = "false")
+  private boolean usePomCache;
+
+  /**
+   * Detect changed modules by comparing a fingerprint of their committed content with the one stored
+   * in the nonsnapshot.fingerprint file of the module, instead of checking the SCM history for changes.
+   * The history is still needed for the version qualifier of the modules which get a new version.
+   * The fingerprint files are committed together with the POM files.
+   * Custom SCM handlers which don't implement {@link ExtendedScmHandler} always use the SCM history.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean useContentFingerprint;
+
   /**
    * Disable this plugin
    */
@@ -185,14 +288,106 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
       LOG.debug("Found ScmHandler: {}", this.scmHandler.getClass());
     }
 
+    if (this.pomParser != null && !"default".equals(this.pomParser)) {
+      LOG.debug("Lookup for MavenPomHandler and ModuleTraverser implementations of type: {}", this.pomParser);
+
+      try {
+        this.mavenPomHandler = this.plexusContainer.lookup(MavenPomHandler.class, this.pomParser);
+        this.moduleTraverser = this.plexusContainer.lookup(ModuleTraverser.class, this.pomParser);
+      } catch (ComponentLookupException e) {
+        throw new NonSnapshotPluginException("Unable to instantiate POM parser classes for type: " + this.pomParser, e);
+      }
+    }
+
     Properties properties = new Properties();
     properties.setProperty("gitDoPush", String.valueOf(this.gitDoPush));
+    properties.setProperty("parallelism", String.valueOf(this.scmParallelism));
+    properties.setProperty("svnCrawlWorkingCopy", String.valueOf(this.svnCrawlWorkingCopy));
+    properties.setProperty("svnLogCache", String.valueOf(this.svnLogCache));
 
     this.scmHandler.init(getMavenProject().getBasedir(), this.scmUser, this.scmPassword, properties);
 
+    Properties moduleTraverserProperties = new Properties();
+    moduleTraverserProperties.setProperty("parallelism", String.valueOf(this.moduleTraverserParallelism));
+    if (this.usePomCache) {
+      moduleTraverserProperties.setProperty("pomCacheFile", getPomCacheFile().getAbsolutePath());
+    }
+
+    this.moduleTraverser.init(moduleTraverserProperties);
+
     this.processedUpstreamDependencies = this.upstreamDependencyHandler.processDependencyList(getUpstreamDependencies());
   }
 
+  /**
+   * Commit the given POM files. If the commit is rejected because of a concurrent change,
+   * update to the latest remote state, apply the version edits again and retry (with backoff).
+   * <br>
+   * If the commit finally fails the error is ignored if dontFailOnCommit is set.
+   *
+   * @param pomVersionEdits List&lt;PomVersionEdits&gt;
+   * @param commitMessage String
+   */
+  protected void commitPomFiles(List<PomVersionEdits> pomVersionEdits, String commitMessage) {
+    try {
+      commitPomFilesWithRetries(pomVersionEdits, commitMessage);
+    } catch (RuntimeException e) {
+      if (isDontFailOnCommit()) {
+        LOG.warn("Error occurred during commit, ignoring it since dontFailOnCommit=true.", e);
+      } else {
+        throw e;
+      }
+    }
+  }
+
+  private void commitPomFilesWithRetries(List<PomVersionEdits> pomVersionEdits, String commitMessage) {
+    List<File> pomFiles = new ArrayList<>(pomVersionEdits.size());
+    boolean editsRecorded = true;
+    for (PomVersionEdits edits : pomVersionEdits) {
+      pomFiles.add(edits.getPomFile());
+      if (edits.getContentFingerprint() != null) {
+        pomFiles.add(ContentFingerprint.getFile(edits.getPomFile().getParentFile()));
+      }
+      editsRecorded &= edits.isRecorded();
+    }
+
+    int retry = 0;
+    while (true) {
+      try {
+        this.scmHandler.commitFiles(pomFiles, commitMessage);
+        return;
+
+      } catch (NonSnapshotCommitConflictException e) {
+        if (retry >= this.commitRetries || !editsRecorded || !(this.scmHandler instanceof ExtendedScmHandler)) {
+          throw e;
+        }
+        retry++;
+
+        long backoff = this.commitRetryBackoff * (1L << Math.min(retry - 1, 16));
+        backoff += (long) (Math.random() * this.commitRetryBackoff);
+        LOG.warn("Commit rejected because of a concurrent change. Retrying in {}ms ({} of {}).", new Object[]{backoff, retry, this.commitRetries});
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+
+        ((ExtendedScmHandler) this.scmHandler).updateToRemote(pomFiles);
+        for (PomVersionEdits edits : pomVersionEdits) {
+          edits.apply(this.mavenPomHandler);
+        }
+      }
+    }
+  }
+
+  protected File getPomCacheFile() {
+    return new File(this.mavenProject.getBasedir(), POM_CACHE_FILE);
+  }
+
+  protected File getUpstreamVersionCacheFile() {
+    return new File(this.mavenProject.getBasedir(), UPSTREAM_VERSION_CACHE_FILE);
+  }
+
   protected File getDirtyModulesRegistryFile() {
     return new File(this.mavenProject.getBasedir(), DIRTY_MODULES_REGISTRY_FILE);
   }
@@ -250,6 +445,38 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
     this.dontFailOnUpstreamVersionResolution = dontFailOnUpstreamVersionResolution;
   }
 
+  public int getUpstreamResolutionParallelism() {
+    return upstreamResolutionParallelism;
+  }
+
+  public void setUpstreamResolutionParallelism(int upstreamResolutionParallelism) {
+    this.upstreamResolutionParallelism = upstreamResolutionParallelism;
+  }
+
+  public long getUpstreamResolutionTimeout() {
+    return upstreamResolutionTimeout;
+  }
+
+  public void setUpstreamResolutionTimeout(long upstreamResolutionTimeout) {
+    this.upstreamResolutionTimeout = upstreamResolutionTimeout;
+  }
+
+  public long getUpstreamVersionCacheTtl() {
+    return upstreamVersionCacheTtl;
+  }
+
+  public void setUpstreamVersionCacheTtl(long upstreamVersionCacheTtl) {
+    this.upstreamVersionCacheTtl = upstreamVersionCacheTtl;
+  }
+
+  public boolean isBypassUpstreamVersionCache() {
+    return bypassUpstreamVersionCache;
+  }
+
+  public void setBypassUpstreamVersionCache(boolean bypassUpstreamVersionCache) {
+    this.bypassUpstreamVersionCache = bypassUpstreamVersionCache;
+  }
+
   public boolean isDontFailOnCommit() {
     return dontFailOnCommit;
   }
@@ -314,6 +541,86 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
     this.generateChangedProjectsPropertyFile = generateChangedProjectsPropertyFile;
   }
 
+  public String getPomParser() {
+    return pomParser;
+  }
+
+  public void setPomParser(String pomParser) {
+    this.pomParser = pomParser;
+  }
+
+  public int getModuleTraverserParallelism() {
+    return moduleTraverserParallelism;
+  }
+
+  public void setModuleTraverserParallelism(int moduleTraverserParallelism) {
+    this.moduleTraverserParallelism = moduleTraverserParallelism;
+  }
+
+  public int getScmParallelism() {
+    return scmParallelism;
+  }
+
+  public void setScmParallelism(int scmParallelism) {
+    this.scmParallelism = scmParallelism;
+  }
+
+  public int getPomWriteParallelism() {
+    return pomWriteParallelism;
+  }
+
+  public void setPomWriteParallelism(int pomWriteParallelism) {
+    this.pomWriteParallelism = pomWriteParallelism;
+  }
+
+  public boolean isSvnCrawlWorkingCopy() {
+    return svnCrawlWorkingCopy;
+  }
+
+  public void setSvnCrawlWorkingCopy(boolean svnCrawlWorkingCopy) {
+    this.svnCrawlWorkingCopy = svnCrawlWorkingCopy;
+  }
+
+  public boolean isSvnLogCache() {
+    return svnLogCache;
+  }
+
+  public void setSvnLogCache(boolean svnLogCache) {
+    this.svnLogCache = svnLogCache;
+  }
+
+  public boolean isUsePomCache() {
+    return usePomCache;
+  }
+
+  public void setUsePomCache(boolean usePomCache) {
+    this.usePomCache = usePomCache;
+  }
+
+  public boolean isUseContentFingerprint() {
+    return useContentFingerprint;
+  }
+
+  public void setUseContentFingerprint(boolean useContentFingerprint) {
+    this.useContentFingerprint = useContentFingerprint;
+  }
+
+  public int getCommitRetries() {
+    return commitRetries;
+  }
+
+  public void setCommitRetries(int commitRetries) {
+    this.commitRetries = commitRetries;
+  }
+
+  public long getCommitRetryBackoff() {
+    return commitRetryBackoff;
+  }
+
+  public void setCommitRetryBackoff(long commitRetryBackoff) {
+    this.commitRetryBackoff = commitRetryBackoff;
+  }
+
   public boolean isSkip() {
     return skip;
   }
@@ -20,7 +20,9 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.maven.plugins.annotations.Mojo;
 import org.slf4j.Logger;
@@ -48,25 +50,18 @@ public class NonSnapshotCommitMojo extends NonSnapshotBaseMojo {
       return;
     }
 
-    List<File> pomsToCommit = readPomFileList(dirtyModulesRegistryFile);
+    List<PomVersionEdits> pomsToCommit = readDirtyModulesRegistry(dirtyModulesRegistryFile);
     if (pomsToCommit.size() == 0) {
       return;
     }
 
-    try {
-      LOG.info("Committing {} POM files", pomsToCommit.size());
-      getScmHandler().commitFiles(pomsToCommit, "Nonsnapshot Plugin: Version of " + pomsToCommit.size() + " modules updated");
-    } catch (RuntimeException e) {
-      if (isDontFailOnCommit()) {
-        LOG.warn("Error occurred during commit, ignoring it since dontFailOnCommit=true.", e);
-      } else {
-        throw e;
-      }
-    }
+    LOG.info("Committing {} POM files", pomsToCommit.size());
+    commitPomFiles(pomsToCommit, "Nonsnapshot Plugin: Version of " + pomsToCommit.size() + " modules updated");
   }
 
-  private List<File> readPomFileList(File inputFile) {
-    List<File> pomFileList = new ArrayList<>();
+  private List<PomVersionEdits> readDirtyModulesRegistry(File inputFile) {
+    List<PomVersionEdits> pomFileList = new ArrayList<>();
+    Set<File> pomFiles = new HashSet<>();
     File baseDir = getMavenProject().getBasedir();
 
     try {
@@ -74,9 +69,9 @@ public class NonSnapshotCommitMojo extends NonSnapshotBaseMojo {
 
       String line;
       while ((line = reader.readLine()) != null) {
-        File pom = new File(baseDir, line + "/pom.xml").getCanonicalFile();
-        if (!pomFileList.contains(pom)) {
-          pomFileList.add(pom);
+        PomVersionEdits pomVersionEdits = PomVersionEdits.fromRegistryLine(baseDir, line);
+        if (pomFiles.add(pomVersionEdits.getPomFile())) {
+          pomFileList.add(pomVersionEdits);
         }
       }
 
@@ -23,6 +23,7 @@ import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
 import at.nonblocking.maven.nonsnapshot.model.UpdatedUpstreamMavenArtifact;
 import org.apache.maven.model.Model;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.eclipse.aether.repository.RemoteRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,8 +32,18 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Main Goal of this Plugin.
@@ -52,26 +63,35 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
 
     private static String LINE_SEPARATOR = System.getProperty("line.separator");
 
+    private ConcurrentMap<File, ScmModuleHistory> moduleHistories = new ConcurrentHashMap<>();
+
+    private Map<File, String> contentFingerprints = new HashMap<>();
+
     @Override
     protected void internalExecute() {
+        this.moduleHistories.clear();
+        this.contentFingerprints.clear();
+
         List<Model> mavenModels = getModuleTraverser().findAllModules(getMavenProject(), getMavenProject().getActiveProfiles());
 
-        List<MavenModule> mavenModules = buildModules(mavenModels);
+        List<MavenModule> mavenModules = getMavenPomHandler().readArtifacts(mavenModels);
 
         getDependencyTreeProcessor().buildDependencyTree(mavenModules);
 
-        markDirtyWhenRevisionChangedOrInvalidQualifier(mavenModules);
-
+        Map<MavenArtifact, ProcessedUpstreamDependency> upstreamArtifacts = Collections.emptyMap();
         if (getUpstreamDependencies() != null) {
-            updateUpstreamArtifacts(mavenModules);
+            upstreamArtifacts = findUpstreamArtifacts(mavenModules);
         }
 
-        //Recursively mark artifacts dirty
-        boolean changes = getDependencyTreeProcessor().markAllArtifactsDirtyWithDirtyDependencies(mavenModules);
-        while (changes) {
-            changes = getDependencyTreeProcessor().markAllArtifactsDirtyWithDirtyDependencies(mavenModules);
+        markDirtyWhenRevisionChangedOrInvalidQualifier(mavenModules, upstreamArtifacts.keySet());
+
+        if (!upstreamArtifacts.isEmpty()) {
+            updateUpstreamArtifacts(mavenModules, upstreamArtifacts);
         }
 
+        //Transitively mark artifacts dirty
+        getDependencyTreeProcessor().markAllArtifactsDirtyWithDirtyDependencies(mavenModules);
+
         setNextRevisionOnDirtyArtifacts(mavenModules);
 
         dumpArtifactTreeToLog(mavenModules);
@@ -79,41 +99,76 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
         writeAndCommitArtifacts(mavenModules);
     }
 
-    private List<MavenModule> buildModules(List<Model> mavenModels) {
-        List<MavenModule> mavenModules = new ArrayList<>();
+    protected void writeAndCommitArtifacts(List<MavenModule> mavenModules) {
+        List<MavenModule> modulesToUpdate = new ArrayList<>();
+        for (MavenModule mavenModule : mavenModules) {
+            if (mavenModule.isDirty() && mavenModule.getNewVersion() != null) {
+                modulesToUpdate.add(mavenModule);
+            }
+        }
 
-        for (Model model : mavenModels) {
-            MavenModule module = getMavenPomHandler().readArtifact(model);
-            mavenModules.add(module);
+        List<MavenModule> changedModules = new ArrayList<>();
+        if (!modulesToUpdate.isEmpty()) {
+            LOG.info("Updating {} POM files", modulesToUpdate.size());
+            changedModules = getMavenPomHandler().updateArtifacts(modulesToUpdate, getPomWriteParallelism());
+            if (changedModules.size() < modulesToUpdate.size()) {
+                LOG.info("{} POM files already contained the new versions and have not been changed",
+                    modulesToUpdate.size() - changedModules.size());
+            }
         }
 
-        return mavenModules;
-    }
+        Set<MavenModule> changedModuleSet = Collections.newSetFromMap(new IdentityHashMap<MavenModule, Boolean>());
+        changedModuleSet.addAll(changedModules);
 
-    protected void writeAndCommitArtifacts(List<MavenModule> mavenModules) {
         List<File> pomsToCommit = new ArrayList<>();
+        List<PomVersionEdits> pomVersionEdits = new ArrayList<>();
+
+        for (MavenModule mavenModule : modulesToUpdate) {
+            File moduleDirectory = mavenModule.getPomFile().getParentFile();
+            boolean pomChanged = changedModuleSet.contains(mavenModule);
+
+            // The fingerprint has to be stored even if the POM already contained the new version,
+            // otherwise the module would be considered changed again in the next run
+            String contentFingerprint = this.contentFingerprints.get(moduleDirectory);
+            boolean fingerprintChanged = contentFingerprint != null && !contentFingerprint.equals(ContentFingerprint.read(moduleDirectory));
+            if (!pomChanged && !fingerprintChanged) {
+                continue;
+            }
 
-        for (MavenModule mavenModule : mavenModules) {
-            if (mavenModule.isDirty() && mavenModule.getNewVersion() != null) {
-                getMavenPomHandler().updateArtifact(mavenModule);
+            PomVersionEdits edits = PomVersionEdits.fromModule(mavenModule);
+            if (pomChanged) {
                 LOG.debug("Add module to dirty registry list: {}", mavenModule.getPomFile().getAbsolutePath());
                 pomsToCommit.add(mavenModule.getPomFile());
+            } else {
+                LOG.debug("Add module to dirty registry list (content fingerprint only): {}", mavenModule.getPomFile().getAbsolutePath());
             }
+            if (contentFingerprint != null) {
+                ContentFingerprint.write(moduleDirectory, contentFingerprint);
+                edits.setContentFingerprint(contentFingerprint);
+            }
+            pomVersionEdits.add(edits);
         }
 
         if (isGenerateChangedProjectsPropertyFile()) {
             generateChangedProjectsPropertyFile(pomsToCommit);
         }
 
-        if (pomsToCommit.size() > 0) {
-            writeDirtyModulesRegistry(pomsToCommit);
-            if (isGenerateIncrementalBuildScripts()) {
+        if (pomVersionEdits.size() > 0) {
+            writeDirtyModulesRegistry(pomVersionEdits);
+            if (isGenerateIncrementalBuildScripts() && pomsToCommit.size() > 0) {
                 generateIncrementalBuildScripts(pomsToCommit);
             }
 
+            String commitMessage;
+            if (pomsToCommit.size() > 0) {
+                commitMessage = ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of " + pomsToCommit.size() + " artifacts updated";
+            } else {
+                commitMessage = ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Content fingerprint of " + pomVersionEdits.size() + " artifacts updated";
+            }
+
             if (!isDeferPomCommit()) {
-                LOG.info("Committing {} POM files", pomsToCommit.size());
-                getScmHandler().commitFiles(pomsToCommit, ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of " + pomsToCommit.size() + " artifacts updated");
+                LOG.info("Committing {} POM files", pomVersionEdits.size());
+                commitPomFiles(pomVersionEdits, commitMessage);
             } else {
                 LOG.info("Deferring the POM commit. Execute nonsnapshot:commit to actually commit the changes.");
             }
@@ -122,7 +177,22 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
         }
     }
 
-    private void markDirtyWhenRevisionChangedOrInvalidQualifier(List<MavenModule> mavenModules) {
+    private void markDirtyWhenRevisionChangedOrInvalidQualifier(List<MavenModule> mavenModules, Set<MavenArtifact> upstreamArtifacts) {
+        List<ScmModuleQuery> scmQueries = new ArrayList<>();
+        List<MavenModule> queriedModules = new ArrayList<>();
+        DateFormat dateFormat = new SimpleDateFormat(getTimestampQualifierPattern());
+        Map<File, List<File>> nestedModuleDirectories = findNestedModuleDirectories(mavenModules);
+
+        boolean useContentFingerprint = isUseContentFingerprint();
+        if (useContentFingerprint && !(getScmHandler() instanceof ExtendedScmHandler)) {
+            LOG.warn("The SCM handler {} doesn't support content fingerprints. Checking the SCM history instead.", getScmHandler().getClass().getName());
+            useContentFingerprint = false;
+        }
+
+        if (useContentFingerprint) {
+            calculateContentFingerprints(mavenModules, upstreamArtifacts, nestedModuleDirectories);
+        }
+
         for (MavenModule mavenModule : mavenModules) {
             if (mavenModule.getVersion() == null) {
                 LOG.info("No version found for artifact {}:{}. Assigning a new version.", mavenModule.getGroupId(), mavenModule.getArtifactId());
@@ -149,15 +219,21 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
                     mavenModule.setDirty(true);
 
                 } else {
-                    if (getScmType() == SCM_TYPE.SVN && isUseSvnRevisionQualifier()) {
+                    File moduleDirectory = mavenModule.getPomFile().getParentFile();
+
+                    if (useContentFingerprint) {
+
+                        String contentFingerprint = this.contentFingerprints.get(moduleDirectory);
+                        if (contentFingerprint == null || !contentFingerprint.equals(ContentFingerprint.read(moduleDirectory))) {
+                            LOG.info("Module {}:{}: The content fingerprint changed. Assigning a new version.", mavenModule.getGroupId(), mavenModule.getArtifactId());
+                            mavenModule.setDirty(true);
+                        }
+
+                    } else if (getScmType() == SCM_TYPE.SVN && isUseSvnRevisionQualifier()) {
 
                         try {
-                            long currentRev = getScmHandler().getCurrentRevisionId(mavenModule.getPomFile().getParentFile());
-                            long revFromQualifier = Long.parseLong(qualifierString);
-                            if (revFromQualifier != currentRev && getScmHandler().checkChangesSinceRevision(mavenModule.getPomFile().getParentFile(), revFromQualifier, currentRev)) {
-                                LOG.info("Module {}:{}: There were commits after the revision number in the version qualifier. Assigning a new version.", mavenModule.getGroupId(), mavenModule.getArtifactId());
-                                mavenModule.setDirty(true);
-                            }
+                            scmQueries.add(new ScmModuleQuery(moduleDirectory, Long.parseLong(qualifierString)));
+                            queriedModules.add(mavenModule);
                         } catch (NumberFormatException e) {
                             LOG.warn("Invalid SVN revision: {}", qualifierString);
                             mavenModule.setDirty(true);
@@ -168,13 +244,8 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
                         //Default: compare timestamps
 
                         try {
-                            DateFormat dateFormat = new SimpleDateFormat(getTimestampQualifierPattern());
-                            Date dateFromQualifier = dateFormat.parse(qualifierString);
-                            Date lastCommitDate = dateFormat.parse(dateFormat.format(getScmHandler().getLastCommitDate(mavenModule.getPomFile().getParentFile())));
-                            if (!dateFromQualifier.equals(lastCommitDate) && getScmHandler().checkChangesSinceDate(mavenModule.getPomFile().getParentFile(), dateFromQualifier, lastCommitDate)) {
-                                LOG.info("Module {}:{}: There were commits after the timestamp in the version qualifier. Assigning a new version.", mavenModule.getGroupId(), mavenModule.getArtifactId());
-                                mavenModule.setDirty(true);
-                            }
+                            scmQueries.add(new ScmModuleQuery(moduleDirectory, dateFormat.parse(qualifierString)));
+                            queriedModules.add(mavenModule);
                         } catch (ParseException e) {
                             LOG.debug("Module {}:{}: Invalid timestamp qualifier: {}",
                                     new Object[]{mavenModule.getGroupId(), mavenModule.getArtifactId(), qualifierString});
@@ -184,82 +255,291 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
                 }
             }
         }
+
+        if (scmQueries.isEmpty()) {
+            return;
+        }
+
+        for (ScmModuleQuery scmQuery : scmQueries) {
+            scmQuery.setExcludedDirectories(nestedModuleDirectories.get(normalize(scmQuery.getModuleDirectory())));
+        }
+
+        Map<File, ScmModuleStatus> scmStatus = checkChanges(scmQueries);
+
+        for (int i = 0; i < scmQueries.size(); i++) {
+            ScmModuleQuery scmQuery = scmQueries.get(i);
+            MavenModule mavenModule = queriedModules.get(i);
+            ScmModuleStatus moduleStatus = scmStatus.get(scmQuery.getModuleDirectory());
+            if (moduleStatus != null) {
+                getModuleHistory(scmQuery.getModuleDirectory()).update(moduleStatus);
+            }
+
+            if (moduleStatus == null || !moduleStatus.isChanged()) {
+                continue;
+            }
+
+            if (scmQuery.isRevisionQuery()) {
+                LOG.info("Module {}:{}: There were commits after the revision number in the version qualifier. Assigning a new version.", mavenModule.getGroupId(), mavenModule.getArtifactId());
+                mavenModule.setDirty(true);
+
+            } else if (moduleStatus.getLastCommitDate() == null
+                    || !dateFormat.format(scmQuery.getSinceDate()).equals(dateFormat.format(moduleStatus.getLastCommitDate()))) {
+                //The qualifier has a limited precision, so a commit within the same period doesn't count
+                LOG.info("Module {}:{}: There were commits after the timestamp in the version qualifier. Assigning a new version.", mavenModule.getGroupId(), mavenModule.getArtifactId());
+                mavenModule.setDirty(true);
+            }
+        }
     }
 
-    private void updateUpstreamArtifacts(List<MavenModule> mavenModules) {
+    private void calculateContentFingerprints(List<MavenModule> mavenModules, Set<MavenArtifact> upstreamArtifacts,
+                                              Map<File, List<File>> nestedModuleDirectories) {
+        long start = System.currentTimeMillis();
+
+        //The plugin rewrites the versions of modules and upstream dependencies only
+        Set<String> rewrittenArtifacts = new HashSet<>();
+        Map<File, List<File>> moduleDirectories = new LinkedHashMap<>();
         for (MavenModule mavenModule : mavenModules) {
-            //Parent
-            if (mavenModule.getParent() != null) {
-                UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifactParent = updateUpstreamArtifact(mavenModule.getParent());
-                if (updatedUpstreamMavenArtifactParent != null) {
-                    mavenModule.setParent(updatedUpstreamMavenArtifactParent);
-                }
-            }
+            rewrittenArtifacts.add(mavenModule.getGroupId() + ":" + mavenModule.getArtifactId());
+            File moduleDirectory = mavenModule.getPomFile().getParentFile();
+            moduleDirectories.put(moduleDirectory, nestedModuleDirectories.get(normalize(moduleDirectory)));
+        }
+        for (MavenArtifact upstreamArtifact : upstreamArtifacts) {
+            rewrittenArtifacts.add(upstreamArtifact.getGroupId() + ":" + upstreamArtifact.getArtifactId());
+        }
 
-            //Dependencies
-            for (MavenModuleDependency moduleDependency : mavenModule.getDependencies()) {
-                UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifactDep = updateUpstreamArtifact(moduleDependency.getArtifact());
-                if (updatedUpstreamMavenArtifactDep != null) {
-                    moduleDependency.setArtifact(updatedUpstreamMavenArtifactDep);
+        this.contentFingerprints.putAll(((ExtendedScmHandler) getScmHandler()).getContentFingerprints(moduleDirectories, rewrittenArtifacts));
+
+        LOG.debug("Calculated content fingerprints of {} modules in {}ms", mavenModules.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Check the modules for changes with a single bulk query, or one by one if the SCM handler doesn't support it.
+     *
+     * @param scmQueries List&lt;ScmModuleQuery&gt;
+     * @return Map&lt;File, ScmModuleStatus&gt; - The status per module directory
+     */
+    private Map<File, ScmModuleStatus> checkChanges(List<ScmModuleQuery> scmQueries) {
+        if (getScmHandler() instanceof ExtendedScmHandler) {
+            return ((ExtendedScmHandler) getScmHandler()).checkChanges(scmQueries);
+        }
+
+        Map<File, ScmModuleStatus> scmStatus = new LinkedHashMap<>();
+        for (ScmModuleQuery scmQuery : scmQueries) {
+            ScmModuleHistory moduleHistory = getModuleHistory(scmQuery.getModuleDirectory());
+            moduleHistory.isChangedSince(scmQuery);
+            scmStatus.put(scmQuery.getModuleDirectory(), moduleHistory.toStatus());
+        }
+        return scmStatus;
+    }
+
+    /**
+     * Find the directories of nested modules, changes within them don't count for the enclosing module.
+     *
+     * @param mavenModules List&lt;MavenModule&gt; - All traversed modules
+     * @return Map&lt;File, List&lt;File&gt;&gt; - The nested module directories per (normalized) module directory
+     */
+    private Map<File, List<File>> findNestedModuleDirectories(List<MavenModule> mavenModules) {
+        Map<File, List<File>> nestedModuleDirectories = new LinkedHashMap<>();
+        for (MavenModule mavenModule : mavenModules) {
+            nestedModuleDirectories.put(normalize(mavenModule.getPomFile().getParentFile()), new ArrayList<File>());
+        }
+
+        for (File moduleDirectory : nestedModuleDirectories.keySet()) {
+            File parentDirectory = moduleDirectory.getParentFile();
+            while (parentDirectory != null) {
+                List<File> nestedDirectories = nestedModuleDirectories.get(parentDirectory);
+                if (nestedDirectories != null) {
+                    nestedDirectories.add(moduleDirectory);
+                    break;
                 }
+                parentDirectory = parentDirectory.getParentFile();
             }
         }
+
+        return nestedModuleDirectories;
+    }
+
+    private static File normalize(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
     }
 
-    private UpdatedUpstreamMavenArtifact updateUpstreamArtifact(MavenArtifact upstreamArtifact) {
-        if (!(upstreamArtifact instanceof MavenModule)) {
-            ProcessedUpstreamDependency upstreamDependency = getUpstreamDependencyHandler().findMatch(upstreamArtifact, getProcessedUpstreamDependencies());
-            if (upstreamDependency != null) {
-                LOG.debug("Upstream dependency found: {}:{}", upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId());
-
-                try {
-                    String latestVersion = getUpstreamDependencyHandler().resolveLatestVersion(upstreamArtifact, upstreamDependency, getRepositorySystem(), getRepositorySystemSession(), getRemoteRepositories());
-                    if (latestVersion != null) {
-                        LOG.info("Found newer version for upstream dependency {}:{}: {}", new Object[]{upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), latestVersion});
-                        return new UpdatedUpstreamMavenArtifact(upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), upstreamArtifact.getVersion(), latestVersion);
+    private void updateUpstreamArtifacts(List<MavenModule> mavenModules, Map<MavenArtifact, ProcessedUpstreamDependency> upstreamArtifacts) {
+        UpstreamVersionCache upstreamVersionCache = new UpstreamVersionCache(getUpstreamDependencyHandler(),
+                getRepositorySystem(), getRepositorySystemSession(), getRemoteRepositories(),
+                getUpstreamResolutionParallelism(), getUpstreamResolutionTimeout());
+
+        PersistentUpstreamVersionCache persistentUpstreamVersionCache = null;
+        if (getUpstreamVersionCacheTtl() > 0) {
+            persistentUpstreamVersionCache = PersistentUpstreamVersionCache.load(getUpstreamVersionCacheFile(),
+                    getRemoteRepositoriesContext(), getUpstreamVersionCacheTtl() * 1000);
+            if (isBypassUpstreamVersionCache()) {
+                LOG.info("Bypassing the upstream version cache");
+            }
+            upstreamVersionCache.setPersistentCache(persistentUpstreamVersionCache, !isBypassUpstreamVersionCache());
+        }
+
+        try {
+            upstreamVersionCache.prefetch(upstreamArtifacts);
+
+            for (MavenModule mavenModule : mavenModules) {
+                //Parent
+                if (mavenModule.getParent() != null) {
+                    UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifactParent =
+                            updateUpstreamArtifact(mavenModule.getParent(), upstreamArtifacts, upstreamVersionCache);
+                    if (updatedUpstreamMavenArtifactParent != null) {
+                        mavenModule.setParent(updatedUpstreamMavenArtifactParent);
                     }
-                } catch (NonSnapshotDependencyResolverException e) {
-                    if (isDontFailOnUpstreamVersionResolution()) {
-                        LOG.warn("Upstream dependency resolution failed (cannot update {}:{}). Error: {}",
-                                new Object[]{upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), e.getMessage()});
-                    } else {
-                        throw e;
+                }
+
+                //Dependencies
+                for (MavenModuleDependency moduleDependency : mavenModule.getDependencies()) {
+                    UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifactDep =
+                            updateUpstreamArtifact(moduleDependency.getArtifact(), upstreamArtifacts, upstreamVersionCache);
+                    if (updatedUpstreamMavenArtifactDep != null) {
+                        moduleDependency.setArtifact(updatedUpstreamMavenArtifactDep);
                     }
                 }
             }
+        } finally {
+            upstreamVersionCache.close();
         }
 
-        return null;
+        if (persistentUpstreamVersionCache != null) {
+            persistentUpstreamVersionCache.save(getUpstreamVersionCacheFile());
+        }
+
+        LOG.info("Upstream versions: {} distinct artifacts resolved ({} from the upstream version cache), {} lookups served from cache",
+                new Object[]{upstreamVersionCache.getMisses(), upstreamVersionCache.getPersistentHits(), upstreamVersionCache.getHits()});
     }
 
-    private void setNextRevisionOnDirtyArtifacts(List<MavenModule> mavenModules) {
+    private String getRemoteRepositoriesContext() {
+        StringBuilder context = new StringBuilder();
+        if (getRemoteRepositories() != null) {
+            for (RemoteRepository remoteRepository : getRemoteRepositories()) {
+                context.append(remoteRepository.getId()).append('=').append(remoteRepository.getUrl()).append(';');
+            }
+        }
+        return context.toString();
+    }
+
+    /**
+     * Find the upstream artifacts (parents and dependencies which are no modules) and the matching upstream dependency declaration.
+     */
+    private Map<MavenArtifact, ProcessedUpstreamDependency> findUpstreamArtifacts(List<MavenModule> mavenModules) {
+        Map<MavenArtifact, ProcessedUpstreamDependency> upstreamArtifacts = new IdentityHashMap<>();
+        Set<MavenArtifact> checkedArtifacts = Collections.newSetFromMap(new IdentityHashMap<MavenArtifact, Boolean>());
+
         for (MavenModule mavenModule : mavenModules) {
-            File modulesPath = mavenModule.getPomFile().getParentFile();
+            List<MavenArtifact> artifacts = new ArrayList<>();
+            if (mavenModule.getParent() != null) {
+                artifacts.add(mavenModule.getParent());
+            }
+            for (MavenModuleDependency moduleDependency : mavenModule.getDependencies()) {
+                artifacts.add(moduleDependency.getArtifact());
+            }
 
-            if (mavenModule.isDirty()) {
-                if (!getScmHandler().isWorkingCopy(modulesPath)) {
-                    throw new NonSnapshotPluginException("Module path is no working directory: " + modulesPath);
+            for (MavenArtifact artifact : artifacts) {
+                if (!(artifact instanceof MavenModule) && checkedArtifacts.add(artifact)) {
+                    ProcessedUpstreamDependency upstreamDependency = getUpstreamDependencyHandler().findMatch(artifact, getProcessedUpstreamDependencies());
+                    if (upstreamDependency != null) {
+                        LOG.debug("Upstream dependency found: {}:{}", artifact.getGroupId(), artifact.getArtifactId());
+                        upstreamArtifacts.put(artifact, upstreamDependency);
+                    }
+                }
+            }
+        }
+
+        return upstreamArtifacts;
+    }
+
+    private UpdatedUpstreamMavenArtifact updateUpstreamArtifact(MavenArtifact upstreamArtifact, Map<MavenArtifact, ProcessedUpstreamDependency> upstreamArtifacts,
+                                                                UpstreamVersionCache upstreamVersionCache) {
+        ProcessedUpstreamDependency upstreamDependency = upstreamArtifacts.get(upstreamArtifact);
+        if (upstreamDependency != null) {
+            try {
+                String latestVersion = upstreamVersionCache.resolveLatestVersion(upstreamArtifact, upstreamDependency);
+                if (latestVersion != null) {
+                    LOG.info("Found newer version for upstream dependency {}:{}: {}", new Object[]{upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), latestVersion});
+                    return new UpdatedUpstreamMavenArtifact(upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), upstreamArtifact.getVersion(), latestVersion);
                 }
-                if (isUseSvnRevisionQualifier()) {
-                    mavenModule.setNewVersion(getBaseVersion() + "-" + getScmHandler().getCurrentRevisionId(modulesPath));
+            } catch (NonSnapshotDependencyResolverException e) {
+                if (isDontFailOnUpstreamVersionResolution()) {
+                    LOG.warn("Upstream dependency resolution failed (cannot update {}:{}). Error: {}",
+                            new Object[]{upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), e.getMessage()});
                 } else {
-                    mavenModule.setNewVersion(getBaseVersion() + "-" + new SimpleDateFormat(getTimestampQualifierPattern()).format(getScmHandler().getLastCommitDate(modulesPath)));
+                    throw e;
                 }
             }
         }
+
+        return null;
+    }
+
+    private void setNextRevisionOnDirtyArtifacts(List<MavenModule> mavenModules) {
+        List<MavenModule> dirtyModules = new ArrayList<>();
+        List<Callable<String>> tasks = new ArrayList<>();
+
+        for (MavenModule mavenModule : mavenModules) {
+            if (mavenModule.isDirty()) {
+                final File modulesPath = mavenModule.getPomFile().getParentFile();
+                dirtyModules.add(mavenModule);
+                tasks.add(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return getNextVersion(modulesPath);
+                    }
+                });
+            }
+        }
+
+        List<String> newVersions = ConcurrencyUtil.invokeAll(tasks, getScmParallelism());
+
+        for (int i = 0; i < dirtyModules.size(); i++) {
+            dirtyModules.get(i).setNewVersion(newVersions.get(i));
+        }
     }
 
-    private void writeDirtyModulesRegistry(List<File> pomFileList) {
+    private String getNextVersion(File modulesPath) {
+        ScmModuleHistory moduleHistory = getModuleHistory(modulesPath);
+        if (!moduleHistory.isWorkingCopy()) {
+            throw new NonSnapshotPluginException("Module path is no working directory: " + modulesPath);
+        }
+        if (isUseSvnRevisionQualifier()) {
+            return getBaseVersion() + "-" + moduleHistory.getCurrentRevision();
+        } else {
+            return getBaseVersion() + "-" + new SimpleDateFormat(getTimestampQualifierPattern()).format(moduleHistory.getLastCommitDate());
+        }
+    }
+
+    /**
+     * Get the SCM history of given module directory, which is shared by all phases of the run.
+     *
+     * @param moduleDirectory File
+     * @return ScmModuleHistory
+     */
+    private ScmModuleHistory getModuleHistory(File moduleDirectory) {
+        ScmModuleHistory moduleHistory = this.moduleHistories.get(moduleDirectory);
+        if (moduleHistory == null) {
+            moduleHistory = new ScmModuleHistory(getScmHandler(), moduleDirectory);
+            ScmModuleHistory existing = this.moduleHistories.putIfAbsent(moduleDirectory, moduleHistory);
+            if (existing != null) {
+                moduleHistory = existing;
+            }
+        }
+        return moduleHistory;
+    }
+
+    private void writeDirtyModulesRegistry(List<PomVersionEdits> pomVersionEdits) {
         File dirtyModulesRegistryFile = getDirtyModulesRegistryFile();
         LOG.info("Writing dirty modules registry to: {}", dirtyModulesRegistryFile.getAbsolutePath());
 
         try (PrintWriter writer = new PrintWriter(new FileOutputStream(dirtyModulesRegistryFile, false))) {
-            for (File pomFile : pomFileList) {
-                String relativeModuleDir = PathUtil.relativePath(getMavenProject().getBasedir(), pomFile.getParentFile());
+            for (PomVersionEdits edits : pomVersionEdits) {
+                String relativeModuleDir = PathUtil.relativePath(getMavenProject().getBasedir(), edits.getPomFile().getParentFile());
                 if (relativeModuleDir.isEmpty()) {
                     relativeModuleDir = ".";
                 }
-                writer.write(relativeModuleDir + LINE_SEPARATOR);
+                writer.write(edits.toRegistryLine(relativeModuleDir) + LINE_SEPARATOR);
             }
 
         } catch (IOException e) {
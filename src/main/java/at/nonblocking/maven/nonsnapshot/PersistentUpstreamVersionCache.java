@@ -0,0 +1,205 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of resolved upstream versions, so subsequent builds don't have to ask the repositories again.
+ * <br><br>
+ * Negative answers (no newer version, or the artifact doesn't exist at all) are cached as well,
+ * failed resolutions are not. An entry expires after the configured time to live.
+ * <br>
+ * The cache is only valid for the same set of remote repositories (the context), otherwise it starts empty.
+ *
+ * @author Juergen Kofler
+ */
+public class PersistentUpstreamVersionCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PersistentUpstreamVersionCache.class);
+
+  private static final int FILE_MAGIC = 0x4e535556;
+  private static final int FILE_VERSION = 1;
+
+  private String context;
+  private long timeToLive;
+
+  private Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile boolean modified;
+
+  /**
+   * @param context String - Identifies the remote repositories the versions have been resolved from
+   * @param timeToLive long - Time in ms an entry is valid
+   */
+  public PersistentUpstreamVersionCache(String context, long timeToLive) {
+    this.context = context;
+    this.timeToLive = timeToLive;
+  }
+
+  /**
+   * @param key String
+   * @return Entry - null if there is no entry or it has expired
+   */
+  public Entry get(String key) {
+    Entry entry = this.entries.get(key);
+    if (entry == null || isExpired(entry)) {
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * @param key String
+   * @param version String - The resolved version, null if there is no newer version
+   */
+  public void put(String key, String version) {
+    this.entries.put(key, new Entry(System.currentTimeMillis(), version));
+    this.modified = true;
+  }
+
+  private boolean isExpired(Entry entry) {
+    long age = System.currentTimeMillis() - entry.resolvedAt;
+    return age < 0 || age >= this.timeToLive;
+  }
+
+  /**
+   * Load the cache from given file.
+   * A missing, unreadable or outdated file results in an empty cache.
+   *
+   * @param cacheFile File
+   * @param context String - Identifies the remote repositories the versions have been resolved from
+   * @param timeToLive long - Time in ms an entry is valid
+   * @return PersistentUpstreamVersionCache
+   */
+  public static PersistentUpstreamVersionCache load(File cacheFile, String context, long timeToLive) {
+    PersistentUpstreamVersionCache cache = new PersistentUpstreamVersionCache(context, timeToLive);
+    if (!cacheFile.exists()) {
+      return cache;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+      if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+        LOG.info("Ignoring upstream version cache with unknown format: {}", cacheFile.getAbsolutePath());
+        return cache;
+      }
+      if (!context.equals(in.readUTF())) {
+        LOG.info("Ignoring upstream version cache of different remote repositories: {}", cacheFile.getAbsolutePath());
+        return cache;
+      }
+
+      int entryCount = in.readInt();
+      for (int i = 0; i < entryCount; i++) {
+        String key = in.readUTF();
+        long resolvedAt = in.readLong();
+        String version = in.readBoolean() ? in.readUTF() : null;
+        Entry entry = new Entry(resolvedAt, version);
+        if (!cache.isExpired(entry)) {
+          cache.entries.put(key, entry);
+        }
+      }
+
+      LOG.debug("Loaded {} entries from upstream version cache: {}", cache.entries.size(), cacheFile.getAbsolutePath());
+
+    } catch (IOException e) {
+      LOG.warn("Failed to read upstream version cache: {}", cacheFile.getAbsolutePath(), e);
+      cache.entries.clear();
+    }
+
+    return cache;
+  }
+
+  /**
+   * Write the entries which have not expired yet to given file, if anything changed.
+   *
+   * @param cacheFile File
+   */
+  public void save(File cacheFile) {
+    if (!this.modified) {
+      return;
+    }
+
+    cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+    File tempFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+
+    Map<String, Entry> validEntries = new HashMap<>();
+    for (Map.Entry<String, Entry> mapEntry : this.entries.entrySet()) {
+      if (!isExpired(mapEntry.getValue())) {
+        validEntries.put(mapEntry.getKey(), mapEntry.getValue());
+      }
+    }
+
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+        out.writeUTF(this.context);
+        out.writeInt(validEntries.size());
+        for (Map.Entry<String, Entry> mapEntry : validEntries.entrySet()) {
+          Entry entry = mapEntry.getValue();
+          out.writeUTF(mapEntry.getKey());
+          out.writeLong(entry.resolvedAt);
+          out.writeBoolean(entry.version != null);
+          if (entry.version != null) {
+            out.writeUTF(entry.version);
+          }
+        }
+      }
+
+      Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      this.modified = false;
+      LOG.debug("Written {} entries to upstream version cache: {}", validEntries.size(), cacheFile.getAbsolutePath());
+
+    } catch (IOException e) {
+      LOG.warn("Failed to write upstream version cache: {}", cacheFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * A cached answer.
+   */
+  public static class Entry {
+    private long resolvedAt;
+    private String version;
+
+    private Entry(long resolvedAt, String version) {
+      this.resolvedAt = resolvedAt;
+      this.version = version;
+    }
+
+    /**
+     * @return String - null if there was no newer version
+     */
+    public String getVersion() {
+      return version;
+    }
+  }
+
+}
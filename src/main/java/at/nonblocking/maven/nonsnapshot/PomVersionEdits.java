@@ -0,0 +1,199 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import at.nonblocking.maven.nonsnapshot.model.MavenArtifact;
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
+import at.nonblocking.maven.nonsnapshot.model.UpdatedUpstreamMavenArtifact;
+
+/**
+ * The version edits of a single POM file: The new version of the module itself and
+ * the new versions of its parent and dependencies (by groupId:artifactId).
+ * <br><br>
+ * The edits are recorded in the dirty modules registry, so they can be applied again
+ * to the latest remote state of the POM file, if the commit has been rejected because of a concurrent change.
+ *
+ * @author Juergen Kofler
+ */
+public class PomVersionEdits {
+
+  private static final String SEPARATOR = "\t";
+  private static final String FINGERPRINT_PREFIX = "@fingerprint=";
+
+  private File pomFile;
+  private String newVersion;
+  private Map<String, String> artifactVersions = new LinkedHashMap<>();
+  private String contentFingerprint;
+
+  public PomVersionEdits(File pomFile, String newVersion) {
+    this.pomFile = pomFile;
+    this.newVersion = newVersion;
+  }
+
+  /**
+   * Collect the edits {@link MavenPomHandler#updateArtifact(MavenModule)} applies to the POM file of given module.
+   *
+   * @param mavenModule MavenModule
+   * @return PomVersionEdits
+   */
+  public static PomVersionEdits fromModule(MavenModule mavenModule) {
+    PomVersionEdits edits = new PomVersionEdits(mavenModule.getPomFile(), mavenModule.getNewVersion());
+    if (mavenModule.getParent() != null) {
+      edits.addArtifact(mavenModule.getParent());
+    }
+    for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
+      edits.addArtifact(dependency.getArtifact());
+    }
+    return edits;
+  }
+
+  private void addArtifact(MavenArtifact artifact) {
+    String artifactNewVersion = null;
+    if (artifact instanceof MavenModule && ((MavenModule) artifact).isDirty()) {
+      artifactNewVersion = ((MavenModule) artifact).getNewVersion();
+    } else if (artifact instanceof UpdatedUpstreamMavenArtifact) {
+      artifactNewVersion = ((UpdatedUpstreamMavenArtifact) artifact).getNewVersion();
+    }
+
+    if (artifactNewVersion != null) {
+      this.artifactVersions.put(key(artifact), artifactNewVersion);
+    }
+  }
+
+  public File getPomFile() {
+    return pomFile;
+  }
+
+  public String getNewVersion() {
+    return newVersion;
+  }
+
+  /**
+   * @return Map&lt;String, String&gt; - The new version per groupId:artifactId of the parent and dependencies
+   */
+  public Map<String, String> getArtifactVersions() {
+    return artifactVersions;
+  }
+
+  /**
+   * @return String - The content fingerprint the new version has been assigned for, null if fingerprints are not used
+   */
+  public String getContentFingerprint() {
+    return contentFingerprint;
+  }
+
+  public void setContentFingerprint(String contentFingerprint) {
+    this.contentFingerprint = contentFingerprint;
+  }
+
+  /**
+   * @return boolean True if the edits are known (registry entries of older plugin versions only contain the module path)
+   */
+  public boolean isRecorded() {
+    return this.newVersion != null;
+  }
+
+  /**
+   * Apply the edits to the current content of the POM file (and write the content fingerprint file if present).
+   *
+   * @param mavenPomHandler MavenPomHandler
+   */
+  public void apply(MavenPomHandler mavenPomHandler) {
+    MavenModule mavenModule = mavenPomHandler.readArtifact(this.pomFile);
+    mavenModule.setDirty(true);
+    mavenModule.setNewVersion(this.newVersion);
+
+    if (mavenModule.getParent() != null) {
+      UpdatedUpstreamMavenArtifact updatedParent = toUpdatedArtifact(mavenModule.getParent());
+      if (updatedParent != null) {
+        mavenModule.setParent(updatedParent);
+      }
+    }
+    for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
+      UpdatedUpstreamMavenArtifact updatedDependency = toUpdatedArtifact(dependency.getArtifact());
+      if (updatedDependency != null) {
+        dependency.setArtifact(updatedDependency);
+      }
+    }
+
+    mavenPomHandler.updateArtifact(mavenModule);
+
+    if (this.contentFingerprint != null) {
+      ContentFingerprint.write(this.pomFile.getParentFile(), this.contentFingerprint);
+    }
+  }
+
+  private UpdatedUpstreamMavenArtifact toUpdatedArtifact(MavenArtifact artifact) {
+    String artifactNewVersion = this.artifactVersions.get(key(artifact));
+    if (artifactNewVersion == null) {
+      return null;
+    }
+    return new UpdatedUpstreamMavenArtifact(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(), artifactNewVersion);
+  }
+
+  /**
+   * @param relativeModuleDir String
+   * @return String - The dirty modules registry line: The module path, followed by the tab separated edits
+   */
+  public String toRegistryLine(String relativeModuleDir) {
+    StringBuilder line = new StringBuilder(relativeModuleDir);
+    if (this.newVersion != null) {
+      line.append(SEPARATOR).append(this.newVersion);
+      for (Map.Entry<String, String> artifactVersion : this.artifactVersions.entrySet()) {
+        line.append(SEPARATOR).append(artifactVersion.getKey()).append('=').append(artifactVersion.getValue());
+      }
+      if (this.contentFingerprint != null) {
+        line.append(SEPARATOR).append(FINGERPRINT_PREFIX).append(this.contentFingerprint);
+      }
+    }
+    return line.toString();
+  }
+
+  /**
+   * @param baseDir File
+   * @param line String
+   * @return PomVersionEdits
+   * @throws IOException If the POM path cannot be resolved
+   */
+  public static PomVersionEdits fromRegistryLine(File baseDir, String line) throws IOException {
+    String[] parts = line.split(SEPARATOR);
+    File pomFile = new File(baseDir, parts[0] + "/pom.xml").getCanonicalFile();
+
+    PomVersionEdits edits = new PomVersionEdits(pomFile, parts.length > 1 ? parts[1] : null);
+    for (int i = 2; i < parts.length; i++) {
+      if (parts[i].startsWith(FINGERPRINT_PREFIX)) {
+        edits.contentFingerprint = parts[i].substring(FINGERPRINT_PREFIX.length());
+        continue;
+      }
+      int separatorIndex = parts[i].lastIndexOf('=');
+      if (separatorIndex > 0) {
+        edits.artifactVersions.put(parts[i].substring(0, separatorIndex), parts[i].substring(separatorIndex + 1));
+      }
+    }
+    return edits;
+  }
+
+  private static String key(MavenArtifact artifact) {
+    return artifact.getGroupId() + ":" + artifact.getArtifactId();
+  }
+
+}
@@ -22,6 +22,8 @@ import java.util.Properties;
 
 /**
  * Handle the access to the SCM (Source Code Management) system.
+ * <br>
+ * Implementations should extend {@link AbstractScmHandler} and implement {@link ExtendedScmHandler}.
  *
  * @author Juergen Kofler
  */
@@ -75,12 +77,13 @@ public interface ScmHandler {
    */
   boolean checkChangesSinceDate(File moduleDirectory, Date sinceDate, Date workspaceLastCommitDate);
 
-
   /**
    * Commit the given path to the remote repository.
    *
    * @param files         List&lt;File&gt;
    * @param commitMessage String
+   * @throws at.nonblocking.maven.nonsnapshot.exception.NonSnapshotCommitConflictException If the remote repository has been changed concurrently
+   *   (only retried if the handler implements {@link ExtendedScmHandler})
    */
   void commitFiles(List<File> files, String commitMessage);
 
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * Run-scoped summary of the SCM history of a module directory.
+ * <br><br>
+ * Every value is fetched lazily at most once and then reused by all phases of the run,
+ * values already known from a bulk {@link ExtendedScmHandler#checkChanges(java.util.List)} can be added with {@link #update(ScmModuleStatus)}.
+ * <br>
+ * Since the qualifier of a module doesn't change within a run, the changed flag is only determined for the first query.
+ *
+ * @author Juergen Kofler
+ */
+public class ScmModuleHistory {
+
+  private ScmHandler scmHandler;
+  private File moduleDirectory;
+
+  private Boolean workingCopy;
+  private Date lastCommitDate;
+  private Long currentRevision;
+  private Boolean changed;
+
+  public ScmModuleHistory(ScmHandler scmHandler, File moduleDirectory) {
+    this.scmHandler = scmHandler;
+    this.moduleDirectory = moduleDirectory;
+  }
+
+  public File getModuleDirectory() {
+    return moduleDirectory;
+  }
+
+  public synchronized boolean isWorkingCopy() {
+    if (this.workingCopy == null) {
+      this.workingCopy = this.scmHandler.isWorkingCopy(this.moduleDirectory);
+    }
+    return this.workingCopy;
+  }
+
+  public synchronized Date getLastCommitDate() {
+    if (this.lastCommitDate == null) {
+      this.lastCommitDate = this.scmHandler.getLastCommitDate(this.moduleDirectory);
+    }
+    return this.lastCommitDate;
+  }
+
+  public synchronized long getCurrentRevision() {
+    if (this.currentRevision == null) {
+      this.currentRevision = this.scmHandler.getCurrentRevisionId(this.moduleDirectory);
+    }
+    return this.currentRevision;
+  }
+
+  /**
+   * @param query ScmModuleQuery
+   * @return boolean True if there were non plugin commits since the queried revision or date
+   */
+  public synchronized boolean isChangedSince(ScmModuleQuery query) {
+    if (this.changed == null) {
+      if (query.isRevisionQuery()) {
+        long workspaceRevision = getCurrentRevision();
+        this.changed = query.getSinceRevision() != workspaceRevision
+            && this.scmHandler.checkChangesSinceRevision(this.moduleDirectory, query.getSinceRevision(), workspaceRevision);
+      } else {
+        Date workspaceLastCommitDate = getLastCommitDate();
+        this.changed = workspaceLastCommitDate.after(query.getSinceDate())
+            && this.scmHandler.checkChangesSinceDate(this.moduleDirectory, query.getSinceDate(), workspaceLastCommitDate);
+      }
+    }
+    return this.changed;
+  }
+
+  /**
+   * Take over the values of a bulk query result.
+   *
+   * @param status ScmModuleStatus
+   */
+  public synchronized void update(ScmModuleStatus status) {
+    this.changed = status.isChanged();
+    if (status.getLastCommitDate() != null) {
+      this.lastCommitDate = status.getLastCommitDate();
+    }
+    if (status.getCurrentRevision() != null) {
+      this.currentRevision = status.getCurrentRevision();
+    }
+  }
+
+  /**
+   * @return ScmModuleStatus - The status with all values known so far
+   */
+  public synchronized ScmModuleStatus toStatus() {
+    ScmModuleStatus status = new ScmModuleStatus(this.moduleDirectory);
+    status.setChanged(this.changed != null && this.changed);
+    status.setLastCommitDate(this.lastCommitDate);
+    status.setCurrentRevision(this.currentRevision);
+    return status;
+  }
+
+}
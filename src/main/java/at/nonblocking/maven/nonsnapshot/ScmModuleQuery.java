@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Query for changes of a single module directory since the revision or timestamp of its version qualifier.
+ * <br>
+ * Changes within the excluded directories (usually nested modules) don't count for the module.
+ *
+ * @author Juergen Kofler
+ */
+public class ScmModuleQuery {
+
+  private File moduleDirectory;
+  private Date sinceDate;
+  private Long sinceRevision;
+  private List<File> excludedDirectories = Collections.emptyList();
+
+  public ScmModuleQuery(File moduleDirectory, Date sinceDate) {
+    this.moduleDirectory = moduleDirectory;
+    this.sinceDate = sinceDate;
+  }
+
+  public ScmModuleQuery(File moduleDirectory, long sinceRevision) {
+    this.moduleDirectory = moduleDirectory;
+    this.sinceRevision = sinceRevision;
+  }
+
+  public File getModuleDirectory() {
+    return moduleDirectory;
+  }
+
+  public Date getSinceDate() {
+    return sinceDate;
+  }
+
+  public Long getSinceRevision() {
+    return sinceRevision;
+  }
+
+  public List<File> getExcludedDirectories() {
+    return excludedDirectories;
+  }
+
+  public void setExcludedDirectories(List<File> excludedDirectories) {
+    this.excludedDirectories = excludedDirectories;
+  }
+
+  public boolean isRevisionQuery() {
+    return sinceRevision != null;
+  }
+
+  @Override
+  public String toString() {
+    return "ScmModuleQuery{" +
+        "moduleDirectory=" + moduleDirectory +
+        ", sinceDate=" + sinceDate +
+        ", sinceRevision=" + sinceRevision +
+        ", excludedDirectories=" + excludedDirectories +
+        '}';
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * The SCM state of a module directory as result of a {@link ScmModuleQuery}.
+ *
+ * @author Juergen Kofler
+ */
+public class ScmModuleStatus {
+
+  private File moduleDirectory;
+  private boolean changed;
+  private Date lastCommitDate;
+  private Long currentRevision;
+
+  public ScmModuleStatus(File moduleDirectory) {
+    this.moduleDirectory = moduleDirectory;
+  }
+
+  public File getModuleDirectory() {
+    return moduleDirectory;
+  }
+
+  /**
+   * @return boolean True if there were non plugin commits since the queried revision or date
+   */
+  public boolean isChanged() {
+    return changed;
+  }
+
+  public void setChanged(boolean changed) {
+    this.changed = changed;
+  }
+
+  public Date getLastCommitDate() {
+    return lastCommitDate;
+  }
+
+  public void setLastCommitDate(Date lastCommitDate) {
+    this.lastCommitDate = lastCommitDate;
+  }
+
+  public Long getCurrentRevision() {
+    return currentRevision;
+  }
+
+  public void setCurrentRevision(Long currentRevision) {
+    this.currentRevision = currentRevision;
+  }
+
+  @Override
+  public String toString() {
+    return "ScmModuleStatus{" +
+        "moduleDirectory=" + moduleDirectory +
+        ", changed=" + changed +
+        ", lastCommitDate=" + lastCommitDate +
+        ", currentRevision=" + currentRevision +
+        '}';
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotDependencyResolverException;
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.model.MavenArtifact;
+
+/**
+ * Run-scoped cache for {@link UpstreamDependencyHandler#resolveLatestVersion}.
+ * <br><br>
+ * Each distinct query (groupId, artifactId, current version and matched upstream dependency declaration)
+ * is resolved only once per run, no matter how many modules reference the artifact.
+ * Concurrent callers asking for the same query wait for the single resolution in flight.
+ * Failed resolutions are cached as well, so every caller gets the same exception.
+ * <br><br>
+ * All queries of a run can be resolved upfront with {@link #prefetch(Map)}, with up to the given number
+ * of concurrent requests. If a timeout is set, a resolution which takes longer is abandoned and fails
+ * with a {@link NonSnapshotDependencyResolverException}.
+ * <br>
+ * Answers can be shared across runs with a {@link PersistentUpstreamVersionCache}.
+ * <br>
+ * The cache has to be closed after use.
+ *
+ * @author Juergen Kofler
+ */
+public class UpstreamVersionCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UpstreamVersionCache.class);
+
+  private UpstreamDependencyHandler upstreamDependencyHandler;
+  private RepositorySystem repositorySystem;
+  private RepositorySystemSession repositorySystemSession;
+  private List<RemoteRepository> remoteRepositories;
+
+  private int parallelism;
+  private long timeout;
+  private ExecutorService executorService;
+
+  private PersistentUpstreamVersionCache persistentCache;
+  private boolean readPersistentCache;
+
+  private ConcurrentMap<Key, FutureTask<String>> resolutions = new ConcurrentHashMap<>();
+  private AtomicLong hits = new AtomicLong();
+  private AtomicLong misses = new AtomicLong();
+  private AtomicLong persistentHits = new AtomicLong();
+
+  public UpstreamVersionCache(UpstreamDependencyHandler upstreamDependencyHandler, RepositorySystem repositorySystem,
+                              RepositorySystemSession repositorySystemSession, List<RemoteRepository> remoteRepositories) {
+    this(upstreamDependencyHandler, repositorySystem, repositorySystemSession, remoteRepositories, 1, 0);
+  }
+
+  /**
+   * @param upstreamDependencyHandler UpstreamDependencyHandler
+   * @param repositorySystem RepositorySystem
+   * @param repositorySystemSession RepositorySystemSession
+   * @param remoteRepositories List&lt;RemoteRepository&gt;
+   * @param parallelism int - Max. number of concurrent resolutions
+   * @param timeout long - Max. time in ms a single resolution may take, 0 for no limit
+   */
+  public UpstreamVersionCache(UpstreamDependencyHandler upstreamDependencyHandler, RepositorySystem repositorySystem,
+                              RepositorySystemSession repositorySystemSession, List<RemoteRepository> remoteRepositories,
+                              int parallelism, long timeout) {
+    this.upstreamDependencyHandler = upstreamDependencyHandler;
+    this.repositorySystem = repositorySystem;
+    this.repositorySystemSession = repositorySystemSession;
+    this.remoteRepositories = remoteRepositories;
+    this.parallelism = Math.max(1, parallelism);
+    this.timeout = timeout;
+
+    if (timeout > 0) {
+      // Resolutions run on separate (daemon) threads, so the caller can give up waiting for them
+      this.executorService = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+        private AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "nonsnapshot-upstream-resolver-" + this.threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+  }
+
+  /**
+   * Use given persistent cache for the answers.
+   *
+   * @param persistentCache PersistentUpstreamVersionCache
+   * @param readPersistentCache boolean - False to ignore the cached answers (fresh answers are stored anyway)
+   */
+  public void setPersistentCache(PersistentUpstreamVersionCache persistentCache, boolean readPersistentCache) {
+    this.persistentCache = persistentCache;
+    this.readPersistentCache = readPersistentCache;
+  }
+
+  /**
+   * Resolve all given queries concurrently.
+   * Failures are not thrown here, but when the query is requested by {@link #resolveLatestVersion(MavenArtifact, ProcessedUpstreamDependency)}.
+   *
+   * @param upstreamArtifacts Map&lt;MavenArtifact, ProcessedUpstreamDependency&gt; - Upstream artifacts and the matching upstream dependency declaration
+   */
+  public void prefetch(Map<MavenArtifact, ProcessedUpstreamDependency> upstreamArtifacts) {
+    Map<Key, Callable<Void>> tasks = new LinkedHashMap<>();
+
+    for (final Map.Entry<MavenArtifact, ProcessedUpstreamDependency> upstreamArtifact : upstreamArtifacts.entrySet()) {
+      Key key = new Key(upstreamArtifact.getKey(), upstreamArtifact.getValue());
+      if (this.resolutions.containsKey(key) || tasks.containsKey(key)) {
+        continue;
+      }
+      tasks.put(key, new Callable<Void>() {
+        @Override
+        public Void call() {
+          try {
+            resolveLatestVersion(upstreamArtifact.getKey(), upstreamArtifact.getValue());
+          } catch (NonSnapshotDependencyResolverException e) {
+            LOG.debug("Prefetching upstream version failed: {}", e.getMessage());
+          }
+          return null;
+        }
+      });
+    }
+
+    LOG.debug("Prefetching {} upstream versions", tasks.size());
+    ConcurrencyUtil.invokeAll(new ArrayList<>(tasks.values()), this.parallelism);
+  }
+
+  /**
+   * Get the latest version of given upstream artifact, resolve it if this is the first query.
+   *
+   * @param mavenArtifact MavenArtifact
+   * @param upstreamDependency ProcessedUpstreamDependency - The matching upstream dependency declaration
+   * @return String - null if there is no newer version
+   * @throws NonSnapshotDependencyResolverException
+   */
+  public String resolveLatestVersion(MavenArtifact mavenArtifact, ProcessedUpstreamDependency upstreamDependency) {
+    Key key = new Key(mavenArtifact, upstreamDependency);
+
+    FutureTask<String> resolution = this.resolutions.get(key);
+    if (resolution == null) {
+      FutureTask<String> newResolution = new FutureTask<>(new ResolveTask(key, mavenArtifact, upstreamDependency));
+      resolution = this.resolutions.putIfAbsent(key, newResolution);
+      if (resolution == null) {
+        this.misses.incrementAndGet();
+        resolution = newResolution;
+        if (this.executorService != null) {
+          this.executorService.execute(resolution);
+        } else {
+          resolution.run();
+        }
+      } else {
+        this.hits.incrementAndGet();
+      }
+    } else {
+      this.hits.incrementAndGet();
+    }
+
+    return get(resolution, mavenArtifact);
+  }
+
+  private String get(FutureTask<String> resolution, MavenArtifact mavenArtifact) {
+    try {
+      if (this.timeout > 0) {
+        return resolution.get(this.timeout, TimeUnit.MILLISECONDS);
+      }
+      return resolution.get();
+
+    } catch (TimeoutException | CancellationException e) {
+      // Abandon the resolution, everyone else asking for it fails immediately
+      resolution.cancel(true);
+      throw new NonSnapshotDependencyResolverException("Resolving the latest upstream version of " + mavenArtifact.getGroupId() + ":"
+          + mavenArtifact.getArtifactId() + " took longer than " + this.timeout + "ms. Keeping current version " + mavenArtifact.getVersion());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new NonSnapshotPluginException("Upstream version resolution failed: " + e.getCause().getMessage(), e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NonSnapshotPluginException("Interrupted while waiting for upstream version resolution", e);
+    }
+  }
+
+  /**
+   * @return long - The number of queries answered from the cache (or by waiting for a resolution in flight)
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return long - The number of queries which weren't answered from this cache
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return long - The number of misses answered by the persistent cache
+   */
+  public long getPersistentHits() {
+    return persistentHits.get();
+  }
+
+  /**
+   * Stop the resolutions still running.
+   */
+  public void close() {
+    if (this.executorService != null) {
+      this.executorService.shutdownNow();
+    }
+  }
+
+  private class ResolveTask implements Callable<String> {
+    private Key key;
+    private MavenArtifact mavenArtifact;
+    private ProcessedUpstreamDependency upstreamDependency;
+
+    private ResolveTask(Key key, MavenArtifact mavenArtifact, ProcessedUpstreamDependency upstreamDependency) {
+      this.key = key;
+      this.mavenArtifact = mavenArtifact;
+      this.upstreamDependency = upstreamDependency;
+    }
+
+    @Override
+    public String call() {
+      if (persistentCache != null && readPersistentCache) {
+        PersistentUpstreamVersionCache.Entry entry = persistentCache.get(this.key.toString());
+        if (entry != null) {
+          persistentHits.incrementAndGet();
+          return entry.getVersion();
+        }
+      }
+
+      String version = upstreamDependencyHandler.resolveLatestVersion(this.mavenArtifact, this.upstreamDependency,
+          repositorySystem, repositorySystemSession, remoteRepositories);
+
+      if (persistentCache != null) {
+        persistentCache.put(this.key.toString(), version);
+      }
+      return version;
+    }
+  }
+
+  /**
+   * The upstream dependency declarations are created once per run, so they are compared by identity.
+   */
+  private static class Key {
+    private String groupId;
+    private String artifactId;
+    private String version;
+    private ProcessedUpstreamDependency upstreamDependency;
+
+    private Key(MavenArtifact mavenArtifact, ProcessedUpstreamDependency upstreamDependency) {
+      this.groupId = mavenArtifact.getGroupId();
+      this.artifactId = mavenArtifact.getArtifactId();
+      this.version = mavenArtifact.getVersion();
+      this.upstreamDependency = upstreamDependency;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return this.upstreamDependency == other.upstreamDependency
+          && equal(this.groupId, other.groupId) && equal(this.artifactId, other.artifactId) && equal(this.version, other.version);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = this.groupId != null ? this.groupId.hashCode() : 0;
+      result = 31 * result + (this.artifactId != null ? this.artifactId.hashCode() : 0);
+      result = 31 * result + (this.version != null ? this.version.hashCode() : 0);
+      result = 31 * result + System.identityHashCode(this.upstreamDependency);
+      return result;
+    }
+
+    /**
+     * @return String - Identifies the query across runs (groupId:artifactId:version:upstream version restriction)
+     */
+    @Override
+    public String toString() {
+      return this.groupId + ":" + this.artifactId + ":" + this.version + ":" + this.upstreamDependency.getVersionMajor()
+          + "." + this.upstreamDependency.getVersionMinor() + "." + this.upstreamDependency.getVersionIncrement();
+    }
+
+    private static boolean equal(String s1, String s2) {
+      return s1 == null ? s2 == null : s1.equals(s2);
+    }
+  }
+
+}
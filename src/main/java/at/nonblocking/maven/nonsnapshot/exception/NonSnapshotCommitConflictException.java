@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.exception;
+
+/**
+ * Thrown if a commit is rejected because the remote repository has been changed concurrently.
+ * The commit can be retried after updating to the latest remote state.
+ *
+ * @author Juergen Kofler
+ */
+public class NonSnapshotCommitConflictException extends NonSnapshotPluginException {
+
+  public NonSnapshotCommitConflictException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  public NonSnapshotCommitConflictException(String message) {
+    super(message);
+  }
+
+}
@@ -16,7 +16,13 @@
 package at.nonblocking.maven.nonsnapshot.impl;
 
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import at.nonblocking.maven.nonsnapshot.model.UpdatedUpstreamMavenArtifact;
 import org.codehaus.plexus.component.annotations.Component;
@@ -41,9 +47,11 @@ public class DependencyTreeProcessorDefaultImpl implements DependencyTreeProcess
 
   @Override
   public void buildDependencyTree(List<MavenModule> mavenModules) {
+    Map<String, MavenModule> modulesByCoordinates = createCoordinatesIndex(mavenModules);
+
     for (MavenModule mavenModule : mavenModules) {
       if (mavenModule.getParent() != null) {
-        MavenModule parentModule = findArtifact(mavenModules, mavenModule.getParent().getGroupId(), mavenModule.getParent().getArtifactId());
+        MavenModule parentModule = modulesByCoordinates.get(coordinates(mavenModule.getParent()));
         if (parentModule != null) {
           parentModule.getChildren().add(mavenModule);
           mavenModule.setParent(parentModule);
@@ -51,8 +59,7 @@ public class DependencyTreeProcessorDefaultImpl implements DependencyTreeProcess
       }
 
       for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
-        MavenModule dependencyModule = findArtifact(mavenModules, dependency.getArtifact().getGroupId(), dependency.getArtifact()
-            .getArtifactId());
+        MavenModule dependencyModule = modulesByCoordinates.get(coordinates(dependency.getArtifact()));
         if (dependencyModule != null) {
           dependency.setArtifact(dependencyModule);
         }
@@ -60,68 +67,141 @@ public class DependencyTreeProcessorDefaultImpl implements DependencyTreeProcess
     }
   }
 
-  private MavenModule findArtifact(List<MavenModule> artifacts, String groupId, String artifactId) {
-    for (MavenModule artifact : artifacts) {
-      if (groupId.equals(artifact.getGroupId()) && artifactId.equals(artifact.getArtifactId())) {
-        return artifact;
+  /**
+   * If a groupId:artifactId pair exists more than once the first module wins.
+   */
+  private Map<String, MavenModule> createCoordinatesIndex(List<MavenModule> mavenModules) {
+    Map<String, MavenModule> modulesByCoordinates = new HashMap<>(mavenModules.size() * 2);
+    for (MavenModule mavenModule : mavenModules) {
+      String coordinates = coordinates(mavenModule);
+      if (!modulesByCoordinates.containsKey(coordinates)) {
+        modulesByCoordinates.put(coordinates, mavenModule);
       }
     }
+    return modulesByCoordinates;
+  }
 
-    return null;
+  private static String coordinates(MavenArtifact artifact) {
+    return artifact.getGroupId() + ":" + artifact.getArtifactId();
   }
 
+  /**
+   * Propagates the dirty state with a single pass over the reverse dependency graph
+   * (children and dependents of each module), starting at the modules which are already dirty
+   * or which reference an updated upstream artifact.
+   */
   @Override
   public boolean markAllArtifactsDirtyWithDirtyDependencies(List<MavenModule> mavenModules) {
+    Map<MavenModule, List<MavenModule>> dependentModules = createReverseDependencies(mavenModules);
+    Deque<MavenModule> dirtyModules = new ArrayDeque<>();
     boolean changes = false;
 
     for (MavenModule mavenModule : mavenModules) {
       if (mavenModule.isDirty()) {
+        dirtyModules.add(mavenModule);
+      }
+    }
+
+    for (MavenModule mavenModule : mavenModules) {
+      if (!mavenModule.isDirty() && hasUpdatedUpstreamArtifact(mavenModule)) {
+        markDirty(mavenModule);
+        dirtyModules.add(mavenModule);
+        changes = true;
+      }
+    }
+
+    while (!dirtyModules.isEmpty()) {
+      List<MavenModule> dependents = dependentModules.get(dirtyModules.poll());
+      if (dependents == null) {
         continue;
       }
 
-      if (mavenModule.getParent() != null) {
-        if (mavenModule.getParent() instanceof MavenModule) {
-          MavenModule parentModule = (MavenModule) mavenModule.getParent();
-          if (parentModule.isDirty()) {
-            LOG.info("Marking module {}:{} dirty because parent is dirty.", mavenModule.getGroupId(), mavenModule.getArtifactId());
-            mavenModule.setDirty(true);
-            changes = true;
-            continue;
-          }
-        } else if (mavenModule.getParent() instanceof UpdatedUpstreamMavenArtifact) {
-          UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifact = (UpdatedUpstreamMavenArtifact) mavenModule.getParent();
-          LOG.info("Marking module {}:{} dirty because upstream parent is dirty: {}:{}.",
-              new Object[]{mavenModule.getGroupId(), mavenModule.getArtifactId(),
-                  updatedUpstreamMavenArtifact.getGroupId(), updatedUpstreamMavenArtifact.getArtifactId()});
-          mavenModule.setDirty(true);
+      for (MavenModule dependent : dependents) {
+        if (!dependent.isDirty()) {
+          markDirty(dependent);
+          dirtyModules.add(dependent);
           changes = true;
-          continue;
         }
       }
+    }
 
+    return changes;
+  }
+
+  private Map<MavenModule, List<MavenModule>> createReverseDependencies(List<MavenModule> mavenModules) {
+    Map<MavenModule, List<MavenModule>> dependentModules = new IdentityHashMap<>(mavenModules.size());
+
+    for (MavenModule mavenModule : mavenModules) {
+      if (mavenModule.getParent() instanceof MavenModule) {
+        addDependent(dependentModules, (MavenModule) mavenModule.getParent(), mavenModule);
+      }
       for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
         if (dependency.getArtifact() instanceof MavenModule) {
-          MavenModule parentModule = (MavenModule) dependency.getArtifact();
-          if (parentModule.isDirty()) {
-            LOG.info("Marking module {}:{} dirty because dependency is dirty: {}:{}",
-                new Object[]{mavenModule.getGroupId(), mavenModule.getArtifactId(), parentModule.getGroupId(), parentModule.getArtifactId()});
-            mavenModule.setDirty(true);
-            changes = true;
-            break;
-          }
-        } else if (dependency.getArtifact() instanceof UpdatedUpstreamMavenArtifact) {
-          UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifact = (UpdatedUpstreamMavenArtifact) dependency.getArtifact();
-          LOG.info("Marking module {}:{} dirty because upstream dependency is dirty: {}:{}",
-              new Object[]{mavenModule.getGroupId(), mavenModule.getArtifactId(),
-                  updatedUpstreamMavenArtifact.getGroupId(), updatedUpstreamMavenArtifact.getArtifactId()});
-          mavenModule.setDirty(true);
-          changes = true;
-          break;
+          addDependent(dependentModules, (MavenModule) dependency.getArtifact(), mavenModule);
         }
       }
     }
 
-    return changes;
+    return dependentModules;
+  }
+
+  private void addDependent(Map<MavenModule, List<MavenModule>> dependentModules, MavenModule module, MavenModule dependent) {
+    List<MavenModule> dependents = dependentModules.get(module);
+    if (dependents == null) {
+      dependents = new ArrayList<>();
+      dependentModules.put(module, dependents);
+    }
+    dependents.add(dependent);
+  }
+
+  private boolean hasUpdatedUpstreamArtifact(MavenModule mavenModule) {
+    if (mavenModule.getParent() instanceof UpdatedUpstreamMavenArtifact) {
+      return true;
+    }
+    for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
+      if (dependency.getArtifact() instanceof UpdatedUpstreamMavenArtifact) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Mark given module dirty and log the reason: The parent comes first, then the dependencies in declaration order.
+   */
+  private void markDirty(MavenModule mavenModule) {
+    mavenModule.setDirty(true);
+
+    if (mavenModule.getParent() instanceof MavenModule) {
+      MavenModule parentModule = (MavenModule) mavenModule.getParent();
+      if (parentModule.isDirty()) {
+        LOG.info("Marking module {}:{} dirty because parent is dirty.", mavenModule.getGroupId(), mavenModule.getArtifactId());
+        return;
+      }
+    } else if (mavenModule.getParent() instanceof UpdatedUpstreamMavenArtifact) {
+      UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifact = (UpdatedUpstreamMavenArtifact) mavenModule.getParent();
+      LOG.info("Marking module {}:{} dirty because upstream parent is dirty: {}:{}.",
+          new Object[]{mavenModule.getGroupId(), mavenModule.getArtifactId(),
+              updatedUpstreamMavenArtifact.getGroupId(), updatedUpstreamMavenArtifact.getArtifactId()});
+      return;
+    }
+
+    for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
+      if (dependency.getArtifact() instanceof MavenModule) {
+        MavenModule parentModule = (MavenModule) dependency.getArtifact();
+        if (parentModule.isDirty() && parentModule != mavenModule) {
+          LOG.info("Marking module {}:{} dirty because dependency is dirty: {}:{}",
+              new Object[]{mavenModule.getGroupId(), mavenModule.getArtifactId(), parentModule.getGroupId(), parentModule.getArtifactId()});
+          return;
+        }
+      } else if (dependency.getArtifact() instanceof UpdatedUpstreamMavenArtifact) {
+        UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifact = (UpdatedUpstreamMavenArtifact) dependency.getArtifact();
+        LOG.info("Marking module {}:{} dirty because upstream dependency is dirty: {}:{}",
+            new Object[]{mavenModule.getGroupId(), mavenModule.getArtifactId(),
+                updatedUpstreamMavenArtifact.getGroupId(), updatedUpstreamMavenArtifact.getArtifactId()});
+        return;
+      }
+    }
   }
 
   @Override
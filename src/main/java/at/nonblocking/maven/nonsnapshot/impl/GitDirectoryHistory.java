@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.util.Date;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * The last commit and the last non plugin commit which touched a directory within a GIT repository.
+ *
+ * @author Juergen Kofler
+ */
+public class GitDirectoryHistory {
+
+  private ObjectId lastCommitId;
+  private int lastCommitTime;
+
+  private ObjectId lastNonPluginCommitId;
+  private int lastNonPluginCommitTime;
+
+  public ObjectId getLastCommitId() {
+    return lastCommitId;
+  }
+
+  public int getLastCommitTime() {
+    return lastCommitTime;
+  }
+
+  public Date getLastCommitDate() {
+    return this.lastCommitId != null ? new Date(this.lastCommitTime * 1000L) : null;
+  }
+
+  public void setLastCommit(ObjectId commitId, int commitTime) {
+    this.lastCommitId = commitId;
+    this.lastCommitTime = commitTime;
+  }
+
+  public ObjectId getLastNonPluginCommitId() {
+    return lastNonPluginCommitId;
+  }
+
+  public int getLastNonPluginCommitTime() {
+    return lastNonPluginCommitTime;
+  }
+
+  public Date getLastNonPluginCommitDate() {
+    return this.lastNonPluginCommitId != null ? new Date(this.lastNonPluginCommitTime * 1000L) : null;
+  }
+
+  public void setLastNonPluginCommit(ObjectId commitId, int commitTime) {
+    this.lastNonPluginCommitId = commitId;
+    this.lastNonPluginCommitTime = commitTime;
+  }
+
+  @Override
+  public String toString() {
+    return "GitDirectoryHistory{" +
+        "lastCommitId=" + (lastCommitId != null ? lastCommitId.name() : null) +
+        ", lastCommitTime=" + lastCommitTime +
+        ", lastNonPluginCommitId=" + (lastNonPluginCommitId != null ? lastNonPluginCommitId.name() : null) +
+        ", lastNonPluginCommitTime=" + lastNonPluginCommitTime +
+        '}';
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Last commits of the directories within a GIT repository, computed at a specific HEAD commit.
+ * <br><br>
+ * The index is stored as a simple text file (usually below .git/nonsnapshot) so subsequent builds
+ * only have to walk the commits added since then.
+ *
+ * @author Juergen Kofler
+ */
+public class GitHistoryIndex {
+
+  private static final String FILE_HEADER = "nonsnapshot-git-history-index 3";
+  private static final String NO_COMMIT = "-";
+
+  private ObjectId head;
+  private Set<String> moduleBoundaries = new HashSet<>();
+  private Set<String> directories = new HashSet<>();
+  private Map<String, GitDirectoryHistory> histories = new HashMap<>();
+
+  /**
+   * @return ObjectId - The HEAD commit the index has been computed at, null if the index is empty
+   */
+  public ObjectId getHead() {
+    return head;
+  }
+
+  public void setHead(ObjectId head) {
+    this.head = head;
+  }
+
+  /**
+   * @return Set&lt;String&gt; - The nested module directories the histories have been computed with
+   * @see GitHistoryWalker#GitHistoryWalker(org.eclipse.jgit.lib.Repository, java.util.Set)
+   */
+  public Set<String> getModuleBoundaries() {
+    return moduleBoundaries;
+  }
+
+  public void setModuleBoundaries(Set<String> moduleBoundaries) {
+    this.moduleBoundaries = moduleBoundaries;
+  }
+
+  /**
+   * @return Set&lt;String&gt; - The directories the index has been computed for
+   */
+  public Set<String> getDirectories() {
+    return directories;
+  }
+
+  public Map<String, GitDirectoryHistory> getHistories() {
+    return histories;
+  }
+
+  public void addDirectories(Set<String> directories, Map<String, GitDirectoryHistory> histories) {
+    this.directories.addAll(directories);
+    this.histories.putAll(histories);
+  }
+
+  /**
+   * Merge the histories of commits newer than the current ones.
+   *
+   * @param newerHistories Map&lt;String, GitDirectoryHistory&gt;
+   */
+  public void merge(Map<String, GitDirectoryHistory> newerHistories) {
+    for (Map.Entry<String, GitDirectoryHistory> entry : newerHistories.entrySet()) {
+      GitDirectoryHistory newerHistory = entry.getValue();
+      GitDirectoryHistory history = this.histories.get(entry.getKey());
+      if (history == null) {
+        this.histories.put(entry.getKey(), newerHistory);
+        continue;
+      }
+
+      history.setLastCommit(newerHistory.getLastCommitId(), newerHistory.getLastCommitTime());
+      if (newerHistory.getLastNonPluginCommitId() != null) {
+        history.setLastNonPluginCommit(newerHistory.getLastNonPluginCommitId(), newerHistory.getLastNonPluginCommitTime());
+      }
+    }
+  }
+
+  public void clear() {
+    this.head = null;
+    this.directories.clear();
+    this.histories.clear();
+  }
+
+  /**
+   * Load the index from given file.
+   *
+   * @param indexFile File
+   * @return GitHistoryIndex - An empty index if the file doesn't exist
+   * @throws IOException If the file is not readable or corrupt
+   */
+  public static GitHistoryIndex load(File indexFile) throws IOException {
+    GitHistoryIndex index = new GitHistoryIndex();
+    if (!indexFile.exists()) {
+      return index;
+    }
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"))) {
+      if (!FILE_HEADER.equals(reader.readLine())) {
+        throw new IOException("Unknown GIT history index format: " + indexFile.getAbsolutePath());
+      }
+
+      String headLine = reader.readLine();
+      String boundaryCountLine = reader.readLine();
+      if (headLine == null || boundaryCountLine == null) {
+        throw new IOException("Truncated GIT history index: " + indexFile.getAbsolutePath());
+      }
+      index.head = ObjectId.fromString(headLine);
+
+      int boundaryCount = Integer.parseInt(boundaryCountLine);
+      for (int i = 0; i < boundaryCount; i++) {
+        String moduleBoundary = reader.readLine();
+        if (moduleBoundary == null) {
+          throw new IOException("Truncated GIT history index: " + indexFile.getAbsolutePath());
+        }
+        index.moduleBoundaries.add(moduleBoundary);
+      }
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split(" ", 5);
+        if (parts.length != 5) {
+          throw new IOException("Invalid line in GIT history index: " + line);
+        }
+
+        String directory = parts[4];
+        index.directories.add(directory);
+        if (!NO_COMMIT.equals(parts[0])) {
+          GitDirectoryHistory history = new GitDirectoryHistory();
+          history.setLastCommit(ObjectId.fromString(parts[0]), Integer.parseInt(parts[1]));
+          if (!NO_COMMIT.equals(parts[2])) {
+            history.setLastNonPluginCommit(ObjectId.fromString(parts[2]), Integer.parseInt(parts[3]));
+          }
+          index.histories.put(directory, history);
+        }
+      }
+
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Corrupt GIT history index: " + indexFile.getAbsolutePath(), e);
+    }
+
+    return index;
+  }
+
+  /**
+   * Write the index to given file. The file is replaced atomically.
+   *
+   * @param indexFile File
+   * @throws IOException
+   */
+  public void save(File indexFile) throws IOException {
+    if (this.head == null) {
+      return;
+    }
+
+    indexFile.getParentFile().mkdirs();
+    File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"))) {
+      writer.write(FILE_HEADER + "\n");
+      writer.write(this.head.name() + "\n");
+      writer.write(this.moduleBoundaries.size() + "\n");
+      for (String moduleBoundary : this.moduleBoundaries) {
+        writer.write(moduleBoundary + "\n");
+      }
+
+      Set<String> indexedDirectories = new HashSet<>(this.histories.keySet());
+      indexedDirectories.addAll(this.directories);
+
+      for (String directory : indexedDirectories) {
+        GitDirectoryHistory history = this.histories.get(directory);
+        if (history == null) {
+          writer.write(NO_COMMIT + " 0 " + NO_COMMIT + " 0 " + directory + "\n");
+        } else if (history.getLastNonPluginCommitId() == null) {
+          writer.write(history.getLastCommitId().name() + " " + history.getLastCommitTime() + " "
+              + NO_COMMIT + " 0 " + directory + "\n");
+        } else {
+          writer.write(history.getLastCommitId().name() + " " + history.getLastCommitTime() + " "
+              + history.getLastNonPluginCommitId().name() + " " + history.getLastNonPluginCommitTime() + " " + directory + "\n");
+        }
+      }
+    }
+
+    Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.nonblocking.maven.nonsnapshot.ScmHandler;
+
+/**
+ * Walks the GIT history once and determines the last commit and the last non plugin commit
+ * of a number of directories at the same time.
+ * <br><br>
+ * Every commit is diffed against its parent(s) and the changed paths are mapped to the directories containing them.
+ * A merge commit only counts for a directory if it differs from all parents.
+ * The commit message is only read if one of the touched directories still lacks a non plugin commit.
+ * <br><br>
+ * Changes below a module boundary (the directory of a nested module) only count for the boundary directory
+ * itself and its subdirectories, not for the directories above.
+ *
+ * @author Juergen Kofler
+ */
+public class GitHistoryWalker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitHistoryWalker.class);
+
+  private Repository repository;
+  private Set<String> moduleBoundaries;
+  private int maxCommits;
+  private boolean truncated;
+
+  public GitHistoryWalker(Repository repository) {
+    this(repository, Collections.<String>emptySet());
+  }
+
+  /**
+   * @param repository Repository
+   * @param moduleBoundaries Set&lt;String&gt; - Directories of nested modules, relative to the repository root
+   */
+  public GitHistoryWalker(Repository repository, Set<String> moduleBoundaries) {
+    this.repository = repository;
+    this.moduleBoundaries = moduleBoundaries;
+  }
+
+  /**
+   * Limit the walk to given number of commits changing one of the directories (like git log -n with paths).
+   * Directories without a non plugin commit within these commits may be missing or lack the last non plugin commit.
+   *
+   * @param maxCommits int - 0 for no limit
+   */
+  public void setMaxCommits(int maxCommits) {
+    this.maxCommits = maxCommits;
+  }
+
+  /**
+   * @return boolean - True if the last walk stopped at the commit limit before all directories were resolved
+   */
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  /**
+   * Walk the history from HEAD and collect the last commits of given directories.
+   * <br>
+   * If directories is not null the walk stops as soon as all of them have a non plugin commit.
+   *
+   * @param directories Set&lt;String&gt; - Paths relative to the repository root ("" is the root), null for all directories
+   * @return Map&lt;String, GitDirectoryHistory&gt; - Directories without any commit are missing
+   * @throws IOException
+   */
+  public Map<String, GitDirectoryHistory> walk(Set<String> directories) throws IOException {
+    return walk(directories, null);
+  }
+
+  /**
+   * Walk the history from HEAD down to given commit (exclusive) and collect the last commits of given directories.
+   *
+   * @param directories Set&lt;String&gt; - Paths relative to the repository root ("" is the root), null for all directories
+   * @param since ObjectId - A commit HEAD is based on, null to walk the whole history
+   * @return Map&lt;String, GitDirectoryHistory&gt; - Directories without any commit in the range are missing
+   * @throws IOException
+   */
+  public Map<String, GitDirectoryHistory> walk(Set<String> directories, ObjectId since) throws IOException {
+    Map<String, GitDirectoryHistory> histories = new HashMap<>();
+    this.truncated = false;
+
+    ObjectId head = this.repository.resolve(Constants.HEAD);
+    if (head == null) {
+      LOG.debug("GIT repository has no HEAD commit yet");
+      return histories;
+    }
+
+    Set<String> descendDirectories = directories != null ? createDescendDirectories(directories) : null;
+    int unresolved = directories != null ? directories.size() : -1;
+    int commitCount = 0;
+    int changingCommitCount = 0;
+
+    RevWalk revWalk = new RevWalk(this.repository);
+    revWalk.setRetainBody(false);
+    TreeWalk treeWalk = new TreeWalk(revWalk.getObjectReader());
+
+    try {
+      revWalk.markStart(revWalk.parseCommit(head));
+      if (since != null) {
+        revWalk.markUninteresting(revWalk.parseCommit(since));
+      }
+
+      RevCommit commit;
+      while (unresolved != 0 && (commit = revWalk.next()) != null) {
+        commitCount++;
+        Boolean pluginCommit = null;
+        boolean changing = false;
+
+        for (String directory : findChangedDirectories(revWalk, treeWalk, commit, descendDirectories)) {
+          if (directories != null && !directories.contains(directory)) {
+            continue;
+          }
+          changing = true;
+
+          GitDirectoryHistory history = histories.get(directory);
+          if (history == null) {
+            history = new GitDirectoryHistory();
+            history.setLastCommit(commit.copy(), commit.getCommitTime());
+            histories.put(directory, history);
+          }
+
+          if (history.getLastNonPluginCommitId() == null) {
+            if (pluginCommit == null) {
+              revWalk.parseBody(commit);
+              pluginCommit = commit.getFullMessage().startsWith(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX);
+            }
+            if (!pluginCommit) {
+              history.setLastNonPluginCommit(commit.copy(), commit.getCommitTime());
+              if (directories != null) {
+                unresolved--;
+              }
+            }
+          }
+        }
+
+        if (changing && this.maxCommits > 0 && ++changingCommitCount >= this.maxCommits && unresolved != 0) {
+          LOG.debug("Stopped the GIT history walk after {} commits changing the directories", changingCommitCount);
+          this.truncated = true;
+          break;
+        }
+      }
+
+    } finally {
+      treeWalk.release();
+      revWalk.release();
+    }
+
+    LOG.debug("Walked {} GIT commits to determine the history of {} directories", commitCount, histories.size());
+
+    return histories;
+  }
+
+  /**
+   * Check if HEAD is based on given commit, which is not the case if the history has been rewritten.
+   *
+   * @param commitId ObjectId
+   * @return boolean
+   * @throws IOException
+   */
+  public boolean isAncestorOfHead(ObjectId commitId) throws IOException {
+    ObjectId head = this.repository.resolve(Constants.HEAD);
+    if (head == null) {
+      return false;
+    }
+
+    RevWalk revWalk = new RevWalk(this.repository);
+    try {
+      return revWalk.isMergedInto(revWalk.parseCommit(commitId), revWalk.parseCommit(head));
+    } catch (MissingObjectException | IncorrectObjectTypeException e) {
+      return false;
+    } finally {
+      revWalk.release();
+    }
+  }
+
+  private Set<String> findChangedDirectories(RevWalk revWalk, TreeWalk treeWalk, RevCommit commit, Set<String> descendDirectories) throws IOException {
+    if (commit.getParentCount() == 0) {
+      return diff(treeWalk, null, commit.getTree(), descendDirectories);
+    }
+
+    Set<String> changedDirectories = null;
+    for (RevCommit parent : commit.getParents()) {
+      revWalk.parseHeaders(parent);
+      Set<String> changedAgainstParent = diff(treeWalk, parent.getTree(), commit.getTree(), descendDirectories);
+      if (changedDirectories == null) {
+        changedDirectories = changedAgainstParent;
+      } else {
+        changedDirectories.retainAll(changedAgainstParent);
+      }
+      if (changedDirectories.isEmpty()) {
+        break;
+      }
+    }
+
+    return changedDirectories;
+  }
+
+  private Set<String> diff(TreeWalk treeWalk, RevTree parentTree, RevTree tree, Set<String> descendDirectories) throws IOException {
+    Set<String> changedDirectories = new HashSet<>();
+
+    treeWalk.reset();
+    if (parentTree != null) {
+      treeWalk.addTree(parentTree);
+    } else {
+      treeWalk.addTree(new EmptyTreeIterator());
+    }
+    treeWalk.addTree(tree);
+    treeWalk.setFilter(TreeFilter.ANY_DIFF);
+    treeWalk.setRecursive(false);
+
+    while (treeWalk.next()) {
+      String path = treeWalk.getPathString();
+      if (treeWalk.isSubtree()) {
+        if (descendDirectories == null || descendDirectories.contains(path)) {
+          treeWalk.enterSubtree();
+        } else {
+          addWithParentDirectories(path, changedDirectories);
+        }
+      } else {
+        addWithParentDirectories(parentDirectory(path), changedDirectories);
+      }
+    }
+
+    return changedDirectories;
+  }
+
+  /**
+   * Only subtrees which contain a tracked directory or a module boundary further down have to be entered.
+   */
+  private Set<String> createDescendDirectories(Set<String> directories) {
+    Set<String> descendDirectories = new HashSet<>();
+    addParentDirectories(directories, descendDirectories);
+    addParentDirectories(this.moduleBoundaries, descendDirectories);
+    return descendDirectories;
+  }
+
+  private static void addParentDirectories(Set<String> directories, Set<String> parentDirectories) {
+    for (String directory : directories) {
+      String parent = parentDirectory(directory);
+      while (!parent.isEmpty() && parentDirectories.add(parent)) {
+        parent = parentDirectory(parent);
+      }
+    }
+  }
+
+  private void addWithParentDirectories(String directory, Set<String> directories) {
+    while (directories.add(directory) && !directory.isEmpty() && !this.moduleBoundaries.contains(directory)) {
+      directory = parentDirectory(directory);
+    }
+  }
+
+  static String parentDirectory(String path) {
+    int index = path.lastIndexOf('/');
+    return index == -1 ? "" : path.substring(0, index);
+  }
+
+}
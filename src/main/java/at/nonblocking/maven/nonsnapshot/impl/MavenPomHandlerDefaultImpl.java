@@ -16,11 +16,7 @@
 package at.nonblocking.maven.nonsnapshot.impl;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -36,7 +32,6 @@ import org.apache.maven.model.Plugin;
 import org.apache.maven.model.Profile;
 import org.apache.maven.model.io.xpp3.MavenXpp3ReaderEx;
 import org.codehaus.plexus.component.annotations.Component;
-import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.slf4j.Logger;
@@ -44,12 +39,16 @@ import org.slf4j.LoggerFactory;
 
 import at.nonblocking.maven.nonsnapshot.MavenPomHandler;
 import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
-import at.nonblocking.maven.nonsnapshot.model.MavenArtifact;
+import at.nonblocking.maven.nonsnapshot.model.MavenArtifactTable;
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
 
 /**
  * Default implementation of {@link MavenPomHandler}
+ * <br><br>
+ * The coordinates of the modules and the referenced artifacts are interned in a {@link MavenArtifactTable}
+ * which lives as long as a {@link #readArtifacts(List)} call, so equal dependency declarations of all modules of a run
+ * share a single artifact instance.
  *
  * @author Juergen Kofler
  */
@@ -58,8 +57,6 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(MavenPomHandlerDefaultImpl.class);
 
-  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
-
   @Override
   public MavenModule readArtifact(File pomFile) {
     LOG.debug("Loading POM file: {}", pomFile.getAbsolutePath());
@@ -79,6 +76,25 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
 
   @Override
   public MavenModule readArtifact(Model model) {
+    return readArtifact(model, new MavenArtifactTable());
+  }
+
+  @Override
+  public List<MavenModule> readArtifacts(List<Model> models) {
+    MavenArtifactTable artifactTable = new MavenArtifactTable();
+    List<MavenModule> mavenModules = new ArrayList<>(models.size());
+
+    for (int i = 0; i < models.size(); i++) {
+      mavenModules.add(readArtifact(models.get(i), artifactTable));
+      // Release the model, only the extracted module is needed from now on
+      models.set(i, null);
+    }
+
+    LOG.debug("Read {} modules referencing {} distinct artifacts", mavenModules.size(), artifactTable.size());
+    return mavenModules;
+  }
+
+  private MavenModule readArtifact(Model model, MavenArtifactTable artifactTable) {
     File pomFile = model.getPomFile();
 
     String groupId = model.getGroupId();
@@ -101,13 +117,14 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
       }
     }
 
-    MavenModule mavenModule = new MavenModule(pomFile, groupId, model.getArtifactId(), version);
+    MavenModule mavenModule = new MavenModule(pomFile, artifactTable.intern(groupId),
+        artifactTable.intern(model.getArtifactId()), artifactTable.intern(version));
     mavenModule.setInsertVersionTag(insertVersionTag);
     mavenModule.setVersionLocation(getVersionLocation(model));
 
     // Parent
     if (model.getParent() != null) {
-      mavenModule.setParent(new MavenArtifact(model.getParent().getGroupId(),
+      mavenModule.setParent(artifactTable.getArtifact(model.getParent().getGroupId(),
           model.getParent().getArtifactId(), model.getParent().getVersion()));
       mavenModule.setParentVersionLocation(getVersionLocation(model.getParent()));
     }
@@ -116,7 +133,7 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
     for (Dependency dependency : model.getDependencies()) {
       mavenModule.getDependencies().add(new MavenModuleDependency(
           getVersionLocation(dependency),
-          new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion())));
+          artifactTable.getArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion())));
     }
 
     // Plugins
@@ -124,12 +141,12 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
       for (Plugin plugin : model.getBuild().getPlugins()) {
         mavenModule.getDependencies().add(new MavenModuleDependency(
             getVersionLocation(plugin),
-            new MavenArtifact(plugin.getGroupId(), plugin.getArtifactId(), plugin.getVersion())));
+            artifactTable.getArtifact(plugin.getGroupId(), plugin.getArtifactId(), plugin.getVersion())));
 
         for (Dependency dependency : plugin.getDependencies()) {
           mavenModule.getDependencies().add(new MavenModuleDependency(
               getVersionLocation(dependency),
-              new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion())));
+              artifactTable.getArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion())));
         }
       }
     }
@@ -139,7 +156,7 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
       for (Dependency dependency : profile.getDependencies()) {
         mavenModule.getDependencies().add(new MavenModuleDependency(
             getVersionLocation(dependency),
-            new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion())));
+            artifactTable.getArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion())));
       }
     }
 
@@ -149,13 +166,13 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
         for (Plugin plugin : profile.getBuild().getPlugins()) {
           mavenModule.getDependencies().add(new MavenModuleDependency(
               getVersionLocation(plugin),
-              new MavenArtifact(plugin.getGroupId(), plugin.getArtifactId(), plugin.getVersion())));
+              artifactTable.getArtifact(plugin.getGroupId(), plugin.getArtifactId(), plugin.getVersion())));
 
 
           for (Dependency dependency : plugin.getDependencies()) {
             mavenModule.getDependencies().add(new MavenModuleDependency(
                 getVersionLocation(dependency),
-                new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion())));
+                artifactTable.getArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion())));
           }
         }
       }
@@ -174,35 +191,62 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
   }
 
   @Override
-  public void updateArtifact(MavenModule mavenModule) {
+  public boolean updateArtifact(MavenModule mavenModule) {
     if (!mavenModule.isDirty()) {
-      return;
+      return false;
     }
 
-    List<PomUpdateCommand> commands = new ArrayList<>();
+    PomRewriter rewriter = createRewriter(mavenModule);
+    return !rewriter.isEmpty() && rewriter.rewrite();
+  }
 
-    addUpdateCommand(mavenModule, mavenModule.getVersionLocation(), false, commands);
+  @Override
+  public List<MavenModule> updateArtifacts(List<MavenModule> mavenModules, int parallelism) {
+    PomWriteTransaction transaction = new PomWriteTransaction(parallelism);
+    Map<PomRewriter, MavenModule> rewrittenModules = new HashMap<>();
+
+    for (MavenModule mavenModule : mavenModules) {
+      if (mavenModule.isDirty()) {
+        PomRewriter rewriter = createRewriter(mavenModule);
+        if (!rewriter.isEmpty()) {
+          transaction.add(rewriter);
+          rewrittenModules.put(rewriter, mavenModule);
+        }
+      }
+    }
+
+    List<MavenModule> changedModules = new ArrayList<>();
+    for (PomRewriter rewriter : transaction.commit()) {
+      changedModules.add(rewrittenModules.get(rewriter));
+    }
+    return changedModules;
+  }
+
+  private PomRewriter createRewriter(MavenModule mavenModule) {
+    PomRewriter rewriter = new PomRewriter(mavenModule.getPomFile());
+
+    addUpdateCommand(mavenModule, mavenModule.getVersionLocation(), false, rewriter);
 
     if (mavenModule.getParent() != null) {
       if (mavenModule.getParent() instanceof MavenModule) {
-        addUpdateCommand((MavenModule) mavenModule.getParent(), mavenModule.getParentVersionLocation(), true, commands);
+        addUpdateCommand((MavenModule) mavenModule.getParent(), mavenModule.getParentVersionLocation(), true, rewriter);
       } else if (mavenModule.getParent() instanceof UpdatedUpstreamMavenArtifact) {
-        addUpdateCommand((UpdatedUpstreamMavenArtifact) mavenModule.getParent(), mavenModule.getParentVersionLocation(), commands);
+        addUpdateCommand((UpdatedUpstreamMavenArtifact) mavenModule.getParent(), mavenModule.getParentVersionLocation(), rewriter);
       }
     }
 
     for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
       if (dependency.getArtifact() instanceof MavenModule) {
-        addUpdateCommand((MavenModule) dependency.getArtifact(), dependency.getVersionLocation(), true, commands);
+        addUpdateCommand((MavenModule) dependency.getArtifact(), dependency.getVersionLocation(), true, rewriter);
       } else if (dependency.getArtifact() instanceof UpdatedUpstreamMavenArtifact) {
-        addUpdateCommand((UpdatedUpstreamMavenArtifact) dependency.getArtifact(), dependency.getVersionLocation(), commands);
+        addUpdateCommand((UpdatedUpstreamMavenArtifact) dependency.getArtifact(), dependency.getVersionLocation(), rewriter);
       }
     }
 
-    executeUpdateCommands(commands, mavenModule.getPomFile());
+    return rewriter;
   }
 
-  private void addUpdateCommand(MavenModule mavenModule, Integer lineNumber, boolean dependency, List<PomUpdateCommand> commands) {
+  private void addUpdateCommand(MavenModule mavenModule, Integer lineNumber, boolean dependency, PomRewriter rewriter) {
     if (!mavenModule.isDirty()) {
       return;
     }
@@ -212,83 +256,14 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
     }
 
     if (!dependency && mavenModule.isInsertVersionTag()) {
-      commands.add(new PomUpdateCommand(lineNumber, UPDATE_COMMAND_TYPE.INSERT, "<version>" + mavenModule.getNewVersion() + "</version>", null));
+      rewriter.insertVersion(lineNumber, mavenModule.getNewVersion());
     } else {
-      commands.add(new PomUpdateCommand(lineNumber, UPDATE_COMMAND_TYPE.REPLACE, "<version>.*?</version>", "<version>" + mavenModule.getNewVersion() + "</version>"));
-    }
-  }
-
-  private void addUpdateCommand(UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifact, Integer lineNumber, List<PomUpdateCommand> commands) {
-    commands.add(new PomUpdateCommand(lineNumber, UPDATE_COMMAND_TYPE.REPLACE, "<version>.*?</version>", "<version>" + updatedUpstreamMavenArtifact.getNewVersion() + "</version>"));
-  }
-
-  private void executeUpdateCommands(List<PomUpdateCommand> commands, File pomFile) {
-    Map<Integer, PomUpdateCommand> commandMap = new HashMap<>();
-
-    for (PomUpdateCommand command : commands) {
-      commandMap.put(command.lineNumber, command);
+      rewriter.replaceVersion(lineNumber, mavenModule.getNewVersion());
     }
-
-    try {
-      LineNumberReader reader = new LineNumberReader(new FileReader(pomFile));
-      File tempTarget = File.createTempFile("pom", ".xml");
-      PrintWriter writer = new PrintWriter(tempTarget);
-
-      LOG.debug("Writing temporary POM file to: {}", tempTarget.getAbsoluteFile());
-
-      String line;
-      while ((line = reader.readLine()) != null) {
-        PomUpdateCommand command = commandMap.get(reader.getLineNumber());
-        if (command != null) {
-          line = executeCommand(line, command);
-        }
-
-        writer.write(line + LINE_SEPARATOR);
-      }
-
-      reader.close();
-      writer.close();
-
-      LOG.debug("Copy temporary POM file to: {}", pomFile.getAbsoluteFile());
-      IOUtil.copy(new FileReader(tempTarget), new FileOutputStream(pomFile));
-      tempTarget.delete();
-
-    } catch (IOException e) {
-      throw new NonSnapshotPluginException("Failed to updated POM file: " + pomFile.getAbsolutePath(), e);
-    }
-  }
-
-  private String executeCommand(String line, PomUpdateCommand command) {
-    switch (command.commandType) {
-      case REPLACE:
-        LOG.debug("Replacing '{}' with '{}' in line number: {}", new Object[]{command.text1, command.text2, command.lineNumber});
-        return line.replaceAll(command.text1, command.text2);
-      case INSERT:
-        LOG.debug("Inserting '{}' in line number: {}", new Object[]{command.text1, command.lineNumber});
-        return line + LINE_SEPARATOR + command.text1;
-    }
-
-    return line;
   }
 
-  private enum UPDATE_COMMAND_TYPE {
-    INSERT, REPLACE
-  }
-
-  private static class PomUpdateCommand {
-
-    int lineNumber;
-    UPDATE_COMMAND_TYPE commandType;
-    String text1;
-    String text2;
-
-    public PomUpdateCommand(int lineNumber, UPDATE_COMMAND_TYPE commandType, String text1, String text2) {
-      this.lineNumber = lineNumber;
-      this.commandType = commandType;
-      this.text1 = text1;
-      this.text2 = text2;
-    }
-
+  private void addUpdateCommand(UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifact, Integer lineNumber, PomRewriter rewriter) {
+    rewriter.replaceVersion(lineNumber, updatedUpstreamMavenArtifact.getNewVersion());
   }
 
 }
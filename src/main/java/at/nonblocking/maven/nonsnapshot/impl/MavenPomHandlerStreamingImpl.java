@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.File;
+
+import org.codehaus.plexus.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.nonblocking.maven.nonsnapshot.MavenPomHandler;
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+
+/**
+ * {@link MavenPomHandler} which reads POM files with the {@link StreamingPomReader}
+ * instead of building a complete Maven model.
+ *
+ * @author Juergen Kofler
+ */
+@Component(role = MavenPomHandler.class, hint = "streaming")
+public class MavenPomHandlerStreamingImpl extends MavenPomHandlerDefaultImpl {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MavenPomHandlerStreamingImpl.class);
+
+  private StreamingPomReader pomReader = new StreamingPomReader();
+
+  @Override
+  public MavenModule readArtifact(File pomFile) {
+    LOG.debug("Loading POM file: {}", pomFile.getAbsolutePath());
+
+    return readArtifact(this.pomReader.read(pomFile));
+  }
+
+}
@@ -32,9 +32,17 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Default implementation of a module traverser.
+ * <br><br>
+ * If the parallelism is greater than 1 the POM files of sibling modules are parsed in parallel
+ * on a fork/join pool. The modules are returned in depth-first order in any case.
+ * <br>
+ * If a POM cache file is configured, unchanged POM files are not parsed again but taken from the cache
+ * (see {@link PomCache}).
  *
  * @author Juergen Kofler
  */
@@ -43,33 +51,97 @@ public class ModuleTraverserDefaultImpl implements ModuleTraverser {
 
   private static final Logger LOG = LoggerFactory.getLogger(ModuleTraverserDefaultImpl.class);
 
+  private int parallelism = 1;
+  private File pomCacheFile;
+  private PomCache pomCache;
+
+  @Override
+  public void init(Properties properties) {
+    this.parallelism = 1;
+    this.pomCacheFile = null;
+    if (properties != null && properties.getProperty("parallelism") != null) {
+      this.parallelism = Math.max(1, Integer.parseInt(properties.getProperty("parallelism")));
+    }
+    if (properties != null && properties.getProperty("pomCacheFile") != null) {
+      this.pomCacheFile = new File(properties.getProperty("pomCacheFile"));
+    }
+  }
+
   @Override
   public List<Model> findAllModules(MavenProject baseProject, List<Profile> activeProfiles) {
     LOG.info("Scanning for Maven modules... Active profiles: {}", activeProfiles);
 
-    List<Model> modelList = new ArrayList<>();
-    recursiveFindModules(baseProject.getBasedir(), modelList, activeProfiles);
-    return modelList;
+    if (this.pomCacheFile != null) {
+      this.pomCache = PomCache.load(this.pomCacheFile);
+    }
+
+    try {
+      if (this.parallelism > 1) {
+        LOG.debug("Parsing POM files with parallelism: {}", this.parallelism);
+        ForkJoinPool forkJoinPool = new ForkJoinPool(this.parallelism);
+        try {
+          return forkJoinPool.invoke(new FindModulesTask(baseProject.getBasedir(), activeProfiles));
+        } finally {
+          forkJoinPool.shutdown();
+        }
+      }
+
+      List<Model> modelList = new ArrayList<>();
+      recursiveFindModules(baseProject.getBasedir(), modelList, activeProfiles);
+      return modelList;
+
+    } finally {
+      if (this.pomCache != null) {
+        this.pomCache.save(this.pomCacheFile);
+        this.pomCache = null;
+      }
+    }
   }
 
   private void recursiveFindModules(File baseDir, List<Model> modelList, List<Profile> activeProfiles) {
-    MavenXpp3ReaderEx reader = new MavenXpp3ReaderEx();
+    Model model = readModelCached(baseDir);
+    modelList.add(model);
+
+    for (String modulePath : getModulePaths(model, activeProfiles)) {
+      File moduleDir = new File(baseDir, modulePath);
+      recursiveFindModules(moduleDir, modelList, activeProfiles);
+    }
+  }
+
+  private Model readModelCached(File baseDir) {
+    if (this.pomCache == null) {
+      return readModel(baseDir);
+    }
+
     File pom = new File(baseDir, "pom.xml");
+    Model model = this.pomCache.get(pom);
+    if (model != null) {
+      LOG.debug("Found maven module (cached): {}", baseDir.getAbsolutePath());
+      return model;
+    }
+
+    model = readModel(baseDir);
+    this.pomCache.put(pom, model);
+    return model;
+  }
 
-    Model model;
+  protected Model readModel(File baseDir) {
+    MavenXpp3ReaderEx reader = new MavenXpp3ReaderEx();
+    File pom = new File(baseDir, "pom.xml");
 
     try (XmlStreamReader xmlStreamReader = ReaderFactory.newXmlReader(pom)) {
       InputSource is = new InputSource();
-      model = reader.read(xmlStreamReader, false, is);
+      Model model = reader.read(xmlStreamReader, false, is);
       model.setPomFile(pom);
       LOG.debug("Found maven module: {}", pom.getParentFile().getAbsolutePath());
+      return model;
 
     } catch (IOException | XmlPullParserException e) {
       throw new NonSnapshotPluginException("Failed to load POM: " + pom.getAbsolutePath(), e);
     }
+  }
 
-    modelList.add(model);
-
+  private Set<String> getModulePaths(Model model, List<Profile> activeProfiles) {
     Set<String> modulePaths = new LinkedHashSet<>();
     modulePaths.addAll(model.getModules());
 
@@ -79,10 +151,7 @@ public class ModuleTraverserDefaultImpl implements ModuleTraverser {
       }
     }
 
-    for (String modulePath : modulePaths) {
-      File moduleDir = new File(baseDir, modulePath);
-      recursiveFindModules(moduleDir, modelList, activeProfiles);
-    }
+    return modulePaths;
   }
 
   private List<String> getProfileModules(Model model, Profile activeProfile) {
@@ -95,4 +164,39 @@ public class ModuleTraverserDefaultImpl implements ModuleTraverser {
     return Collections.emptyList();
   }
 
+  /**
+   * Parses the POM of a module and forks a sub task for each nested module.
+   * The results are joined in declaration order, so the returned list is in depth-first order.
+   */
+  private class FindModulesTask extends RecursiveTask<List<Model>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private File baseDir;
+    private List<Profile> activeProfiles;
+
+    private FindModulesTask(File baseDir, List<Profile> activeProfiles) {
+      this.baseDir = baseDir;
+      this.activeProfiles = activeProfiles;
+    }
+
+    @Override
+    protected List<Model> compute() {
+      Model model = readModelCached(this.baseDir);
+
+      List<FindModulesTask> subTasks = new ArrayList<>();
+      for (String modulePath : getModulePaths(model, this.activeProfiles)) {
+        subTasks.add(new FindModulesTask(new File(this.baseDir, modulePath), this.activeProfiles));
+      }
+      invokeAll(subTasks);
+
+      List<Model> modelList = new ArrayList<>();
+      modelList.add(model);
+      for (FindModulesTask subTask : subTasks) {
+        modelList.addAll(subTask.join());
+      }
+      return modelList;
+    }
+  }
+
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.File;
+
+import org.apache.maven.model.Model;
+import org.codehaus.plexus.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.nonblocking.maven.nonsnapshot.ModuleTraverser;
+
+/**
+ * Module traverser based on the {@link StreamingPomReader}.
+ * <br>
+ * The returned models only contain what {@link MavenPomHandlerStreamingImpl} needs.
+ *
+ * @author Juergen Kofler
+ */
+@Component(role = ModuleTraverser.class, hint = "streaming")
+public class ModuleTraverserStreamingImpl extends ModuleTraverserDefaultImpl {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ModuleTraverserStreamingImpl.class);
+
+  private StreamingPomReader pomReader = new StreamingPomReader();
+
+  @Override
+  protected Model readModel(File baseDir) {
+    Model model = this.pomReader.read(new File(baseDir, "pom.xml"));
+    LOG.debug("Found maven module: {}", baseDir.getAbsolutePath());
+    return model;
+  }
+
+}
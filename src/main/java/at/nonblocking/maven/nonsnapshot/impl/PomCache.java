@@ -0,0 +1,454 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.BuildBase;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.InputLocation;
+import org.apache.maven.model.InputLocationTracker;
+import org.apache.maven.model.InputSource;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.Profile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of the POM data this plugin needs (the same subset the {@link StreamingPomReader} extracts).
+ * <br><br>
+ * An entry is valid if size and modification time of the POM file didn't change.
+ * Otherwise the SHA-1 hash of the content decides (e.g. after a fresh checkout).
+ * <br>
+ * The cache is stored in a compact binary file, only the entries used during the last run are kept.
+ *
+ * @author Juergen Kofler
+ */
+public class PomCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PomCache.class);
+
+  private static final int FILE_MAGIC = 0x4e534e50;
+  private static final int FILE_VERSION = 1;
+
+  private static final String[] LOCATION_FIELDS = { "groupId", "artifactId", "version" };
+
+  private Map<String, Entry> loadedEntries = new ConcurrentHashMap<>();
+  private Map<String, Entry> usedEntries = new ConcurrentHashMap<>();
+  private volatile boolean modified;
+
+  /**
+   * Get the cached model of given POM file.
+   *
+   * @param pomFile File
+   * @return Model - null if there is no valid entry
+   */
+  public Model get(File pomFile) {
+    String path = pomFile.getAbsolutePath();
+    Entry entry = this.loadedEntries.get(path);
+    if (entry == null) {
+      return null;
+    }
+
+    long size = pomFile.length();
+    long lastModified = pomFile.lastModified();
+
+    if (entry.size != size || entry.lastModified != lastModified) {
+      if (entry.size != size || !Arrays.equals(entry.hash, hash(pomFile))) {
+        LOG.debug("POM file changed since it has been cached: {}", path);
+        return null;
+      }
+      entry = new Entry(size, lastModified, entry.hash, entry.model);
+      this.modified = true;
+    }
+
+    this.usedEntries.put(path, entry);
+
+    Model model = entry.model.clone();
+    model.setPomFile(pomFile);
+    return model;
+  }
+
+  /**
+   * Add the model of given POM file to the cache.
+   *
+   * @param pomFile File
+   * @param model Model - Only the parts this plugin needs are cached
+   */
+  public void put(File pomFile, Model model) {
+    byte[] hash = hash(pomFile);
+    if (hash == null) {
+      return;
+    }
+
+    this.usedEntries.put(pomFile.getAbsolutePath(), new Entry(pomFile.length(), pomFile.lastModified(), hash, toThinModel(model)));
+    this.modified = true;
+  }
+
+  /**
+   * Load the cache from given file. A missing or corrupt file results in an empty cache.
+   *
+   * @param cacheFile File
+   * @return PomCache
+   */
+  public static PomCache load(File cacheFile) {
+    PomCache pomCache = new PomCache();
+    if (!cacheFile.exists()) {
+      return pomCache;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+      if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+        LOG.info("Ignoring POM cache with unknown format: {}", cacheFile.getAbsolutePath());
+        return pomCache;
+      }
+
+      int entryCount = in.readInt();
+      InputSource source = new InputSource();
+      for (int i = 0; i < entryCount; i++) {
+        String path = in.readUTF();
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        byte[] hash = new byte[in.readUnsignedByte()];
+        in.readFully(hash);
+        Model model = readModel(in, source);
+        pomCache.loadedEntries.put(path, new Entry(size, lastModified, hash, model));
+      }
+
+      LOG.debug("Loaded {} entries from POM cache: {}", entryCount, cacheFile.getAbsolutePath());
+
+    } catch (IOException e) {
+      LOG.warn("Failed to read POM cache: {}", cacheFile.getAbsolutePath(), e);
+      pomCache.loadedEntries.clear();
+    }
+
+    return pomCache;
+  }
+
+  /**
+   * Write the entries used since loading to given file, if anything changed.
+   *
+   * @param cacheFile File
+   */
+  public void save(File cacheFile) {
+    if (!this.modified && this.usedEntries.size() == this.loadedEntries.size()) {
+      return;
+    }
+
+    cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+    File tempFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+        out.writeInt(this.usedEntries.size());
+        for (Map.Entry<String, Entry> mapEntry : this.usedEntries.entrySet()) {
+          Entry entry = mapEntry.getValue();
+          out.writeUTF(mapEntry.getKey());
+          out.writeLong(entry.size);
+          out.writeLong(entry.lastModified);
+          out.writeByte(entry.hash.length);
+          out.write(entry.hash);
+          writeModel(out, entry.model);
+        }
+      }
+
+      Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      LOG.debug("Written {} entries to POM cache: {}", this.usedEntries.size(), cacheFile.getAbsolutePath());
+
+    } catch (IOException e) {
+      LOG.warn("Failed to write POM cache: {}", cacheFile.getAbsolutePath(), e);
+    }
+  }
+
+  private static byte[] hash(File pomFile) {
+    try (InputStream in = new FileInputStream(pomFile)) {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+      return digest.digest();
+
+    } catch (IOException | NoSuchAlgorithmException e) {
+      LOG.warn("Failed to calculate hash of POM file: {}", pomFile.getAbsolutePath(), e);
+      return null;
+    }
+  }
+
+  private static Model toThinModel(Model model) {
+    Model thinModel = new Model();
+    thinModel.setGroupId(model.getGroupId());
+    thinModel.setArtifactId(model.getArtifactId());
+    thinModel.setVersion(model.getVersion());
+    copyLocations(model, thinModel);
+
+    if (model.getParent() != null) {
+      Parent parent = new Parent();
+      parent.setGroupId(model.getParent().getGroupId());
+      parent.setArtifactId(model.getParent().getArtifactId());
+      parent.setVersion(model.getParent().getVersion());
+      copyLocations(model.getParent(), parent);
+      thinModel.setParent(parent);
+    }
+
+    thinModel.getModules().addAll(model.getModules());
+    thinModel.getDependencies().addAll(toThinDependencies(model.getDependencies()));
+    if (model.getBuild() != null) {
+      thinModel.setBuild(toThinBuild(model.getBuild()));
+    }
+
+    for (Profile profile : model.getProfiles()) {
+      Profile thinProfile = new Profile();
+      thinProfile.setId(profile.getId());
+      thinProfile.getModules().addAll(profile.getModules());
+      thinProfile.getDependencies().addAll(toThinDependencies(profile.getDependencies()));
+      if (profile.getBuild() != null) {
+        thinProfile.setBuild(toThinBuild(profile.getBuild()));
+      }
+      thinModel.getProfiles().add(thinProfile);
+    }
+
+    return thinModel;
+  }
+
+  private static Build toThinBuild(BuildBase build) {
+    Build thinBuild = new Build();
+    for (Plugin plugin : build.getPlugins()) {
+      Plugin thinPlugin = new Plugin();
+      thinPlugin.setGroupId(plugin.getGroupId());
+      thinPlugin.setArtifactId(plugin.getArtifactId());
+      thinPlugin.setVersion(plugin.getVersion());
+      copyLocations(plugin, thinPlugin);
+      thinPlugin.getDependencies().addAll(toThinDependencies(plugin.getDependencies()));
+      thinBuild.addPlugin(thinPlugin);
+    }
+    return thinBuild;
+  }
+
+  private static List<Dependency> toThinDependencies(List<Dependency> dependencies) {
+    List<Dependency> thinDependencies = new ArrayList<>(dependencies.size());
+    for (Dependency dependency : dependencies) {
+      Dependency thinDependency = new Dependency();
+      thinDependency.setGroupId(dependency.getGroupId());
+      thinDependency.setArtifactId(dependency.getArtifactId());
+      thinDependency.setVersion(dependency.getVersion());
+      copyLocations(dependency, thinDependency);
+      thinDependencies.add(thinDependency);
+    }
+    return thinDependencies;
+  }
+
+  private static void copyLocations(InputLocationTracker source, InputLocationTracker target) {
+    for (String field : LOCATION_FIELDS) {
+      InputLocation location = source.getLocation(field);
+      if (location != null) {
+        target.setLocation(field, location);
+      }
+    }
+  }
+
+  private static void writeModel(DataOutput out, Model model) throws IOException {
+    writeCoordinates(out, model.getGroupId(), model.getArtifactId(), model.getVersion(), model);
+
+    out.writeBoolean(model.getParent() != null);
+    if (model.getParent() != null) {
+      Parent parent = model.getParent();
+      writeCoordinates(out, parent.getGroupId(), parent.getArtifactId(), parent.getVersion(), parent);
+    }
+
+    writeStrings(out, model.getModules());
+    writeDependencies(out, model.getDependencies());
+    writeBuild(out, model.getBuild());
+
+    out.writeInt(model.getProfiles().size());
+    for (Profile profile : model.getProfiles()) {
+      writeString(out, profile.getId());
+      writeStrings(out, profile.getModules());
+      writeDependencies(out, profile.getDependencies());
+      writeBuild(out, profile.getBuild());
+    }
+  }
+
+  private static Model readModel(DataInput in, InputSource source) throws IOException {
+    Model model = new Model();
+    model.setGroupId(readString(in));
+    model.setArtifactId(readString(in));
+    model.setVersion(readString(in));
+    readLocations(in, model, source);
+
+    if (in.readBoolean()) {
+      Parent parent = new Parent();
+      parent.setGroupId(readString(in));
+      parent.setArtifactId(readString(in));
+      parent.setVersion(readString(in));
+      readLocations(in, parent, source);
+      model.setParent(parent);
+    }
+
+    readStrings(in, model.getModules());
+    readDependencies(in, model.getDependencies(), source);
+    model.setBuild(readBuild(in, source));
+
+    int profileCount = in.readInt();
+    for (int i = 0; i < profileCount; i++) {
+      Profile profile = new Profile();
+      profile.setId(readString(in));
+      readStrings(in, profile.getModules());
+      readDependencies(in, profile.getDependencies(), source);
+      profile.setBuild(readBuild(in, source));
+      model.getProfiles().add(profile);
+    }
+
+    return model;
+  }
+
+  private static void writeBuild(DataOutput out, BuildBase build) throws IOException {
+    out.writeBoolean(build != null);
+    if (build == null) {
+      return;
+    }
+
+    out.writeInt(build.getPlugins().size());
+    for (Plugin plugin : build.getPlugins()) {
+      writeCoordinates(out, plugin.getGroupId(), plugin.getArtifactId(), plugin.getVersion(), plugin);
+      writeDependencies(out, plugin.getDependencies());
+    }
+  }
+
+  private static Build readBuild(DataInput in, InputSource source) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+
+    Build build = new Build();
+    int pluginCount = in.readInt();
+    for (int i = 0; i < pluginCount; i++) {
+      Plugin plugin = new Plugin();
+      plugin.setGroupId(readString(in));
+      plugin.setArtifactId(readString(in));
+      plugin.setVersion(readString(in));
+      readLocations(in, plugin, source);
+      readDependencies(in, plugin.getDependencies(), source);
+      build.addPlugin(plugin);
+    }
+    return build;
+  }
+
+  private static void writeDependencies(DataOutput out, List<Dependency> dependencies) throws IOException {
+    out.writeInt(dependencies.size());
+    for (Dependency dependency : dependencies) {
+      writeCoordinates(out, dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion(), dependency);
+    }
+  }
+
+  private static void readDependencies(DataInput in, List<Dependency> dependencies, InputSource source) throws IOException {
+    int dependencyCount = in.readInt();
+    for (int i = 0; i < dependencyCount; i++) {
+      Dependency dependency = new Dependency();
+      dependency.setGroupId(readString(in));
+      dependency.setArtifactId(readString(in));
+      dependency.setVersion(readString(in));
+      readLocations(in, dependency, source);
+      dependencies.add(dependency);
+    }
+  }
+
+  private static void writeCoordinates(DataOutput out, String groupId, String artifactId, String version, InputLocationTracker tracker) throws IOException {
+    writeString(out, groupId);
+    writeString(out, artifactId);
+    writeString(out, version);
+    for (String field : LOCATION_FIELDS) {
+      InputLocation location = tracker.getLocation(field);
+      out.writeInt(location != null ? location.getLineNumber() : -1);
+      out.writeInt(location != null ? location.getColumnNumber() : -1);
+    }
+  }
+
+  private static void readLocations(DataInput in, InputLocationTracker tracker, InputSource source) throws IOException {
+    for (String field : LOCATION_FIELDS) {
+      int lineNumber = in.readInt();
+      int columnNumber = in.readInt();
+      if (lineNumber != -1) {
+        tracker.setLocation(field, new InputLocation(lineNumber, columnNumber, source));
+      }
+    }
+  }
+
+  private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      writeString(out, string);
+    }
+  }
+
+  private static void readStrings(DataInput in, List<String> strings) throws IOException {
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      strings.add(readString(in));
+    }
+  }
+
+  private static void writeString(DataOutput out, String string) throws IOException {
+    out.writeBoolean(string != null);
+    if (string != null) {
+      out.writeUTF(string);
+    }
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static class Entry {
+    private long size;
+    private long lastModified;
+    private byte[] hash;
+    private Model model;
+
+    private Entry(long size, long lastModified, byte[] hash, Model model) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+      this.model = model;
+    }
+  }
+
+}
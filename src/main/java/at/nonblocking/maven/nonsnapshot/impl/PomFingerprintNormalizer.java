@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.InputLocation;
+import org.apache.maven.model.InputLocationTracker;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.Profile;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes the version elements the plugin rewrites itself from the content of a module POM,
+ * so the content fingerprint doesn't change because of the plugin's own version updates.
+ * <br><br>
+ * These are the project version, the parent version and the versions of dependencies and plugins
+ * which are modules or upstream dependencies (the same locations {@link MavenPomHandlerDefaultImpl} updates).
+ * All other versions (third party dependencies, plugins, properties) are kept.
+ *
+ * @author Juergen Kofler
+ */
+public class PomFingerprintNormalizer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PomFingerprintNormalizer.class);
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final String VERSION_START_TAG = "<version>";
+  private static final String VERSION_END_TAG = "</version>";
+
+  private PomFingerprintNormalizer() {
+  }
+
+  /**
+   * Remove differences in line endings and the version elements the plugin rewrites from given POM content.
+   * If the POM cannot be parsed only the line endings are normalized.
+   *
+   * @param content byte[]
+   * @param rewrittenArtifacts Set&lt;String&gt; - groupId:artifactId of the modules and upstream dependencies
+   * @return byte[]
+   */
+  public static byte[] normalize(byte[] content, Set<String> rewrittenArtifacts) {
+    String pom = new String(content, UTF8).replace("\r", "");
+
+    Set<Integer> versionLines = new TreeSet<>();
+    try {
+      Model model = new StreamingPomReader().read(new StringReader(pom));
+
+      addVersionLine(model, versionLines);
+      if (model.getParent() != null && isRewritten(model.getParent().getGroupId(), model.getParent().getArtifactId(), rewrittenArtifacts)) {
+        addVersionLine(model.getParent(), versionLines);
+      }
+
+      addDependencyVersionLines(model.getDependencies(), rewrittenArtifacts, versionLines);
+      if (model.getBuild() != null) {
+        addPluginVersionLines(model.getBuild().getPlugins(), rewrittenArtifacts, versionLines);
+      }
+      for (Profile profile : model.getProfiles()) {
+        addDependencyVersionLines(profile.getDependencies(), rewrittenArtifacts, versionLines);
+        if (profile.getBuild() != null) {
+          addPluginVersionLines(profile.getBuild().getPlugins(), rewrittenArtifacts, versionLines);
+        }
+      }
+
+    } catch (IOException | XmlPullParserException e) {
+      LOG.debug("Failed to parse POM, fingerprinting it with all version elements: {}", e.getMessage());
+      return pom.getBytes(UTF8);
+    }
+
+    return removeVersionElements(pom, versionLines).getBytes(UTF8);
+  }
+
+  private static void addDependencyVersionLines(List<Dependency> dependencies, Set<String> rewrittenArtifacts, Set<Integer> versionLines) {
+    for (Dependency dependency : dependencies) {
+      if (isRewritten(dependency.getGroupId(), dependency.getArtifactId(), rewrittenArtifacts)) {
+        addVersionLine(dependency, versionLines);
+      }
+    }
+  }
+
+  private static void addPluginVersionLines(List<Plugin> plugins, Set<String> rewrittenArtifacts, Set<Integer> versionLines) {
+    for (Plugin plugin : plugins) {
+      if (isRewritten(plugin.getGroupId(), plugin.getArtifactId(), rewrittenArtifacts)) {
+        addVersionLine(plugin, versionLines);
+      }
+      addDependencyVersionLines(plugin.getDependencies(), rewrittenArtifacts, versionLines);
+    }
+  }
+
+  private static boolean isRewritten(String groupId, String artifactId, Set<String> rewrittenArtifacts) {
+    return rewrittenArtifacts.contains(groupId + ":" + artifactId);
+  }
+
+  private static void addVersionLine(InputLocationTracker tracker, Set<Integer> versionLines) {
+    InputLocation location = tracker.getLocation("version");
+    if (location != null) {
+      versionLines.add(location.getLineNumber());
+    }
+  }
+
+  /**
+   * Remove the version elements (including the whitespace in front of them) on given lines.
+   */
+  private static String removeVersionElements(String pom, Set<Integer> versionLines) {
+    StringBuilder result = new StringBuilder(pom.length());
+
+    int line = 1;
+    int lineStart = 0;
+    int copied = 0;
+    for (int versionLine : versionLines) {
+      while (line < versionLine && lineStart != -1) {
+        lineStart = pom.indexOf('\n', lineStart);
+        if (lineStart != -1) {
+          lineStart++;
+        }
+        line++;
+      }
+      if (lineStart == -1) {
+        break;
+      }
+
+      int lineEnd = pom.indexOf('\n', lineStart);
+      if (lineEnd == -1) {
+        lineEnd = pom.length();
+      }
+      int start = pom.indexOf(VERSION_START_TAG, lineStart);
+      if (start == -1 || start >= lineEnd) {
+        continue;
+      }
+      int end = pom.indexOf(VERSION_END_TAG, start);
+      if (end == -1 || end >= lineEnd) {
+        continue;
+      }
+      while (start > copied && Character.isWhitespace(pom.charAt(start - 1))) {
+        start--;
+      }
+
+      result.append(pom, copied, start);
+      copied = end + VERSION_END_TAG.length();
+    }
+    result.append(pom, copied, pom.length());
+
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+
+/**
+ * Rewrites the version elements of a POM file on byte level.
+ * <br><br>
+ * The file is read once, the byte ranges of the version texts are located on the lines recorded at parse time
+ * and the new versions are spliced into a single output buffer. Everything else is copied as it is
+ * (no decoding, no line ending conversion). The result is written to a temporary file in the same directory
+ * which atomically replaces the POM.
+ * <br>
+ * The temporary file gets the permissions of the POM file, and if the POM file is a symbolic link
+ * the link target is replaced (so the link is kept).
+ * <br>
+ * Staging and publishing can also be done in separate steps, see {@link PomWriteTransaction}.
+ * <br>
+ * Works for all ASCII compatible encodings (UTF-8, ISO-8859-x, ...).
+ *
+ * @author Juergen Kofler
+ */
+public class PomRewriter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PomRewriter.class);
+
+  private static final byte[] VERSION_START_TAG = "<version>".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] VERSION_END_TAG = "</version>".getBytes(StandardCharsets.US_ASCII);
+
+  private File pomFile;
+  private Map<Integer, Edit> edits = new TreeMap<>();
+
+  private byte[] originalContent;
+  private Path stagedFile;
+  private boolean published;
+
+  public PomRewriter(File pomFile) {
+    this.pomFile = pomFile;
+  }
+
+  public File getPomFile() {
+    return pomFile;
+  }
+
+  /**
+   * Replace the content of the version element on given line.
+   *
+   * @param lineNumber int
+   * @param newVersion String
+   */
+  public void replaceVersion(int lineNumber, String newVersion) {
+    LOG.debug("Replacing version with '{}' in line number: {}", newVersion, lineNumber);
+    this.edits.put(lineNumber, new Edit(lineNumber, false, newVersion));
+  }
+
+  /**
+   * Insert a version element after given line.
+   *
+   * @param lineNumber int
+   * @param version String
+   */
+  public void insertVersion(int lineNumber, String version) {
+    LOG.debug("Inserting version '{}' after line number: {}", version, lineNumber);
+    this.edits.put(lineNumber, new Edit(lineNumber, true, version));
+  }
+
+  public boolean isEmpty() {
+    return this.edits.isEmpty();
+  }
+
+  /**
+   * Apply all edits to the POM file.
+   *
+   * @return boolean - False if the edits didn't change the content, so the file hasn't been written
+   */
+  public boolean rewrite() {
+    if (!stage()) {
+      return false;
+    }
+    try {
+      publish();
+    } catch (RuntimeException e) {
+      rollback();
+      throw e;
+    }
+    return true;
+  }
+
+  /**
+   * Write the rewritten POM to a temporary file next to the original one.
+   * The POM file itself is not touched until {@link #publish()} is called.
+   * <br>
+   * Nothing is staged if the rewritten POM is byte-identical to the current one.
+   *
+   * @return boolean - False if the edits don't change the content
+   */
+  public boolean stage() {
+    try {
+      this.originalContent = Files.readAllBytes(this.pomFile.toPath());
+      byte[] newContent = apply(this.originalContent);
+      if (Arrays.equals(newContent, this.originalContent)) {
+        LOG.debug("POM file unchanged, skipping the rewrite: {}", this.pomFile.getAbsolutePath());
+        this.originalContent = null;
+        return false;
+      }
+
+      this.stagedFile = writeTempFile(resolveTarget(this.pomFile), newContent);
+      LOG.debug("Wrote temporary POM file to: {}", this.stagedFile);
+      return true;
+
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to updated POM file: " + this.pomFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Replace the POM file by the staged one.
+   */
+  public void publish() {
+    if (this.stagedFile == null) {
+      throw new IllegalStateException("POM file not staged: " + this.pomFile.getAbsolutePath());
+    }
+
+    try {
+      moveAtomically(this.stagedFile, resolveTarget(this.pomFile));
+      this.stagedFile = null;
+      this.published = true;
+
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to updated POM file: " + this.pomFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Discard the staged file, or restore the original content if the POM file has already been published.
+   * Failures are only logged, since a rollback always happens because of another error.
+   */
+  public void rollback() {
+    try {
+      if (this.stagedFile != null) {
+        Files.deleteIfExists(this.stagedFile);
+        this.stagedFile = null;
+      }
+      if (this.published) {
+        writeAtomically(this.pomFile, this.originalContent);
+        this.published = false;
+      }
+    } catch (IOException e) {
+      LOG.error("Failed to roll back POM file: " + this.pomFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Apply all edits to given POM content.
+   *
+   * @param content byte[]
+   * @return byte[] - The new content
+   */
+  public byte[] apply(byte[] content) {
+    List<Splice> splices = new ArrayList<>(this.edits.size());
+
+    int line = 1;
+    int lineStart = 0;
+    for (Edit edit : this.edits.values()) {
+      while (line < edit.lineNumber && lineStart < content.length) {
+        lineStart = nextLineStart(content, lineStart);
+        line++;
+      }
+      if (line < edit.lineNumber) {
+        throw new NonSnapshotPluginException("Line " + edit.lineNumber + " not found in POM file: " + this.pomFile.getAbsolutePath());
+      }
+
+      Splice splice = edit.insert ? createInsert(content, lineStart, edit) : createReplace(content, lineStart, edit);
+      if (splice != null) {
+        splices.add(splice);
+      }
+    }
+
+    int length = content.length;
+    for (Splice splice : splices) {
+      length += splice.replacement.length - (splice.end - splice.start);
+    }
+
+    byte[] result = new byte[length];
+    int sourcePos = 0;
+    int targetPos = 0;
+    for (Splice splice : splices) {
+      int unchanged = splice.start - sourcePos;
+      System.arraycopy(content, sourcePos, result, targetPos, unchanged);
+      targetPos += unchanged;
+      System.arraycopy(splice.replacement, 0, result, targetPos, splice.replacement.length);
+      targetPos += splice.replacement.length;
+      sourcePos = splice.end;
+    }
+    System.arraycopy(content, sourcePos, result, targetPos, content.length - sourcePos);
+
+    return result;
+  }
+
+  private Splice createReplace(byte[] content, int lineStart, Edit edit) {
+    int lineEnd = lineEnd(content, lineStart);
+
+    int startTag = indexOf(content, VERSION_START_TAG, lineStart, lineEnd);
+    if (startTag == -1) {
+      LOG.debug("No version element in line {} of POM file: {}", edit.lineNumber, this.pomFile.getAbsolutePath());
+      return null;
+    }
+    int textStart = startTag + VERSION_START_TAG.length;
+    int textEnd = indexOf(content, VERSION_END_TAG, textStart, lineEnd);
+    if (textEnd == -1) {
+      LOG.debug("Version element in line {} doesn't end on the same line: {}", edit.lineNumber, this.pomFile.getAbsolutePath());
+      return null;
+    }
+
+    return new Splice(textStart, textEnd, edit.version.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private Splice createInsert(byte[] content, int lineStart, Edit edit) {
+    int lineEnd = lineEnd(content, lineStart);
+    int nextLineStart = nextLineStart(content, lineStart);
+
+    int indentEnd = lineStart;
+    while (indentEnd < lineEnd && (content[indentEnd] == ' ' || content[indentEnd] == '\t')) {
+      indentEnd++;
+    }
+
+    // Keep the line ending of the line we insert after
+    byte[] lineEnding = nextLineStart > lineEnd
+        ? copyOfRange(content, lineEnd, nextLineStart) : System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    byte[] element = ("<version>" + edit.version + "</version>").getBytes(StandardCharsets.UTF_8);
+
+    byte[] replacement;
+    if (nextLineStart > lineEnd) {
+      replacement = concat(copyOfRange(content, lineStart, indentEnd), element, lineEnding);
+    } else {
+      replacement = concat(lineEnding, copyOfRange(content, lineStart, indentEnd), element);
+    }
+
+    return new Splice(nextLineStart, nextLineStart, replacement);
+  }
+
+  private static int nextLineStart(byte[] content, int pos) {
+    while (pos < content.length && content[pos] != '\n') {
+      pos++;
+    }
+    return Math.min(pos + 1, content.length);
+  }
+
+  private static int lineEnd(byte[] content, int lineStart) {
+    int pos = lineStart;
+    while (pos < content.length && content[pos] != '\n' && content[pos] != '\r') {
+      pos++;
+    }
+    return pos;
+  }
+
+  private static int indexOf(byte[] content, byte[] pattern, int from, int to) {
+    outer:
+    for (int i = from; i <= to - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (content[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private static byte[] copyOfRange(byte[] content, int from, int to) {
+    byte[] copy = new byte[to - from];
+    System.arraycopy(content, from, copy, 0, copy.length);
+    return copy;
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    int length = 0;
+    for (byte[] part : parts) {
+      length += part.length;
+    }
+    byte[] result = new byte[length];
+    int pos = 0;
+    for (byte[] part : parts) {
+      System.arraycopy(part, 0, result, pos, part.length);
+      pos += part.length;
+    }
+    return result;
+  }
+
+  /**
+   * Write given content to a temporary file in the same directory and rename it to given file.
+   *
+   * @param file File
+   * @param content byte[]
+   * @throws IOException
+   */
+  static void writeAtomically(File file, byte[] content) throws IOException {
+    Path target = resolveTarget(file);
+    Path tempFile = writeTempFile(target, content);
+    try {
+      moveAtomically(tempFile, target);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * The file to actually replace: The target of symbolic links, so the link itself is kept.
+   */
+  private static Path resolveTarget(File file) throws IOException {
+    Path path = file.getAbsoluteFile().toPath();
+    return Files.exists(path) ? path.toRealPath() : path;
+  }
+
+  /**
+   * Write given content to a new temporary file next to given target, with the same permissions as the target.
+   */
+  private static Path writeTempFile(Path target, byte[] content) throws IOException {
+    Path tempFile = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+    try {
+      Files.write(tempFile, content);
+      copyPermissions(target, tempFile);
+      return tempFile;
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(tempFile);
+      throw e;
+    }
+  }
+
+  private static void copyPermissions(Path source, Path target) throws IOException {
+    if (!Files.exists(source)) {
+      return;
+    }
+    if (Files.getFileStore(source).supportsFileAttributeView(PosixFileAttributeView.class)) {
+      Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+    } else if (Files.getFileStore(source).supportsFileAttributeView(DosFileAttributeView.class)) {
+      DosFileAttributes attributes = Files.readAttributes(source, DosFileAttributes.class);
+      DosFileAttributeView targetView = Files.getFileAttributeView(target, DosFileAttributeView.class);
+      targetView.setHidden(attributes.isHidden());
+      targetView.setArchive(attributes.isArchive());
+      targetView.setSystem(attributes.isSystem());
+      // Read-only last, it would prevent the other updates
+      targetView.setReadOnly(attributes.isReadOnly());
+    }
+  }
+
+  private static void moveAtomically(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static class Edit {
+    private int lineNumber;
+    private boolean insert;
+    private String version;
+
+    private Edit(int lineNumber, boolean insert, String version) {
+      this.lineNumber = lineNumber;
+      this.insert = insert;
+      this.version = version;
+    }
+  }
+
+  private static class Splice {
+    private int start;
+    private int end;
+    private byte[] replacement;
+
+    private Splice(int start, int end, byte[] replacement) {
+      this.start = start;
+      this.end = end;
+      this.replacement = replacement;
+    }
+  }
+
+}
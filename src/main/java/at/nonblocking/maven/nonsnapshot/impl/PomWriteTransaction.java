@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.nonblocking.maven.nonsnapshot.ConcurrencyUtil;
+
+/**
+ * Writes a set of POM files all or nothing:
+ * <ol>
+ *   <li>All POM files are rewritten (in parallel) into temporary files next to the originals</li>
+ *   <li>If that succeeded, the temporary files replace the POM files with atomic renames</li>
+ * </ol>
+ * If a POM file cannot be staged all temporary files are removed and no POM file is touched.
+ * If a rename fails the POM files already replaced are restored.
+ * <br>
+ * POM files the edits don't change are neither staged nor replaced.
+ *
+ * @author Juergen Kofler
+ */
+public class PomWriteTransaction {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PomWriteTransaction.class);
+
+  private List<PomRewriter> rewriters = new ArrayList<>();
+  private int parallelism;
+
+  public PomWriteTransaction(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  public void add(PomRewriter rewriter) {
+    this.rewriters.add(rewriter);
+  }
+
+  /**
+   * Stage and publish all POM files.
+   *
+   * @return List&lt;PomRewriter&gt; - The rewriters of the POM files which actually changed
+   */
+  public List<PomRewriter> commit() {
+    final List<PomRewriter> staged = Collections.synchronizedList(new ArrayList<PomRewriter>());
+
+    List<Callable<Boolean>> tasks = new ArrayList<>(this.rewriters.size());
+    for (final PomRewriter rewriter : this.rewriters) {
+      tasks.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          boolean changed = rewriter.stage();
+          if (changed) {
+            staged.add(rewriter);
+          }
+          return changed;
+        }
+      });
+    }
+
+    List<Boolean> stagingResults;
+    try {
+      stagingResults = ConcurrencyUtil.invokeAll(tasks, this.parallelism);
+    } catch (RuntimeException | Error e) {
+      LOG.error("Staging of the POM files failed. Discarding {} staged files.", staged.size());
+      rollback(staged);
+      throw e;
+    }
+
+    List<PomRewriter> changed = new ArrayList<>(staged.size());
+    for (int i = 0; i < this.rewriters.size(); i++) {
+      if (stagingResults.get(i)) {
+        changed.add(this.rewriters.get(i));
+      }
+    }
+
+    List<PomRewriter> published = new ArrayList<>(changed.size());
+    try {
+      for (PomRewriter rewriter : changed) {
+        rewriter.publish();
+        published.add(rewriter);
+      }
+    } catch (RuntimeException | Error e) {
+      LOG.error("Replacing the POM files failed. Restoring {} already replaced files.", published.size());
+      rollback(changed);
+      throw e;
+    }
+
+    return changed;
+  }
+
+  private static void rollback(List<PomRewriter> rewriters) {
+    synchronized (rewriters) {
+      for (PomRewriter rewriter : rewriters) {
+        rewriter.rollback();
+      }
+    }
+  }
+
+}
@@ -15,40 +15,84 @@
  */
 package at.nonblocking.maven.nonsnapshot.impl;
 
+import at.nonblocking.maven.nonsnapshot.AbstractScmHandler;
+import at.nonblocking.maven.nonsnapshot.ContentFingerprint;
 import at.nonblocking.maven.nonsnapshot.PathUtil;
 import at.nonblocking.maven.nonsnapshot.ScmHandler;
+import at.nonblocking.maven.nonsnapshot.ScmModuleQuery;
+import at.nonblocking.maven.nonsnapshot.ScmModuleStatus;
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotCommitConflictException;
 import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
 import com.jcraft.jsch.Session;
 import org.codehaus.plexus.component.annotations.Component;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.LogCommand;
+import org.eclipse.jgit.api.RebaseCommand;
+import org.eclipse.jgit.api.RebaseResult;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.errors.UnsupportedCredentialItem;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
-import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.lib.BranchConfig;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.*;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeOptions;
+import org.eclipse.jgit.util.io.EolCanonicalizingInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * GIT implementation of {@link at.nonblocking.maven.nonsnapshot.ScmHandler} based on JGit.
+ * <br><br>
+ * The handler can be used concurrently: The repository is shared, but every history walk uses its own RevWalk
+ * and access to the history index is synchronized. Bulk queries need a single walk anyway, so they are not split up.
  *
  * @author Juergen Kofler
  */
 @Component(role = ScmHandler.class, hint = "GIT")
-public class ScmHandlerGitImpl implements ScmHandler {
+public class ScmHandlerGitImpl extends AbstractScmHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(ScmHandlerGitImpl.class);
 
+  private static final int MAX_SINGLE_PATH_COMMITS = 100;
+
   private File baseDir;
   private Git git;
   private CredentialsProvider credentialsProvider;
   private boolean doPush = true;
+  private ObjectId lastCommitId;
+
+  private GitHistoryIndex historyIndex = new GitHistoryIndex();
+  private File historyIndexFile;
 
   static {
     SshSessionFactory.setInstance(new JschConfigSessionFactory() {
@@ -66,19 +110,12 @@ public class ScmHandlerGitImpl implements ScmHandler {
 
   @Override
   public Date getLastCommitDate(File path) {
-
     try {
-      LogCommand logCommand = this.git
-              .log()
-              .setMaxCount(100);
-
-      String modulePath = PathUtil.relativePath(this.baseDir, path);
-      if (!modulePath.isEmpty()) {
-        logCommand.addPath(modulePath);
+      GitDirectoryHistory history = getDirectoryHistory(path);
+      if (history == null) {
+        throw new NonSnapshotPluginException("No commit found for path: " + path.getAbsolutePath());
       }
-
-      RevCommit lastCommit = logCommand.call().iterator().next();
-      return new Date(lastCommit.getCommitTime() * 1000L);
+      return history.getLastCommitDate();
 
     } catch (Exception e) {
       throw new NonSnapshotPluginException("Failed to determine last commit date!", e);
@@ -97,26 +134,13 @@ public class ScmHandlerGitImpl implements ScmHandler {
     }
 
     try {
-      String modulePath = PathUtil.relativePath(this.baseDir, moduleDirectory);
-
-      LogCommand logCommand = this.git
-          .log()
-          .setMaxCount(100);
-
-      if (!modulePath.isEmpty()) {
-        logCommand.addPath(modulePath);
-      }
-
-      for (RevCommit commit : logCommand.call()) {
-        Date commitTime = new Date(commit.getCommitTime() * 1000L);
+      GitDirectoryHistory history = getDirectoryHistory(moduleDirectory);
+      if (history != null && history.getLastNonPluginCommitId() != null) {
+        Date commitTime = history.getLastNonPluginCommitDate();
         if (commitTime.after(sinceDate)) {
-          if (!commit.getFullMessage().startsWith(NONSNAPSHOT_COMMIT_MESSAGE_PREFIX)) {
-            LOG.debug("Module folder {}: Change since last commit: rev{} @ {} ({})",
-                new Object[]{moduleDirectory.getAbsolutePath(), commit.getId(), commitTime, commit.getFullMessage()});
-            return true;
-          }
-        } else {
-          break;
+          LOG.debug("Module folder {}: Change since last commit: rev{} @ {}",
+              new Object[]{moduleDirectory.getAbsolutePath(), history.getLastNonPluginCommitId().name(), commitTime});
+          return true;
         }
       }
 
@@ -128,49 +152,464 @@ public class ScmHandlerGitImpl implements ScmHandler {
     return false;
   }
 
+  @Override
+  public Map<File, ScmModuleStatus> checkChanges(List<ScmModuleQuery> queries) {
+    if (this.git == null) {
+      return super.checkChanges(queries);
+    }
+
+    Map<File, String> modulePaths = new LinkedHashMap<>();
+    Set<String> moduleBoundaries = new HashSet<>();
+    Map<String, GitDirectoryHistory> histories;
+
+    try {
+      for (ScmModuleQuery query : queries) {
+        if (query.isRevisionQuery()) {
+          throw new RuntimeException("Operation checkChangesSinceRevision() not supported by the GIT handler");
+        }
+        modulePaths.put(query.getModuleDirectory(), PathUtil.relativePath(this.baseDir, query.getModuleDirectory()));
+        for (File excludedDirectory : query.getExcludedDirectories()) {
+          moduleBoundaries.add(PathUtil.relativePath(this.baseDir, excludedDirectory));
+        }
+      }
+
+      synchronized (this) {
+        setModuleBoundaries(moduleBoundaries);
+        histories = new HashMap<>(getDirectoryHistories(modulePaths.values()));
+      }
+
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to determine the GIT history of the modules!", e);
+    }
+
+    Map<File, ScmModuleStatus> result = new LinkedHashMap<>();
+
+    for (ScmModuleQuery query : queries) {
+      File moduleDirectory = query.getModuleDirectory();
+      GitDirectoryHistory history = histories.get(modulePaths.get(moduleDirectory));
+      if (history == null) {
+        throw new NonSnapshotPluginException("Failed to determine last commit date! No commit found for path: " + moduleDirectory.getAbsolutePath());
+      }
+
+      ScmModuleStatus status = new ScmModuleStatus(moduleDirectory);
+      status.setLastCommitDate(history.getLastCommitDate());
+
+      Date lastNonPluginCommitDate = history.getLastNonPluginCommitDate();
+      if (lastNonPluginCommitDate != null && lastNonPluginCommitDate.after(query.getSinceDate())) {
+        LOG.debug("Module folder {}: Change since last commit: rev{} @ {}",
+            new Object[]{moduleDirectory.getAbsolutePath(), history.getLastNonPluginCommitId().name(), lastNonPluginCommitDate});
+        status.setChanged(true);
+      }
+
+      result.put(moduleDirectory, status);
+    }
+
+    return result;
+  }
+
+  /**
+   * Single path lookups only walk the history of the requested directory and stop at its last non plugin commit.
+   * At most {@value #MAX_SINGLE_PATH_COMMITS} commits changing the directory are considered (as before with git log),
+   * a truncated result is not added to the history index.
+   */
+  private synchronized GitDirectoryHistory getDirectoryHistory(File path) throws IOException {
+    String directory = PathUtil.relativePath(this.baseDir, path);
+
+    updateHistoryIndex();
+    if (this.historyIndex.getDirectories().contains(directory)) {
+      return this.historyIndex.getHistories().get(directory);
+    }
+
+    LOG.debug("Git: Walking the history of directory {}", directory);
+    GitHistoryWalker walker = new GitHistoryWalker(this.git.getRepository(), this.historyIndex.getModuleBoundaries());
+    walker.setMaxCommits(MAX_SINGLE_PATH_COMMITS);
+    Map<String, GitDirectoryHistory> histories = walker.walk(Collections.singleton(directory));
+    if (!walker.isTruncated()) {
+      this.historyIndex.addDirectories(Collections.singleton(directory), histories);
+      saveHistoryIndex();
+    }
+
+    return histories.get(directory);
+  }
+
+  private synchronized Map<String, GitDirectoryHistory> getDirectoryHistories(Collection<String> directories) throws IOException {
+    updateHistoryIndex();
+
+    Set<String> missingDirectories = new HashSet<>(directories);
+    missingDirectories.removeAll(this.historyIndex.getDirectories());
+
+    if (!missingDirectories.isEmpty()) {
+      LOG.debug("Git: Walking the history of {} directories", missingDirectories.size());
+      this.historyIndex.addDirectories(missingDirectories, new GitHistoryWalker(this.git.getRepository(), this.historyIndex.getModuleBoundaries()).walk(missingDirectories));
+      saveHistoryIndex();
+    }
+
+    return this.historyIndex.getHistories();
+  }
+
+  /**
+   * The history index has to be rebuilt if the module structure changed.
+   */
+  private synchronized void setModuleBoundaries(Set<String> moduleBoundaries) {
+    if (!moduleBoundaries.equals(this.historyIndex.getModuleBoundaries())) {
+      LOG.debug("Git: Nested modules changed. Rebuilding the history index.");
+      this.historyIndex.clear();
+      this.historyIndex.setModuleBoundaries(moduleBoundaries);
+    }
+  }
+
+  /**
+   * Bring the history index up to date with HEAD. Only the new commits are walked,
+   * unless the history has been rewritten and the index has to be rebuilt.
+   */
+  private void updateHistoryIndex() throws IOException {
+    ObjectId head = this.git.getRepository().resolve(Constants.HEAD);
+    ObjectId indexHead = this.historyIndex.getHead();
+    if (head == null || head.equals(indexHead)) {
+      return;
+    }
+
+    GitHistoryWalker walker = new GitHistoryWalker(this.git.getRepository(), this.historyIndex.getModuleBoundaries());
+
+    if (indexHead != null && walker.isAncestorOfHead(indexHead)) {
+      LOG.debug("Git: Updating the history index with the commits since {}", indexHead.name());
+      this.historyIndex.merge(walker.walk(this.historyIndex.getDirectories(), indexHead));
+    } else {
+      if (indexHead != null) {
+        LOG.info("GIT history has been rewritten since commit {}. Rebuilding the history index.", indexHead.name());
+      }
+      this.historyIndex.clear();
+    }
+
+    this.historyIndex.setHead(head);
+    saveHistoryIndex();
+  }
+
+  private void saveHistoryIndex() {
+    try {
+      this.historyIndex.save(this.historyIndexFile);
+    } catch (IOException e) {
+      LOG.warn("Failed to write GIT history index: {}", this.historyIndexFile.getAbsolutePath(), e);
+    }
+  }
+
+  private void loadHistoryIndex() {
+    try {
+      this.historyIndex = GitHistoryIndex.load(this.historyIndexFile);
+      if (this.historyIndex.getHead() != null) {
+        LOG.debug("Git: Loaded history index computed at commit {}", this.historyIndex.getHead().name());
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to read GIT history index: {}. Rebuilding it.", this.historyIndexFile.getAbsolutePath(), e);
+      this.historyIndex = new GitHistoryIndex();
+    }
+  }
+
   @Override
   public long getCurrentRevisionId(File path) {
     throw new RuntimeException("Operation getCurrentRevisionId() not supported by the GIT handler");
   }
 
+  /**
+   * The fingerprints are calculated from the tree of the HEAD commit: Subtrees without nested modules
+   * are represented by their tree id, so only the path down to the nested modules has to be walked.
+   */
+  @Override
+  public Map<File, String> getContentFingerprints(Map<File, List<File>> moduleDirectories, Set<String> rewrittenArtifacts) {
+    Map<File, String> fingerprints = new LinkedHashMap<>();
+    if (this.git == null) {
+      return fingerprints;
+    }
+
+    Repository repository = this.git.getRepository();
+    ObjectReader reader = repository.newObjectReader();
+    try {
+      ObjectId headTreeId = repository.resolve(Constants.HEAD + "^{tree}");
+      if (headTreeId == null) {
+        return fingerprints;
+      }
+
+      for (Map.Entry<File, List<File>> entry : moduleDirectories.entrySet()) {
+        String fingerprint = getContentFingerprint(reader, headTreeId, entry.getKey(), entry.getValue(), rewrittenArtifacts);
+        if (fingerprint != null) {
+          fingerprints.put(entry.getKey(), fingerprint);
+        }
+      }
+      return fingerprints;
+
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to calculate the content fingerprints!", e);
+    } finally {
+      reader.release();
+    }
+  }
+
+  private String getContentFingerprint(ObjectReader reader, ObjectId headTreeId, File moduleDirectory, List<File> excludedDirectories,
+                                       Set<String> rewrittenArtifacts) throws IOException {
+    String modulePath = PathUtil.relativePath(this.baseDir, moduleDirectory);
+    ObjectId moduleTreeId = headTreeId;
+    if (!modulePath.isEmpty()) {
+      TreeWalk treeWalk = TreeWalk.forPath(reader, modulePath, headTreeId);
+      if (treeWalk == null || !treeWalk.isSubtree()) {
+        return null;
+      }
+      moduleTreeId = treeWalk.getObjectId(0);
+      treeWalk.release();
+    }
+
+    Set<String> excludedPaths = new HashSet<>();
+    if (excludedDirectories != null) {
+      for (File excludedDirectory : excludedDirectories) {
+        excludedPaths.add(PathUtil.relativePath(moduleDirectory, excludedDirectory));
+      }
+    }
+
+    ContentFingerprint fingerprint = new ContentFingerprint();
+    addToFingerprint(reader, moduleTreeId, "", excludedPaths, rewrittenArtifacts, fingerprint);
+    return fingerprint.getValue();
+  }
+
+  private void addToFingerprint(ObjectReader reader, ObjectId treeId, String pathPrefix, Set<String> excludedPaths,
+                                Set<String> rewrittenArtifacts, ContentFingerprint fingerprint) throws IOException {
+    TreeWalk treeWalk = new TreeWalk(reader);
+    try {
+      treeWalk.addTree(treeId);
+      treeWalk.setRecursive(false);
+
+      while (treeWalk.next()) {
+        String path = pathPrefix + treeWalk.getNameString();
+        if (excludedPaths.contains(path) || ContentFingerprint.FINGERPRINT_FILE.equals(path)) {
+          continue;
+        }
+
+        String contentId = treeWalk.getObjectId(0).getName();
+        if (treeWalk.isSubtree() && containsExcludedPath(path, excludedPaths)) {
+          addToFingerprint(reader, treeWalk.getObjectId(0), path + "/", excludedPaths, rewrittenArtifacts, fingerprint);
+          continue;
+        } else if (ContentFingerprint.isModulePom(path)) {
+          byte[] pom = reader.open(treeWalk.getObjectId(0)).getBytes();
+          contentId = ContentFingerprint.hash(PomFingerprintNormalizer.normalize(pom, rewrittenArtifacts));
+        }
+
+        fingerprint.add(path, Integer.toOctalString(treeWalk.getRawMode(0)) + " " + contentId);
+      }
+    } finally {
+      treeWalk.release();
+    }
+  }
+
+  private static boolean containsExcludedPath(String path, Set<String> excludedPaths) {
+    for (String excludedPath : excludedPaths) {
+      if (excludedPath.startsWith(path + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Instead of adding every file separately (which reads and rewrites the whole index each time)
+   * the blobs are inserted directly and the index is edited, written and committed only once.
+   */
   @Override
   public void commitFiles(List<File> files, String commitMessage) {
     LOG.debug("Committing files: {}", files);
 
     try {
-      for (File file : files) {
-        String filePath = PathUtil.relativePath(this.baseDir, file);
+      ObjectId commitId = commit(files, commitMessage);
+      this.lastCommitId = commitId;
+      LOG.debug("Git: Committed changes: {}", commitId.getName());
 
-        LOG.debug("Git: Adding file: {}", filePath);
-        this.git
-            .add()
-            .addFilepattern(filePath)
+      if (this.doPush) {
+        LOG.debug("Git: Pushing changes");
+        Iterable<PushResult> pushResults = this.git
+            .push()
+            .setCredentialsProvider(this.credentialsProvider)
             .call();
+        checkPushResults(pushResults);
+      }
+
+    } catch (NonSnapshotPluginException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new NonSnapshotPluginException("Failed to commit files!", e);
+    }
+  }
+
+  /**
+   * A rejected push means the remote branch has been changed concurrently (or is locked), so the commit may be retried.
+   * All other failures are reported as plugin exceptions (and ignored if dontFailOnCommit is set).
+   */
+  private void checkPushResults(Iterable<PushResult> pushResults) {
+    for (PushResult pushResult : pushResults) {
+      for (RemoteRefUpdate update : pushResult.getRemoteUpdates()) {
+        switch (update.getStatus()) {
+          case OK:
+          case UP_TO_DATE:
+            break;
+          case REJECTED_NONFASTFORWARD:
+          case REJECTED_REMOTE_CHANGED:
+          case REJECTED_NODELETE:
+          case REJECTED_OTHER_REASON:
+            throw new NonSnapshotCommitConflictException("Push of " + update.getRemoteName() + " rejected: " + update.getStatus()
+                + (update.getMessage() != null ? " (" + update.getMessage() + ")" : ""));
+          default:
+            throw new NonSnapshotPluginException("Push of " + update.getRemoteName() + " failed: " + update.getStatus()
+                + (update.getMessage() != null ? " (" + update.getMessage() + ")" : ""));
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops the rejected plugin commit, fetches the tracked remote branch and rebases the remaining local commits
+   * (which haven't been pushed either) onto it. So only the plugin commit is discarded.
+   * Refuses to do so if HEAD is not the last commit of this handler or there are uncommitted changes in the working tree.
+   */
+  @Override
+  public void updateToRemote(List<File> files) {
+    try {
+      Repository repository = this.git.getRepository();
+      BranchConfig branchConfig = new BranchConfig(repository.getConfig(), repository.getBranch());
+      String remoteTrackingBranch = branchConfig.getRemoteTrackingBranch();
+      if (remoteTrackingBranch == null) {
+        throw new NonSnapshotPluginException("No remote tracking branch configured for branch: " + repository.getBranch());
       }
 
-      LOG.debug("Git: Committing changes");
+      ObjectId headId = repository.resolve(Constants.HEAD);
+      if (this.lastCommitId == null || !this.lastCommitId.equals(headId)) {
+        throw new NonSnapshotPluginException("Cannot update to the remote state, HEAD is not the rejected commit of the plugin");
+      }
+      if (this.git.status().call().hasUncommittedChanges()) {
+        throw new NonSnapshotPluginException("Cannot update to the remote state, the working tree contains uncommitted changes");
+      }
+
+      LOG.debug("Git: Fetching remote: {}", branchConfig.getRemote());
       this.git
-          .commit()
-          .setMessage(commitMessage)
+          .fetch()
+          .setRemote(branchConfig.getRemote())
+          .setCredentialsProvider(this.credentialsProvider)
           .call();
 
-      if (this.doPush) {
-        LOG.debug("Git: Pushing changes");
+      LOG.debug("Git: Dropping the rejected commit: {}", headId.name());
+      this.git
+          .reset()
+          .setMode(ResetCommand.ResetType.HARD)
+          .setRef(Constants.HEAD + "~1")
+          .call();
+      this.lastCommitId = null;
+
+      LOG.debug("Git: Rebasing onto: {}", remoteTrackingBranch);
+      RebaseResult rebaseResult = this.git
+          .rebase()
+          .setUpstream(remoteTrackingBranch)
+          .call();
+      if (!rebaseResult.getStatus().isSuccessful()) {
         this.git
-            .push()
-            .setCredentialsProvider(this.credentialsProvider)
+            .rebase()
+            .setOperation(RebaseCommand.Operation.ABORT)
             .call();
+        throw new NonSnapshotPluginException("Cannot update to the remote state, rebasing the local commits onto "
+            + remoteTrackingBranch + " failed: " + rebaseResult.getStatus());
       }
 
+    } catch (NonSnapshotPluginException e) {
+      throw e;
     } catch (Exception e) {
-      throw new NonSnapshotPluginException("Failed to commit files!", e);
+      throw new NonSnapshotPluginException("Failed to update to the remote state!", e);
+    }
+  }
+
+  private ObjectId commit(List<File> files, String commitMessage) throws IOException {
+    Repository repository = this.git.getRepository();
+    boolean canonicalizeLineEndings = repository.getConfig().get(WorkingTreeOptions.KEY).getAutoCRLF() != CoreConfig.AutoCRLF.FALSE;
+
+    DirCache dirCache = repository.lockDirCache();
+    ObjectInserter inserter = repository.newObjectInserter();
+    try {
+      DirCacheEditor editor = dirCache.editor();
+
+      for (final File file : files) {
+        String filePath = PathUtil.relativePath(this.baseDir, file).replace(File.separatorChar, '/');
+        LOG.debug("Git: Adding file: {}", filePath);
+
+        final ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, readContent(file, canonicalizeLineEndings));
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+
+        editor.add(new DirCacheEditor.PathEdit(filePath) {
+          @Override
+          public void apply(DirCacheEntry entry) {
+            if (entry.getRawMode() == 0) {
+              entry.setFileMode(FileMode.REGULAR_FILE);
+            }
+            entry.setObjectId(blobId);
+            entry.setLength(length);
+            entry.setLastModified(lastModified);
+          }
+        });
+      }
+      editor.finish();
+
+      ObjectId headId = repository.resolve(Constants.HEAD);
+
+      CommitBuilder commit = new CommitBuilder();
+      commit.setTreeId(dirCache.writeTree(inserter));
+      if (headId != null) {
+        commit.setParentId(headId);
+      }
+      PersonIdent ident = new PersonIdent(repository);
+      commit.setAuthor(ident);
+      commit.setCommitter(ident);
+      commit.setMessage(commitMessage);
+
+      ObjectId commitId = inserter.insert(commit);
+      inserter.flush();
+
+      RefUpdate refUpdate = repository.updateRef(Constants.HEAD);
+      refUpdate.setNewObjectId(commitId);
+      refUpdate.setExpectedOldObjectId(headId != null ? headId : ObjectId.zeroId());
+      refUpdate.setRefLogMessage("commit: " + commitMessage, false);
+      RefUpdate.Result result = refUpdate.update();
+      if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FAST_FORWARD) {
+        throw new IOException("Failed to update HEAD: " + result);
+      }
+
+      // The new tree is committed, so the index can be written now
+      dirCache.write();
+      if (!dirCache.commit()) {
+        throw new IOException("Failed to write the GIT index");
+      }
+
+      return commitId;
+
+    } finally {
+      inserter.release();
+      dirCache.unlock();
     }
   }
 
+  private static byte[] readContent(File file, boolean canonicalizeLineEndings) throws IOException {
+    if (!canonicalizeLineEndings) {
+      return Files.readAllBytes(file.toPath());
+    }
+
+    try (InputStream in = new EolCanonicalizingInputStream(new FileInputStream(file), true)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
 
   @Override
   public void init(File baseDir, String scmUser, String scmPassword, Properties properties) {
     this.baseDir = findGitRepo(baseDir);
+    this.historyIndex = new GitHistoryIndex();
+    this.lastCommitId = null;
     if (this.baseDir == null) {
       LOG.error("Project seems not be within a GIT repository!");
       return;
@@ -181,9 +620,12 @@ public class ScmHandlerGitImpl implements ScmHandler {
     try {
       FileRepository localRepo = new FileRepository(this.baseDir + "/.git");
       this.git = new Git(localRepo);
+      this.historyIndexFile = new File(localRepo.getDirectory(), "nonsnapshot/history-index");
+      loadHistoryIndex();
       if (scmPassword != null && !scmPassword.trim().isEmpty()) {
         this.credentialsProvider = new UsernamePasswordAndPassphraseCredentialProvider(scmUser, scmPassword);
       }
+      initParallelism(properties);
       if (properties != null && "false".equals(properties.getProperty("gitDoPush"))) {
         this.doPush = false;
         LOG.info("GIT push is disabled");
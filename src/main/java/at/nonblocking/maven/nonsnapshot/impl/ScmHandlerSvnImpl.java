@@ -15,11 +15,28 @@
  */
 package at.nonblocking.maven.nonsnapshot.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.util.StringUtils;
@@ -28,41 +45,86 @@ import org.slf4j.LoggerFactory;
 import org.tmatesoft.svn.core.*;
 import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.wc.ISVNInfoHandler;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
 import org.tmatesoft.svn.core.wc.SVNInfo;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.SVNWCUtil;
 
+import at.nonblocking.maven.nonsnapshot.AbstractScmHandler;
+import at.nonblocking.maven.nonsnapshot.ContentFingerprint;
+import at.nonblocking.maven.nonsnapshot.ConcurrencyUtil;
+import at.nonblocking.maven.nonsnapshot.PathUtil;
 import at.nonblocking.maven.nonsnapshot.ScmHandler;
+import at.nonblocking.maven.nonsnapshot.ScmModuleQuery;
+import at.nonblocking.maven.nonsnapshot.ScmModuleStatus;
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotCommitConflictException;
 import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
 
 /**
  * SVN implementation of {@link ScmHandler} based on SvnKit.
+ * <br><br>
+ * Since a SVNClientManager must not be used by multiple threads at once, every operation borrows
+ * an instance from a pool. So the handler can be used concurrently.
+ * <br><br>
+ * If the property svnCrawlWorkingCopy is true the working copy info of all directories below the base directory
+ * is read with a single crawl on first use and kept in memory. All further working copy lookups
+ * (revision, last commit date, versioned or not) are served from memory then.
+ * <br><br>
+ * If the property svnLogCache is true the fetched log entries are stored locally (see {@link SvnLogCache}),
+ * so only the revisions since the last build have to be fetched from the server.
+ * <br><br>
+ * Dates are resolved to revisions only once per run.
  *
  * @author Juergen Kofler
  */
 @Component(role = ScmHandler.class, hint = "SVN")
-public class ScmHandlerSvnImpl implements ScmHandler {
+public class ScmHandlerSvnImpl extends AbstractScmHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(ScmHandlerSvnImpl.class);
 
-  private SVNClientManager svnClientManager = SVNClientManager.newInstance();
+  private static final long MIN_LOG_RANGE = 1000;
+
+  private ISVNAuthenticationManager authManager;
+  private Queue<SVNClientManager> idleClientManagers = new ConcurrentLinkedQueue<>();
+
+  private volatile File crawlBaseDir;
+  private Map<File, SvnDirectoryInfo> crawledDirectories;
+
+  private File baseDir;
+  private boolean useLogCache;
+  private final Map<String, SvnLogCache> logCaches = new HashMap<>();
+  private final Map<String, File> logCacheFiles = new HashMap<>();
+
+  private final Map<String, Long> datedRevisions = new ConcurrentHashMap<>();
 
   public ScmHandlerSvnImpl() {
   }
 
   @Override
   public boolean isWorkingCopy(File path) {
-    return SVNWCUtil.isVersionedDirectory(toCanonicalPath(path));
+    File canonicalPath = toCanonicalPath(path);
+    Map<File, SvnDirectoryInfo> crawledDirectories = getCrawledDirectories(canonicalPath);
+    if (crawledDirectories != null && crawledDirectories.containsKey(canonicalPath)) {
+      return true;
+    }
+    return SVNWCUtil.isVersionedDirectory(canonicalPath);
   }
 
   @Override
   public boolean checkChangesSinceRevision(final File moduleDirectory, final long sinceRevision, final long workspaceRevision) {
+    if (this.useLogCache) {
+      SvnDirectoryInfo info = getInfo(moduleDirectory);
+      return checkChangesCached(new SvnModule(new ScmModuleStatus(moduleDirectory), info, sinceRevision + 1, null, workspaceRevision));
+    }
+
     final Boolean[] changes = new Boolean[1];
     changes[0] = false;
 
+    SVNClientManager svnClientManager = acquireClientManager();
     try {
-      this.svnClientManager.getLogClient().doLog(new File[] { moduleDirectory },
+      svnClientManager.getLogClient().doLog(new File[] { moduleDirectory },
           SVNRevision.WORKING,
           SVNRevision.create(sinceRevision + 1),
           SVNRevision.create(workspaceRevision),
@@ -82,6 +144,8 @@ public class ScmHandlerSvnImpl implements ScmHandler {
     } catch (SVNException e) {
       LOG.warn("Failed to check changes for path: {}" + moduleDirectory.getAbsolutePath(), e);
       return true;
+    } finally {
+      releaseClientManager(svnClientManager);
     }
 
     return changes[0];
@@ -89,14 +153,29 @@ public class ScmHandlerSvnImpl implements ScmHandler {
 
   @Override
   public boolean checkChangesSinceDate(final File moduleDirectory, final Date sinceDate, final Date workspaceLastCommitDate) {
+    if (this.useLogCache) {
+      SvnDirectoryInfo info = getInfo(moduleDirectory);
+      return checkChangesCached(new SvnModule(new ScmModuleStatus(moduleDirectory), info, -1, sinceDate, info.committedRevision));
+    }
+
     final Boolean[] changes = new Boolean[1];
     changes[0] = false;
 
+    SVNClientManager svnClientManager = acquireClientManager();
     try {
-      this.svnClientManager.getLogClient().doLog(new File[] { moduleDirectory },
+      SVNRevision endRevision;
+      SvnDirectoryInfo info = getInfo(moduleDirectory);
+      if (workspaceLastCommitDate.equals(info.committedDate)) {
+        endRevision = SVNRevision.create(info.committedRevision);
+      } else {
+        resolveRevisions(info.repositoryRoot, Arrays.asList(sinceDate, workspaceLastCommitDate));
+        endRevision = resolveRevision(info.repositoryRoot, workspaceLastCommitDate);
+      }
+
+      svnClientManager.getLogClient().doLog(new File[] { moduleDirectory },
           SVNRevision.WORKING,
-          SVNRevision.create(sinceDate),
-          SVNRevision.create(workspaceLastCommitDate),
+          resolveRevision(info.repositoryRoot, sinceDate),
+          endRevision,
           false, true,
           100L,
           new ISVNLogEntryHandler() {
@@ -113,6 +192,8 @@ public class ScmHandlerSvnImpl implements ScmHandler {
     } catch (SVNException e) {
       LOG.warn("Failed to check changes for path: {}" + moduleDirectory.getAbsolutePath(), e);
       return true;
+    } finally {
+      releaseClientManager(svnClientManager);
     }
 
     return changes[0];
@@ -120,30 +201,646 @@ public class ScmHandlerSvnImpl implements ScmHandler {
 
   @Override
   public Date getLastCommitDate(File path) {
+    return getInfo(path).committedDate;
+  }
+
+  @Override
+  public long getCurrentRevisionId(File path) {
+    return getInfo(path).revision;
+  }
+
+  /**
+   * The fingerprints are calculated from the committed (BASE) state of the working copy, local modifications don't count:
+   * Files are represented by their pristine checksum, only the module POM files are read (from the pristine copy,
+   * concurrently according to the parallelism).
+   * <br>
+   * The working copy info is crawled once for all modules, starting at the outermost module directories.
+   * A file only belongs to the innermost module containing it.
+   */
+  @Override
+  public Map<File, String> getContentFingerprints(Map<File, List<File>> moduleDirectories, final Set<String> rewrittenArtifacts) {
+    final Map<Path, SvnFingerprintModule> modulesByPath = new HashMap<>();
+    for (Map.Entry<File, List<File>> entry : moduleDirectories.entrySet()) {
+      SvnFingerprintModule module = new SvnFingerprintModule(toCanonicalPath(entry.getKey()).toPath());
+      if (entry.getValue() != null) {
+        for (File excludedDirectory : entry.getValue()) {
+          module.excludedPaths.add(toCanonicalPath(excludedDirectory).toPath());
+        }
+      }
+      modulesByPath.put(module.path, module);
+    }
+
+    List<Path> crawlRoots = new ArrayList<>();
+    for (Path modulePath : modulesByPath.keySet()) {
+      if (findModule(modulesByPath, modulePath.getParent()) == null) {
+        crawlRoots.add(modulePath);
+      }
+    }
+
+    SVNClientManager svnClientManager = acquireClientManager();
     try {
-      SVNInfo info = this.svnClientManager.getWCClient().doInfo(path, null);
-      return info.getCommittedDate();
+      for (Path crawlRoot : crawlRoots) {
+        svnClientManager.getWCClient().doInfo(crawlRoot.toFile(), SVNRevision.UNDEFINED, SVNRevision.UNDEFINED, SVNDepth.INFINITY, null,
+            new ISVNInfoHandler() {
+              @Override
+              public void handleInfo(SVNInfo info) throws SVNException {
+                if (info.getKind() != SVNNodeKind.FILE || info.getFile() == null || "add".equals(info.getSchedule()) || info.getChecksum() == null) {
+                  // Not committed yet
+                  return;
+                }
+                Path filePath = info.getFile().getAbsoluteFile().toPath();
+                SvnFingerprintModule module = findModule(modulesByPath, filePath.getParent());
+                if (module != null && !module.isExcluded(filePath)) {
+                  module.contentIds.put(module.path.relativize(filePath).toString().replace(File.separatorChar, '/'), info.getChecksum());
+                }
+              }
+            });
+      }
     } catch (SVNException e) {
-      throw new NonSnapshotPluginException("Failed to obtain current revision number for path: " + path.getAbsolutePath(), e);
+      throw new NonSnapshotPluginException("Failed to list the committed files of: " + crawlRoots, e);
+    } finally {
+      releaseClientManager(svnClientManager);
+    }
+
+    List<Callable<Void>> pomTasks = new ArrayList<>();
+    for (final SvnFingerprintModule module : modulesByPath.values()) {
+      for (final Map.Entry<String, String> entry : module.contentIds.entrySet()) {
+        if (ContentFingerprint.isModulePom(entry.getKey())) {
+          pomTasks.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+              byte[] pom = readPristineContent(module.path.resolve(entry.getKey()).toFile());
+              entry.setValue(ContentFingerprint.hash(PomFingerprintNormalizer.normalize(pom, rewrittenArtifacts)));
+              return null;
+            }
+          });
+        }
+      }
+    }
+    ConcurrencyUtil.invokeAll(pomTasks, getParallelism());
+
+    Map<File, String> fingerprints = new LinkedHashMap<>();
+    for (File moduleDirectory : moduleDirectories.keySet()) {
+      SvnFingerprintModule module = modulesByPath.get(toCanonicalPath(moduleDirectory).toPath());
+      if (module.contentIds.isEmpty()) {
+        continue;
+      }
+      ContentFingerprint fingerprint = new ContentFingerprint();
+      for (Map.Entry<String, String> entry : module.contentIds.entrySet()) {
+        if (!ContentFingerprint.FINGERPRINT_FILE.equals(entry.getKey())) {
+          fingerprint.add(entry.getKey(), entry.getValue());
+        }
+      }
+      fingerprints.put(moduleDirectory, fingerprint.getValue());
+    }
+
+    return fingerprints;
+  }
+
+  private static SvnFingerprintModule findModule(Map<Path, SvnFingerprintModule> modulesByPath, Path path) {
+    while (path != null) {
+      SvnFingerprintModule module = modulesByPath.get(path);
+      if (module != null) {
+        return module;
+      }
+      path = path.getParent();
     }
+    return null;
   }
 
+  private byte[] readPristineContent(File file) {
+    SVNClientManager svnClientManager = acquireClientManager();
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      svnClientManager.getWCClient().doGetFileContents(file, SVNRevision.UNDEFINED, SVNRevision.BASE, false, out);
+      return out.toByteArray();
+    } catch (SVNException e) {
+      throw new NonSnapshotPluginException("Failed to read the committed content of: " + file.getAbsolutePath(), e);
+    } finally {
+      releaseClientManager(svnClientManager);
+    }
+  }
+
+  /**
+   * The modules are checked with as few log requests as possible: The modules of a repository (externals may
+   * belong to other repositories) are checked with a single log request on their common repository path,
+   * covering the revision range of all modules (one for revision and one for date queries if mixed).
+   * Only modules with a start revision far behind the others get a log request of their own (see {@link #splitIntoLogGroups(List)}).
+   * The changed paths are assigned to the modules locally, a changed path only counts for the innermost module containing it.
+   * <br>
+   * The working copy info of the modules and the log requests are executed concurrently, according to the parallelism.
+   */
   @Override
-  public long getCurrentRevisionId(File path) {
+  public Map<File, ScmModuleStatus> checkChanges(List<ScmModuleQuery> queries) {
+    Map<File, ScmModuleStatus> result = new LinkedHashMap<>();
+    Map<String, List<SvnModule>> modulesByRepository = new LinkedHashMap<>();
+
+    List<Callable<SvnDirectoryInfo>> infoTasks = new ArrayList<>(queries.size());
+    for (final ScmModuleQuery query : queries) {
+      infoTasks.add(new Callable<SvnDirectoryInfo>() {
+        @Override
+        public SvnDirectoryInfo call() {
+          return getInfo(query.getModuleDirectory());
+        }
+      });
+    }
+    List<SvnDirectoryInfo> infos = ConcurrencyUtil.invokeAll(infoTasks, getParallelism());
+
+    for (int i = 0; i < queries.size(); i++) {
+      ScmModuleQuery query = queries.get(i);
+      File moduleDirectory = query.getModuleDirectory();
+      SvnDirectoryInfo info = infos.get(i);
+
+      ScmModuleStatus status = new ScmModuleStatus(moduleDirectory);
+      status.setCurrentRevision(info.revision);
+      status.setLastCommitDate(info.committedDate);
+      result.put(moduleDirectory, status);
+
+      String repositoryKey;
+      SvnModule module;
+
+      if (query.isRevisionQuery()) {
+        if (query.getSinceRevision().longValue() == status.getCurrentRevision().longValue()) {
+          continue;
+        }
+        repositoryKey = "revision " + info.repositoryRoot;
+        module = new SvnModule(status, info, query.getSinceRevision() + 1, null, status.getCurrentRevision());
+      } else {
+        if (!info.committedDate.after(query.getSinceDate())) {
+          continue;
+        }
+        repositoryKey = "date " + info.repositoryRoot;
+        module = new SvnModule(status, info, -1, query.getSinceDate(), info.committedRevision);
+      }
+
+      for (File excludedDirectory : query.getExcludedDirectories()) {
+        module.excludedPaths.add(info.repositoryPath + "/" + relativePath(moduleDirectory, excludedDirectory));
+      }
+
+      List<SvnModule> modules = modulesByRepository.get(repositoryKey);
+      if (modules == null) {
+        modules = new ArrayList<>();
+        modulesByRepository.put(repositoryKey, modules);
+      }
+      modules.add(module);
+    }
+
+    List<SvnLogGroup> logGroups = new ArrayList<>();
+    for (List<SvnModule> modules : modulesByRepository.values()) {
+      resolveSinceDates(modules);
+      logGroups.addAll(splitIntoLogGroups(modules));
+    }
+
+    // Every module belongs to exactly one group, so the groups can be checked independently
+    List<Callable<Void>> logTasks = new ArrayList<>(logGroups.size());
+    for (final SvnLogGroup logGroup : logGroups) {
+      logTasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          checkChanges(logGroup);
+          return null;
+        }
+      });
+    }
+    ConcurrencyUtil.invokeAll(logTasks, getParallelism());
+
+    return result;
+  }
+
+  /**
+   * Resolve the start dates of all given modules (of the same repository) up front, so a single repository session is opened for all of them.
+   * If that fails, the log groups resolve their start date on their own.
+   */
+  private void resolveSinceDates(List<SvnModule> modules) {
+    Set<Date> sinceDates = new HashSet<>();
+    for (SvnModule module : modules) {
+      if (module.sinceDate != null) {
+        sinceDates.add(module.sinceDate);
+      }
+    }
+    if (sinceDates.isEmpty()) {
+      return;
+    }
+
+    try {
+      resolveRevisions(modules.get(0).repositoryRoot, sinceDates);
+    } catch (SVNException e) {
+      LOG.warn("Failed to resolve dates to revisions: {}", sinceDates, e);
+    }
+  }
+
+  /**
+   * Split the modules of a repository into log groups. The modules are added by their start revision (newest first),
+   * a module only joins the current group if it doesn't extend the revision range of the log request
+   * to more than twice its size (or {@value #MIN_LOG_RANGE} revisions).
+   * So a module which hasn't changed for a long time gets a log request of its own and doesn't widen the range of all others.
+   */
+  private List<SvnLogGroup> splitIntoLogGroups(List<SvnModule> modules) {
+    final Map<SvnModule, Long> startRevisions = new HashMap<>();
+    for (SvnModule module : modules) {
+      startRevisions.put(module, getStartRevision(module));
+    }
+
+    List<SvnModule> sortedModules = new ArrayList<>(modules);
+    Collections.sort(sortedModules, new Comparator<SvnModule>() {
+      @Override
+      public int compare(SvnModule module1, SvnModule module2) {
+        return Long.compare(startRevisions.get(module2), startRevisions.get(module1));
+      }
+    });
+
+    List<SvnLogGroup> logGroups = new ArrayList<>();
+    SvnLogGroup logGroup = null;
+    long groupStartRevision = 0;
+
+    for (SvnModule module : sortedModules) {
+      long startRevision = startRevisions.get(module);
+      if (logGroup != null) {
+        long endRevision = Math.max(logGroup.endRevision, module.endRevision);
+        long range = endRevision - groupStartRevision;
+        if (endRevision - startRevision > Math.max(2 * range, MIN_LOG_RANGE)) {
+          LOG.debug("SVN: Module folder {} starts at revision {}, checking it with a separate log request",
+              module.status.getModuleDirectory().getAbsolutePath(), startRevision);
+          logGroup = null;
+        }
+      }
+      if (logGroup == null) {
+        logGroup = new SvnLogGroup(module.repositoryRoot);
+        logGroups.add(logGroup);
+      }
+      logGroup.add(module);
+      groupStartRevision = startRevision;
+    }
+
+    return logGroups;
+  }
+
+  /**
+   * @return long - The start revision of the module, 0 if the start date couldn't be resolved
+   */
+  private long getStartRevision(SvnModule module) {
+    if (module.sinceDate == null) {
+      return module.startRevision;
+    }
+    Long revision = this.datedRevisions.get(getDatedRevisionKey(module.repositoryRoot, module.sinceDate));
+    return revision != null ? revision : 0;
+  }
+
+  private boolean checkChangesCached(SvnModule module) {
+    SvnLogGroup logGroup = new SvnLogGroup(module.repositoryRoot);
+    logGroup.add(module);
+    checkChanges(logGroup);
+    return module.status.isChanged();
+  }
+
+  private void checkChanges(final SvnLogGroup logGroup) {
+    String logPath = logGroup.getCommonRepositoryPath();
+
     try {
-      SVNInfo info = this.svnClientManager.getWCClient().doInfo(path, null);
-      return info.getRevision().getNumber();
+      if (this.useLogCache) {
+        for (SvnLogCache.Entry entry : getCachedLogEntries(logPath, logGroup)) {
+          handleLogEntry(logGroup, entry);
+        }
+        return;
+      }
+
+      // Request the log newest first, so it can be stopped as soon as all modules are known to be changed
+      SVNRevision startRevision = logGroup.sinceDate != null ? resolveRevision(logGroup.repositoryRoot, logGroup.sinceDate) : SVNRevision.create(logGroup.startRevision);
+      LOG.debug("SVN: Requesting the log of {}{} from {} to {}", new Object[]{ logGroup.repositoryRoot, logPath, startRevision, logGroup.endRevision });
+      fetchLog(logGroup.repositoryRoot, logPath, SVNRevision.create(logGroup.endRevision), startRevision, logGroup.endRevision, new ISVNLogEntryHandler() {
+        @Override
+        public void handleLogEntry(SVNLogEntry svnLogEntry) throws SVNException {
+          ScmHandlerSvnImpl.this.handleLogEntry(logGroup, toLogCacheEntry(svnLogEntry));
+          if (logGroup.isAllChanged()) {
+            throw new SVNCancelException();
+          }
+        }
+      });
+
+    } catch (SVNCancelException e) {
+      LOG.debug("SVN: All modules of the log request changed, stopped reading the log of {}{}", logGroup.repositoryRoot, logPath);
+    } catch (SVNException e) {
+      LOG.warn("Failed to check changes for paths: {}", logGroup.modulesByPath.keySet(), e);
+      for (List<SvnModule> modules : logGroup.modulesByPath.values()) {
+        for (SvnModule module : modules) {
+          module.status.setChanged(true);
+        }
+      }
+    }
+  }
+
+  private void handleLogEntry(SvnLogGroup logGroup, SvnLogCache.Entry entry) {
+    if (entry.isPluginCommit()) {
+      return;
+    }
+    for (String changedPath : entry.getChangedPaths()) {
+      String path = changedPath;
+      while (true) {
+        List<SvnModule> modules = logGroup.modulesByPath.get(path);
+        if (modules != null) {
+          for (SvnModule module : modules) {
+            if (!module.status.isChanged() && module.containsRevision(entry)) {
+              LOG.debug("Module folder {}: Change since last commit: rev{} @ {}",
+                  new Object[]{ module.status.getModuleDirectory().getAbsolutePath(), entry.getRevision(), entry.getDate() });
+              module.status.setChanged(true);
+              logGroup.unchangedModules--;
+            }
+          }
+        }
+        if (path.isEmpty() || logGroup.moduleBoundaries.contains(path)) {
+          break;
+        }
+        path = path.substring(0, path.lastIndexOf('/'));
+      }
+    }
+  }
+
+  /**
+   * Fetch the missing part of the log range from the server and return the range from the cache.
+   * <br>
+   * If the modules are within the base directory the log cache of the base directory is used for all of them.
+   */
+  private List<SvnLogCache.Entry> getCachedLogEntries(String logPath, SvnLogGroup logGroup) throws SVNException {
+    File cacheDirectory = logGroup.moduleDirectories.get(0);
+    if (this.baseDir != null && isWithin(toCanonicalPath(cacheDirectory), this.baseDir)) {
+      SvnDirectoryInfo baseDirInfo = getInfo(this.baseDir);
+      if (baseDirInfo.repositoryRoot.equals(logGroup.repositoryRoot) && isWithin(logPath, baseDirInfo.repositoryPath)) {
+        logPath = baseDirInfo.repositoryPath;
+        cacheDirectory = this.baseDir;
+      }
+    }
+
+    String cacheKey = logGroup.repositoryRoot + logPath;
+    SvnLogCache logCache = getLogCache(cacheKey, logGroup.repositoryRoot, logPath, cacheDirectory);
+    SVNURL root = logGroup.repositoryRoot;
+
+    synchronized (logCache) {
+      long endRevision = logGroup.endRevision;
+
+      if (logGroup.sinceDate != null) {
+        if (logCache.isEmpty()) {
+          logCache.addDateRange(logGroup.sinceDate, endRevision, fetchLog(root, logPath, resolveRevision(root, logGroup.sinceDate), endRevision));
+        } else if (!logCache.isCompleteSince(logGroup.sinceDate)) {
+          long toRevision = logCache.getStartRevision() - 1;
+          logCache.addDateRange(logGroup.sinceDate, toRevision, fetchLog(root, logPath, resolveRevision(root, logGroup.sinceDate), toRevision));
+        }
+      } else {
+        if (logCache.isEmpty()) {
+          logCache.addRevisionRange(logGroup.startRevision, endRevision, fetchLog(root, logPath, SVNRevision.create(logGroup.startRevision), endRevision));
+        } else if (logGroup.startRevision < logCache.getStartRevision()) {
+          long toRevision = logCache.getStartRevision() - 1;
+          logCache.addRevisionRange(logGroup.startRevision, toRevision, fetchLog(root, logPath, SVNRevision.create(logGroup.startRevision), toRevision));
+        }
+      }
+
+      if (endRevision > logCache.getLastRevision()) {
+        long fromRevision = logCache.getLastRevision() + 1;
+        logCache.addRevisionRange(fromRevision, endRevision, fetchLog(root, logPath, SVNRevision.create(fromRevision), endRevision));
+      }
+
+      File logCacheFile = this.logCacheFiles.get(cacheKey);
+      try {
+        logCache.save(logCacheFile);
+      } catch (IOException e) {
+        LOG.warn("Failed to write SVN log cache: {}", logCacheFile.getAbsolutePath(), e);
+      }
+
+      if (logGroup.sinceDate != null) {
+        return logCache.getEntries(logGroup.sinceDate, endRevision);
+      } else {
+        return logCache.getEntries(logGroup.startRevision, endRevision);
+      }
+    }
+  }
+
+  private SvnLogCache getLogCache(String cacheKey, SVNURL repositoryRoot, String repositoryPath, File cacheDirectory) throws SVNException {
+    synchronized (this.logCaches) {
+      SvnLogCache logCache = this.logCaches.get(cacheKey);
+      if (logCache != null) {
+        return logCache;
+      }
+
+      File workingCopyRoot = SVNWCUtil.getWorkingCopyRoot(cacheDirectory, false);
+      File logCacheFile = new File(workingCopyRoot != null ? workingCopyRoot : cacheDirectory,
+          ".svn/nonsnapshot/log-cache-" + Integer.toHexString(cacheKey.hashCode()));
+
+      try {
+        logCache = SvnLogCache.load(logCacheFile, repositoryRoot.toString(), repositoryPath);
+        if (!logCache.isEmpty()) {
+          LOG.debug("SVN: Loaded log cache of {} (revision {} to {})", new Object[]{ repositoryPath, logCache.getStartRevision(), logCache.getLastRevision() });
+        }
+      } catch (IOException e) {
+        LOG.warn("Failed to read SVN log cache: {}. Rebuilding it.", logCacheFile.getAbsolutePath(), e);
+        logCacheFile.delete();
+        logCache = new SvnLogCache(repositoryRoot.toString(), repositoryPath);
+      }
+
+      this.logCaches.put(cacheKey, logCache);
+      this.logCacheFiles.put(cacheKey, logCacheFile);
+      return logCache;
+    }
+  }
+
+  private List<SvnLogCache.Entry> fetchLog(SVNURL repositoryRoot, String repositoryPath, SVNRevision startRevision, final long endRevision) throws SVNException {
+    final List<SvnLogCache.Entry> entries = new ArrayList<>();
+    if (endRevision < 0) {
+      return entries;
+    }
+
+    LOG.debug("SVN: Requesting the log of {}{} from {} to {}", new Object[]{ repositoryRoot, repositoryPath, startRevision, endRevision });
+    fetchLog(repositoryRoot, repositoryPath, startRevision, SVNRevision.create(endRevision), endRevision, new ISVNLogEntryHandler() {
+      @Override
+      public void handleLogEntry(SVNLogEntry svnLogEntry) throws SVNException {
+        if (svnLogEntry.getRevision() <= endRevision) {
+          entries.add(toLogCacheEntry(svnLogEntry));
+        }
+      }
+    });
+
+    Collections.sort(entries, new Comparator<SvnLogCache.Entry>() {
+      @Override
+      public int compare(SvnLogCache.Entry entry1, SvnLogCache.Entry entry2) {
+        return Long.compare(entry1.getRevision(), entry2.getRevision());
+      }
+    });
+    return entries;
+  }
+
+  /**
+   * Request the log of given repository path, at the state of given peg revision.
+   */
+  private void fetchLog(SVNURL repositoryRoot, String repositoryPath, SVNRevision startRevision, SVNRevision endRevision, long pegRevision,
+                        ISVNLogEntryHandler handler) throws SVNException {
+    SVNURL url = repositoryPath.isEmpty() ? repositoryRoot : repositoryRoot.appendPath(repositoryPath.substring(1), false);
+
+    SVNClientManager svnClientManager = acquireClientManager();
+    try {
+      svnClientManager.getLogClient().doLog(url, new String[] { "" },
+          SVNRevision.create(pegRevision),
+          startRevision,
+          endRevision,
+          false, true,
+          0L,
+          handler);
+    } finally {
+      releaseClientManager(svnClientManager);
+    }
+  }
+
+  /**
+   * Resolve given date to the youngest revision at this date. Every distinct date is only resolved once per run.
+   */
+  private SVNRevision resolveRevision(SVNURL repositoryRoot, Date date) throws SVNException {
+    resolveRevisions(repositoryRoot, Collections.singleton(date));
+    return SVNRevision.create(this.datedRevisions.get(getDatedRevisionKey(repositoryRoot, date)));
+  }
+
+  /**
+   * Resolve all given dates which haven't been resolved in this run yet, using a single repository session.
+   */
+  private void resolveRevisions(SVNURL repositoryRoot, Collection<Date> dates) throws SVNException {
+    List<Date> unresolvedDates = new ArrayList<>();
+    for (Date date : dates) {
+      if (!this.datedRevisions.containsKey(getDatedRevisionKey(repositoryRoot, date))) {
+        unresolvedDates.add(date);
+      }
+    }
+    if (unresolvedDates.isEmpty()) {
+      return;
+    }
+
+    SVNClientManager svnClientManager = acquireClientManager();
+    SVNRepository repository = null;
+    try {
+      repository = svnClientManager.createRepository(repositoryRoot, false);
+      for (Date date : unresolvedDates) {
+        long revision = repository.getDatedRevision(date);
+        LOG.debug("SVN: Resolved date {} to revision {}", date, revision);
+        this.datedRevisions.put(getDatedRevisionKey(repositoryRoot, date), revision);
+      }
+    } finally {
+      if (repository != null) {
+        repository.closeSession();
+      }
+      releaseClientManager(svnClientManager);
+    }
+  }
+
+  private static String getDatedRevisionKey(SVNURL repositoryRoot, Date date) {
+    return date.getTime() + "@" + repositoryRoot;
+  }
+
+  private static SvnLogCache.Entry toLogCacheEntry(SVNLogEntry svnLogEntry) {
+    boolean pluginCommit = svnLogEntry.getMessage() != null && svnLogEntry.getMessage().startsWith(NONSNAPSHOT_COMMIT_MESSAGE_PREFIX);
+    return new SvnLogCache.Entry(svnLogEntry.getRevision(), svnLogEntry.getDate(), pluginCommit, svnLogEntry.getChangedPaths());
+  }
+
+  private SvnDirectoryInfo getInfo(File path) {
+    if (this.crawlBaseDir != null) {
+      File canonicalPath = toCanonicalPath(path);
+      Map<File, SvnDirectoryInfo> crawledDirectories = getCrawledDirectories(canonicalPath);
+      if (crawledDirectories != null && crawledDirectories.containsKey(canonicalPath)) {
+        return crawledDirectories.get(canonicalPath);
+      }
+    }
+
+    // Not crawled (e.g. externals)
+
+    SVNClientManager svnClientManager = acquireClientManager();
+    try {
+      return new SvnDirectoryInfo(svnClientManager.getWCClient().doInfo(path, null));
     } catch (SVNException e) {
       throw new NonSnapshotPluginException("Failed to obtain current revision number for path: " + path.getAbsolutePath(), e);
+    } finally {
+      releaseClientManager(svnClientManager);
     }
   }
 
+  /**
+   * Crawl the working copy below the base directory once.
+   *
+   * @return Map&lt;File, SvnDirectoryInfo&gt; - The versioned directories, or null if the crawl is disabled or the path is outside the base directory
+   */
+  private synchronized Map<File, SvnDirectoryInfo> getCrawledDirectories(File canonicalPath) {
+    if (this.crawlBaseDir == null || !canonicalPath.toPath().startsWith(this.crawlBaseDir.toPath())) {
+      return null;
+    }
+
+    if (this.crawledDirectories == null) {
+      long start = System.currentTimeMillis();
+      final Map<File, SvnDirectoryInfo> crawledDirectories = new HashMap<>();
+
+      SVNClientManager svnClientManager = acquireClientManager();
+      try {
+        svnClientManager.getWCClient().doInfo(this.crawlBaseDir, SVNRevision.UNDEFINED, SVNRevision.UNDEFINED, SVNDepth.INFINITY, null,
+            new ISVNInfoHandler() {
+              @Override
+              public void handleInfo(SVNInfo info) throws SVNException {
+                if (info.getKind() == SVNNodeKind.DIR && info.getFile() != null) {
+                  crawledDirectories.put(info.getFile().getAbsoluteFile(), new SvnDirectoryInfo(info));
+                }
+              }
+            });
+
+      } catch (SVNException e) {
+        if (!SVNWCUtil.isVersionedDirectory(this.crawlBaseDir)) {
+          LOG.debug("SVN: Base directory is no working copy, not crawling it: {}", this.crawlBaseDir.getAbsolutePath());
+        } else {
+          LOG.warn("Failed to crawl the working copy: {}", this.crawlBaseDir.getAbsolutePath(), e);
+        }
+        this.crawlBaseDir = null;
+        return null;
+      } finally {
+        releaseClientManager(svnClientManager);
+      }
+
+      LOG.debug("SVN: Crawled {} versioned directories in {}ms", crawledDirectories.size(), System.currentTimeMillis() - start);
+      this.crawledDirectories = crawledDirectories;
+    }
+
+    return this.crawledDirectories;
+  }
+
+  private SVNClientManager acquireClientManager() {
+    SVNClientManager svnClientManager = this.idleClientManagers.poll();
+    if (svnClientManager == null) {
+      svnClientManager = SVNClientManager.newInstance();
+      if (this.authManager != null) {
+        svnClientManager.setAuthenticationManager(this.authManager);
+      }
+    }
+    return svnClientManager;
+  }
+
+  private void releaseClientManager(SVNClientManager svnClientManager) {
+    this.idleClientManagers.offer(svnClientManager);
+  }
+
+  private String relativePath(File baseDirectory, File file) {
+    try {
+      return PathUtil.relativePath(baseDirectory, file);
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to determine relative path of: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private static String getRepositoryPath(SVNInfo info) {
+    String rootPath = info.getRepositoryRootURL().getPath();
+    String path = info.getURL().getPath().substring(rootPath.length());
+    return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+  }
+
   @Override
   public void commitFiles(List<File> files, String commitMessage) {
     LOG.debug("Committing files: {}", files);
 
+    SVNClientManager svnClientManager = acquireClientManager();
     try {
-      SVNCommitInfo info = this.svnClientManager.getCommitClient().doCommit(files.toArray(new File[files.size()]), false, commitMessage,
+      File[] paths = files.toArray(new File[files.size()]);
+      // New files (like fingerprint files) have to be added first, versioned files are skipped
+      svnClientManager.getWCClient().doAdd(paths, true, false, false, SVNDepth.EMPTY, false, false, false);
+
+      SVNCommitInfo info = svnClientManager.getCommitClient().doCommit(paths, false, commitMessage,
           null, null, false, false, SVNDepth.FILES);
 
       if (info.getErrorMessage() != null) {
@@ -152,8 +849,54 @@ public class ScmHandlerSvnImpl implements ScmHandler {
 
       LOG.debug("Files committed. New revision: {}", info.getNewRevision());
 
+      synchronized (this) {
+        // The working copy revisions changed
+        this.crawledDirectories = null;
+      }
+
     } catch (SVNException e) {
+      if (isOutOfDate(e.getErrorMessage())) {
+        throw new NonSnapshotCommitConflictException("Failed to commit files, they are out of date: " + e.getMessage(), e);
+      }
       throw new NonSnapshotPluginException("Failed to commit files!", e);
+    } finally {
+      releaseClientManager(svnClientManager);
+    }
+  }
+
+  private static boolean isOutOfDate(SVNErrorMessage errorMessage) {
+    while (errorMessage != null) {
+      SVNErrorCode errorCode = errorMessage.getErrorCode();
+      if (errorCode == SVNErrorCode.WC_NOT_UP_TO_DATE || errorCode == SVNErrorCode.FS_TXN_OUT_OF_DATE
+          || errorCode == SVNErrorCode.FS_OUT_OF_DATE || errorCode == SVNErrorCode.RA_OUT_OF_DATE || errorCode == SVNErrorCode.FS_CONFLICT) {
+        return true;
+      }
+      errorMessage = errorMessage.getChildErrorMessage();
+    }
+    return false;
+  }
+
+  /**
+   * Reverts the given files and updates them to the HEAD revision. The rest of the working copy is not touched.
+   */
+  @Override
+  public void updateToRemote(List<File> files) {
+    LOG.debug("Updating files to HEAD: {}", files);
+
+    File[] paths = files.toArray(new File[files.size()]);
+    SVNClientManager svnClientManager = acquireClientManager();
+    try {
+      svnClientManager.getWCClient().doRevert(paths, SVNDepth.EMPTY, null);
+      svnClientManager.getUpdateClient().doUpdate(paths, SVNRevision.HEAD, SVNDepth.EMPTY, false, false);
+
+      synchronized (this) {
+        this.crawledDirectories = null;
+      }
+
+    } catch (SVNException e) {
+      throw new NonSnapshotPluginException("Failed to update files!", e);
+    } finally {
+      releaseClientManager(svnClientManager);
     }
   }
 
@@ -163,8 +906,153 @@ public class ScmHandlerSvnImpl implements ScmHandler {
       throw new NonSnapshotPluginException("Parameters 'scmUser' and 'scmPassword' are required!");
     }
 
-    ISVNAuthenticationManager authManager = new BasicAuthenticationManager(scmUser, scmPassword);
-    this.svnClientManager.setAuthenticationManager(authManager);
+    this.authManager = new BasicAuthenticationManager(scmUser, scmPassword);
+    this.idleClientManagers.clear();
+    initParallelism(properties);
+
+    this.crawlBaseDir = null;
+    this.crawledDirectories = null;
+    this.baseDir = localRepoPath != null ? toCanonicalPath(localRepoPath) : null;
+    this.useLogCache = properties != null && "true".equals(properties.getProperty("svnLogCache"));
+    synchronized (this.logCaches) {
+      this.logCaches.clear();
+      this.logCacheFiles.clear();
+    }
+    this.datedRevisions.clear();
+    if (this.useLogCache) {
+      LOG.info("SVN log cache is enabled");
+    }
+    if (localRepoPath != null && properties != null && "true".equals(properties.getProperty("svnCrawlWorkingCopy"))) {
+      this.crawlBaseDir = toCanonicalPath(localRepoPath);
+      LOG.info("SVN working copy crawl is enabled");
+    }
+  }
+
+  private static class SvnDirectoryInfo {
+    private long revision;
+    private long committedRevision;
+    private Date committedDate;
+    private SVNURL repositoryRoot;
+    private String repositoryPath;
+
+    private SvnDirectoryInfo(SVNInfo info) {
+      this.revision = info.getRevision().getNumber();
+      this.committedRevision = info.getCommittedRevision().getNumber();
+      this.committedDate = info.getCommittedDate();
+      this.repositoryRoot = info.getRepositoryRootURL();
+      this.repositoryPath = getRepositoryPath(info);
+    }
+  }
+
+  private static class SvnFingerprintModule {
+    private Path path;
+    private List<Path> excludedPaths = new ArrayList<>();
+    private Map<String, String> contentIds = new TreeMap<>();
+
+    private SvnFingerprintModule(Path path) {
+      this.path = path;
+    }
+
+    private boolean isExcluded(Path filePath) {
+      for (Path excludedPath : this.excludedPaths) {
+        if (filePath.startsWith(excludedPath)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static class SvnModule {
+    private ScmModuleStatus status;
+    private SVNURL repositoryRoot;
+    private String repositoryPath;
+    private List<String> excludedPaths = new ArrayList<>();
+    private long startRevision;
+    private Date sinceDate;
+    private long endRevision;
+
+    private SvnModule(ScmModuleStatus status, SvnDirectoryInfo info, long startRevision, Date sinceDate, long endRevision) {
+      this.status = status;
+      this.repositoryRoot = info.repositoryRoot;
+      this.repositoryPath = info.repositoryPath;
+      this.startRevision = startRevision;
+      this.sinceDate = sinceDate;
+      this.endRevision = endRevision;
+    }
+
+    private boolean containsRevision(SvnLogCache.Entry entry) {
+      if (entry.getRevision() > this.endRevision) {
+        return false;
+      }
+      if (this.sinceDate != null) {
+        return entry.getDate() == null || !entry.getDate().before(this.sinceDate);
+      }
+      return entry.getRevision() >= this.startRevision;
+    }
+  }
+
+  private static class SvnLogGroup {
+    private SVNURL repositoryRoot;
+    private long startRevision = Long.MAX_VALUE;
+    private Date sinceDate;
+    private long endRevision;
+    private List<File> moduleDirectories = new ArrayList<>();
+    private Map<String, List<SvnModule>> modulesByPath = new HashMap<>();
+    private Set<String> moduleBoundaries = new HashSet<>();
+    private int unchangedModules;
+
+    private SvnLogGroup(SVNURL repositoryRoot) {
+      this.repositoryRoot = repositoryRoot;
+    }
+
+    private void add(SvnModule module) {
+      if (module.sinceDate != null) {
+        if (this.sinceDate == null || module.sinceDate.before(this.sinceDate)) {
+          this.sinceDate = module.sinceDate;
+        }
+      } else {
+        this.startRevision = Math.min(this.startRevision, module.startRevision);
+      }
+      this.endRevision = Math.max(this.endRevision, module.endRevision);
+      this.moduleDirectories.add(module.status.getModuleDirectory());
+      this.moduleBoundaries.addAll(module.excludedPaths);
+      List<SvnModule> modules = this.modulesByPath.get(module.repositoryPath);
+      if (modules == null) {
+        modules = new ArrayList<>();
+        this.modulesByPath.put(module.repositoryPath, modules);
+      }
+      modules.add(module);
+      this.unchangedModules++;
+    }
+
+    private boolean isAllChanged() {
+      return this.unchangedModules == 0;
+    }
+
+    /**
+     * @return String - The deepest repository path containing all modules ("" is the repository root)
+     */
+    private String getCommonRepositoryPath() {
+      String commonPath = null;
+      for (String path : this.modulesByPath.keySet()) {
+        if (commonPath == null) {
+          commonPath = path;
+        }
+        while (!isWithin(path, commonPath)) {
+          commonPath = commonPath.substring(0, commonPath.lastIndexOf('/'));
+        }
+      }
+      return commonPath;
+    }
+  }
+
+  private static boolean isWithin(String repositoryPath, String parentPath) {
+    return parentPath.isEmpty() || repositoryPath.equals(parentPath) || repositoryPath.startsWith(parentPath + "/");
+  }
+
+  private static boolean isWithin(File directory, File parentDirectory) {
+    return directory.toPath().startsWith(parentDirectory.toPath());
   }
 
   private File toCanonicalPath(File path) {
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.InputLocation;
+import org.apache.maven.model.InputLocationTracker;
+import org.apache.maven.model.InputSource;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.Profile;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.XmlStreamReader;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+
+/**
+ * Streaming POM reader which only extracts what this plugin needs:
+ * <ul>
+ *   <li>The coordinates of the project and the parent</li>
+ *   <li>The modules</li>
+ *   <li>Dependencies, build plugins and plugin dependencies (also within profiles)</li>
+ * </ul>
+ * The result is a thin {@link Model} with an {@link InputLocation} (line and column) for the groupId,
+ * artifactId and version elements. All other elements are skipped without reading their content.
+ * <br><br>
+ * The locations are the same as the ones {@link org.apache.maven.model.io.xpp3.MavenXpp3ReaderEx} reports,
+ * since the same pull parser is used.
+ *
+ * @author Juergen Kofler
+ */
+public class StreamingPomReader {
+
+  /**
+   * Read the thin model from given POM file.
+   *
+   * @param pomFile File
+   * @return Model
+   */
+  public Model read(File pomFile) {
+    try (XmlStreamReader reader = ReaderFactory.newXmlReader(pomFile)) {
+      Model model = read(reader);
+      model.setPomFile(pomFile);
+      return model;
+
+    } catch (IOException | XmlPullParserException e) {
+      throw new NonSnapshotPluginException("Failed to load POM: " + pomFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Read the thin model from given POM content.
+   *
+   * @param reader Reader
+   * @return Model
+   * @throws IOException
+   * @throws XmlPullParserException
+   */
+  public Model read(Reader reader) throws IOException, XmlPullParserException {
+    InputSource source = new InputSource();
+
+    XmlPullParser parser = new MXParser();
+    parser.setInput(reader);
+
+    int eventType = parser.next();
+    while (eventType != XmlPullParser.START_TAG) {
+      if (eventType == XmlPullParser.END_DOCUMENT) {
+        throw new XmlPullParserException("No root element found");
+      }
+      eventType = parser.next();
+    }
+    if (!"project".equals(parser.getName())) {
+      throw new XmlPullParserException("Expected root element 'project' but found '" + parser.getName() + "'", parser, null);
+    }
+
+    return readProject(parser, source);
+  }
+
+  private Model readProject(XmlPullParser parser, InputSource source) throws IOException, XmlPullParserException {
+    Model model = new Model();
+
+    while (nextChildElement(parser)) {
+      switch (parser.getName()) {
+        case "groupId":
+          setLocation(model, "groupId", parser, source);
+          model.setGroupId(readText(parser));
+          break;
+        case "artifactId":
+          setLocation(model, "artifactId", parser, source);
+          model.setArtifactId(readText(parser));
+          break;
+        case "version":
+          setLocation(model, "version", parser, source);
+          model.setVersion(readText(parser));
+          break;
+        case "parent":
+          model.setParent(readParent(parser, source));
+          break;
+        case "modules":
+          readModules(parser, model.getModules());
+          break;
+        case "dependencies":
+          readDependencies(parser, source, model.getDependencies());
+          break;
+        case "build":
+          model.setBuild(readBuild(parser, source));
+          break;
+        case "profiles":
+          readProfiles(parser, source, model.getProfiles());
+          break;
+        default:
+          skipElement(parser);
+      }
+    }
+
+    return model;
+  }
+
+  private Parent readParent(XmlPullParser parser, InputSource source) throws IOException, XmlPullParserException {
+    Parent parent = new Parent();
+
+    while (nextChildElement(parser)) {
+      switch (parser.getName()) {
+        case "groupId":
+          setLocation(parent, "groupId", parser, source);
+          parent.setGroupId(readText(parser));
+          break;
+        case "artifactId":
+          setLocation(parent, "artifactId", parser, source);
+          parent.setArtifactId(readText(parser));
+          break;
+        case "version":
+          setLocation(parent, "version", parser, source);
+          parent.setVersion(readText(parser));
+          break;
+        default:
+          skipElement(parser);
+      }
+    }
+
+    return parent;
+  }
+
+  private void readModules(XmlPullParser parser, List<String> modules) throws IOException, XmlPullParserException {
+    while (nextChildElement(parser)) {
+      if ("module".equals(parser.getName())) {
+        modules.add(readText(parser));
+      } else {
+        skipElement(parser);
+      }
+    }
+  }
+
+  private void readDependencies(XmlPullParser parser, InputSource source, List<Dependency> dependencies) throws IOException, XmlPullParserException {
+    while (nextChildElement(parser)) {
+      if ("dependency".equals(parser.getName())) {
+        dependencies.add(readDependency(parser, source));
+      } else {
+        skipElement(parser);
+      }
+    }
+  }
+
+  private Dependency readDependency(XmlPullParser parser, InputSource source) throws IOException, XmlPullParserException {
+    Dependency dependency = new Dependency();
+
+    while (nextChildElement(parser)) {
+      switch (parser.getName()) {
+        case "groupId":
+          setLocation(dependency, "groupId", parser, source);
+          dependency.setGroupId(readText(parser));
+          break;
+        case "artifactId":
+          setLocation(dependency, "artifactId", parser, source);
+          dependency.setArtifactId(readText(parser));
+          break;
+        case "version":
+          setLocation(dependency, "version", parser, source);
+          dependency.setVersion(readText(parser));
+          break;
+        default:
+          skipElement(parser);
+      }
+    }
+
+    return dependency;
+  }
+
+  private Build readBuild(XmlPullParser parser, InputSource source) throws IOException, XmlPullParserException {
+    Build build = new Build();
+
+    while (nextChildElement(parser)) {
+      if ("plugins".equals(parser.getName())) {
+        while (nextChildElement(parser)) {
+          if ("plugin".equals(parser.getName())) {
+            build.addPlugin(readPlugin(parser, source));
+          } else {
+            skipElement(parser);
+          }
+        }
+      } else {
+        skipElement(parser);
+      }
+    }
+
+    return build;
+  }
+
+  private Plugin readPlugin(XmlPullParser parser, InputSource source) throws IOException, XmlPullParserException {
+    Plugin plugin = new Plugin();
+
+    while (nextChildElement(parser)) {
+      switch (parser.getName()) {
+        case "groupId":
+          setLocation(plugin, "groupId", parser, source);
+          plugin.setGroupId(readText(parser));
+          break;
+        case "artifactId":
+          setLocation(plugin, "artifactId", parser, source);
+          plugin.setArtifactId(readText(parser));
+          break;
+        case "version":
+          setLocation(plugin, "version", parser, source);
+          plugin.setVersion(readText(parser));
+          break;
+        case "dependencies":
+          readDependencies(parser, source, plugin.getDependencies());
+          break;
+        default:
+          skipElement(parser);
+      }
+    }
+
+    return plugin;
+  }
+
+  private void readProfiles(XmlPullParser parser, InputSource source, List<Profile> profiles) throws IOException, XmlPullParserException {
+    while (nextChildElement(parser)) {
+      if ("profile".equals(parser.getName())) {
+        profiles.add(readProfile(parser, source));
+      } else {
+        skipElement(parser);
+      }
+    }
+  }
+
+  private Profile readProfile(XmlPullParser parser, InputSource source) throws IOException, XmlPullParserException {
+    Profile profile = new Profile();
+
+    while (nextChildElement(parser)) {
+      switch (parser.getName()) {
+        case "id":
+          profile.setId(readText(parser));
+          break;
+        case "modules":
+          readModules(parser, profile.getModules());
+          break;
+        case "dependencies":
+          readDependencies(parser, source, profile.getDependencies());
+          break;
+        case "build":
+          profile.setBuild(readBuild(parser, source));
+          break;
+        default:
+          skipElement(parser);
+      }
+    }
+
+    return profile;
+  }
+
+  /**
+   * Move to the next child element of the current element.
+   *
+   * @return boolean - False if the end tag of the current element has been reached
+   */
+  private static boolean nextChildElement(XmlPullParser parser) throws IOException, XmlPullParserException {
+    while (true) {
+      int eventType = parser.next();
+      if (eventType == XmlPullParser.START_TAG) {
+        return true;
+      } else if (eventType == XmlPullParser.END_TAG) {
+        return false;
+      } else if (eventType == XmlPullParser.END_DOCUMENT) {
+        throw new XmlPullParserException("Unexpected end of document", parser, null);
+      }
+    }
+  }
+
+  private static void skipElement(XmlPullParser parser) throws IOException, XmlPullParserException {
+    int depth = 1;
+    while (depth > 0) {
+      int eventType = parser.next();
+      if (eventType == XmlPullParser.START_TAG) {
+        depth++;
+      } else if (eventType == XmlPullParser.END_TAG) {
+        depth--;
+      } else if (eventType == XmlPullParser.END_DOCUMENT) {
+        throw new XmlPullParserException("Unexpected end of document", parser, null);
+      }
+    }
+  }
+
+  private static String readText(XmlPullParser parser) throws IOException, XmlPullParserException {
+    return parser.nextText().trim();
+  }
+
+  private static void setLocation(InputLocationTracker tracker, String field, XmlPullParser parser, InputSource source) {
+    tracker.setLocation(field, new InputLocation(parser.getLineNumber(), parser.getColumnNumber(), source));
+  }
+
+}
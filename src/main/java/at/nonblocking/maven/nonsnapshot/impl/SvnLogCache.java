@@ -0,0 +1,387 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Local copy of the SVN log of a repository path.
+ * <br><br>
+ * Since the SVN history is immutable, fetched log entries never have to be fetched again.
+ * The cache knows for which range it is complete:
+ * <ul>
+ *   <li>All entries from the start revision up to the last revision</li>
+ *   <li>All entries committed at or after the start date up to the last revision</li>
+ * </ul>
+ * So only the missing (usually the newest) revisions have to be requested from the server.
+ * <br>
+ * The cache file is append-only: New entries and the new completeness range are appended as records.
+ *
+ * @author Juergen Kofler
+ */
+public class SvnLogCache {
+
+  private static final int FILE_MAGIC = 0x4e534c43;
+  private static final int FILE_VERSION = 1;
+
+  private static final byte RECORD_ENTRY = 'E';
+  private static final byte RECORD_RANGE = 'R';
+
+  private static final long NONE = -1;
+
+  private String repositoryRoot;
+  private String path;
+
+  private NavigableMap<Long, Entry> entries = new TreeMap<>();
+  private Entry[] sortedEntries;
+  private long startRevision = NONE;
+  private long startDate = Long.MAX_VALUE;
+  private long lastRevision = NONE;
+
+  private List<Entry> unsavedEntries = new ArrayList<>();
+  private boolean rangeChanged;
+  private boolean rewrite;
+
+  public SvnLogCache(String repositoryRoot, String path) {
+    this.repositoryRoot = repositoryRoot;
+    this.path = path;
+  }
+
+  public boolean isEmpty() {
+    return this.lastRevision == NONE;
+  }
+
+  /**
+   * @return long - The first revision the cache is complete from, -1 if empty
+   */
+  public long getStartRevision() {
+    return startRevision;
+  }
+
+  /**
+   * @return long - The last revision the cache is complete up to, -1 if empty
+   */
+  public long getLastRevision() {
+    return lastRevision;
+  }
+
+  /**
+   * Check if the cache contains all entries committed at or after given date (up to the last revision).
+   *
+   * @param since Date
+   * @return boolean
+   */
+  public boolean isCompleteSince(Date since) {
+    if (isEmpty()) {
+      return false;
+    }
+    if (this.startDate <= since.getTime() || this.startRevision <= 1) {
+      return true;
+    }
+
+    // An older entry within the complete range: All younger ones are complete as well
+    Map.Entry<Long, Entry> firstEntry = this.entries.ceilingEntry(this.startRevision);
+    return firstEntry != null && firstEntry.getValue().date != NONE && firstEntry.getValue().date < since.getTime();
+  }
+
+  /**
+   * Add the fetched entries of a revision range.
+   *
+   * @param fromRevision long
+   * @param toRevision long
+   * @param fetchedEntries List&lt;Entry&gt; - All entries within the range
+   */
+  public void addRevisionRange(long fromRevision, long toRevision, List<Entry> fetchedEntries) {
+    addEntries(fetchedEntries);
+
+    if (isEmpty()) {
+      this.startRevision = fromRevision;
+      this.lastRevision = toRevision;
+    } else {
+      this.startRevision = Math.min(this.startRevision, fromRevision);
+      this.lastRevision = Math.max(this.lastRevision, toRevision);
+    }
+    this.rangeChanged = true;
+  }
+
+  /**
+   * Add the fetched entries committed since given date up to given revision.
+   *
+   * @param since Date
+   * @param toRevision long
+   * @param fetchedEntries List&lt;Entry&gt; - All entries within the range
+   */
+  public void addDateRange(Date since, long toRevision, List<Entry> fetchedEntries) {
+    addEntries(fetchedEntries);
+
+    // There are no entries between the revision at the given date and the first fetched one
+    long firstRevision = fetchedEntries.isEmpty() ? toRevision + 1 : fetchedEntries.get(0).revision;
+
+    if (isEmpty()) {
+      this.startRevision = firstRevision;
+      this.lastRevision = toRevision;
+    } else {
+      this.startRevision = Math.min(this.startRevision, firstRevision);
+      this.lastRevision = Math.max(this.lastRevision, toRevision);
+    }
+    this.startDate = Math.min(this.startDate, since.getTime());
+    this.rangeChanged = true;
+  }
+
+  private void addEntries(List<Entry> fetchedEntries) {
+    for (Entry entry : fetchedEntries) {
+      if (!this.entries.containsKey(entry.revision)) {
+        this.entries.put(entry.revision, entry);
+        this.unsavedEntries.add(entry);
+        this.sortedEntries = null;
+      }
+    }
+  }
+
+  /**
+   * @param fromRevision long
+   * @param toRevision long
+   * @return List&lt;Entry&gt; - The entries within given range, ordered by revision
+   */
+  public List<Entry> getEntries(long fromRevision, long toRevision) {
+    if (fromRevision > toRevision) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<>(this.entries.subMap(fromRevision, true, toRevision, true).values());
+  }
+
+  /**
+   * @param since Date
+   * @param toRevision long
+   * @return List&lt;Entry&gt; - The entries committed at or after given date up to given revision, ordered by revision
+   */
+  public List<Entry> getEntries(Date since, long toRevision) {
+    return getEntries(getFirstRevisionSince(since), toRevision);
+  }
+
+  /**
+   * Resolve given date by a binary search over the (date ordered) entries.
+   *
+   * @param since Date
+   * @return long - The first revision committed at or after given date, or the last revision + 1 if there is none
+   */
+  public long getFirstRevisionSince(Date since) {
+    Entry[] sorted = getSortedEntries();
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sorted[middle].date < since.getTime()) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low < sorted.length ? sorted[low].revision : this.lastRevision + 1;
+  }
+
+  private Entry[] getSortedEntries() {
+    if (this.sortedEntries == null) {
+      this.sortedEntries = this.entries.values().toArray(new Entry[this.entries.size()]);
+    }
+    return this.sortedEntries;
+  }
+
+  /**
+   * Load the cache from given file.
+   * A missing file, or a file for a different repository path, results in an empty cache.
+   *
+   * @param cacheFile File
+   * @param repositoryRoot String
+   * @param path String - The repository path the log has been requested for
+   * @return SvnLogCache
+   * @throws IOException If the file is not readable or corrupt
+   */
+  public static SvnLogCache load(File cacheFile, String repositoryRoot, String path) throws IOException {
+    SvnLogCache cache = new SvnLogCache(repositoryRoot, path);
+    if (!cacheFile.exists()) {
+      return cache;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+      if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+        throw new IOException("Unknown SVN log cache format: " + cacheFile.getAbsolutePath());
+      }
+      if (!repositoryRoot.equals(in.readUTF()) || !path.equals(in.readUTF())) {
+        return cache;
+      }
+
+      while (true) {
+        int recordType;
+        try {
+          recordType = in.readByte();
+        } catch (EOFException e) {
+          break;
+        }
+
+        try {
+          if (recordType == RECORD_ENTRY) {
+            Entry entry = readEntry(in);
+            cache.entries.put(entry.revision, entry);
+          } else if (recordType == RECORD_RANGE) {
+            long startRevision = in.readLong();
+            long startDate = in.readLong();
+            long lastRevision = in.readLong();
+            cache.startRevision = startRevision;
+            cache.startDate = startDate;
+            cache.lastRevision = lastRevision;
+          } else {
+            throw new IOException("Corrupt SVN log cache: " + cacheFile.getAbsolutePath());
+          }
+        } catch (EOFException e) {
+          // Incomplete last record (interrupted write), the range record hasn't been written either
+          cache.rewrite = true;
+          break;
+        }
+      }
+    }
+
+    return cache;
+  }
+
+  /**
+   * Append the new entries and the new range to given file.
+   *
+   * @param cacheFile File
+   * @throws IOException
+   */
+  public void save(File cacheFile) throws IOException {
+    if (this.unsavedEntries.isEmpty() && !this.rangeChanged) {
+      return;
+    }
+
+    boolean newFile = this.rewrite || !cacheFile.exists() || !matches(cacheFile);
+    cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile, !newFile)))) {
+      if (newFile) {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(FILE_VERSION);
+        out.writeUTF(this.repositoryRoot);
+        out.writeUTF(this.path);
+        this.unsavedEntries = new ArrayList<>(this.entries.values());
+      }
+
+      for (Entry entry : this.unsavedEntries) {
+        out.writeByte(RECORD_ENTRY);
+        writeEntry(out, entry);
+      }
+
+      out.writeByte(RECORD_RANGE);
+      out.writeLong(this.startRevision);
+      out.writeLong(this.startDate);
+      out.writeLong(this.lastRevision);
+    }
+
+    this.unsavedEntries.clear();
+    this.rangeChanged = false;
+    this.rewrite = false;
+  }
+
+  private boolean matches(File cacheFile) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+      return in.readInt() == FILE_MAGIC && in.readInt() == FILE_VERSION
+          && this.repositoryRoot.equals(in.readUTF()) && this.path.equals(in.readUTF());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static Entry readEntry(DataInputStream in) throws IOException {
+    long revision = in.readLong();
+    long date = in.readLong();
+    boolean pluginCommit = in.readBoolean();
+    String[] changedPaths = new String[in.readInt()];
+    for (int i = 0; i < changedPaths.length; i++) {
+      changedPaths[i] = in.readUTF();
+    }
+    return new Entry(revision, date != NONE ? new Date(date) : null, pluginCommit, changedPaths);
+  }
+
+  private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+    out.writeLong(entry.revision);
+    out.writeLong(entry.date);
+    out.writeBoolean(entry.pluginCommit);
+    out.writeInt(entry.changedPaths.length);
+    for (String changedPath : entry.changedPaths) {
+      out.writeUTF(changedPath);
+    }
+  }
+
+  /**
+   * The part of a SVN log entry relevant for the change detection.
+   */
+  public static class Entry {
+    private long revision;
+    private long date;
+    private boolean pluginCommit;
+    private String[] changedPaths;
+
+    public Entry(long revision, Date date, boolean pluginCommit, String[] changedPaths) {
+      this.revision = revision;
+      this.date = date != null ? date.getTime() : NONE;
+      this.pluginCommit = pluginCommit;
+      this.changedPaths = changedPaths;
+    }
+
+    public Entry(long revision, Date date, boolean pluginCommit, Map<String, ?> changedPaths) {
+      this(revision, date, pluginCommit, changedPaths.keySet().toArray(new String[changedPaths.size()]));
+    }
+
+    public long getRevision() {
+      return revision;
+    }
+
+    /**
+     * @return Date - null if the revision has no date
+     */
+    public Date getDate() {
+      return date != NONE ? new Date(date) : null;
+    }
+
+    /**
+     * @return boolean - True if this is a commit of this plugin
+     */
+    public boolean isPluginCommit() {
+      return pluginCommit;
+    }
+
+    public String[] getChangedPaths() {
+      return changedPaths;
+    }
+  }
+
+}
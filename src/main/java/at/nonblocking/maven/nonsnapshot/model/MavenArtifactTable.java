@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interning table for artifact coordinates.
+ * <br><br>
+ * Every distinct groupId:artifactId:version gets a single (shared) {@link MavenArtifact} instance,
+ * and every distinct coordinate string is only kept once.
+ * So a large workspace where the same artifacts are referenced over and over again doesn't keep
+ * a separate copy for each dependency declaration.
+ * <br>
+ * A table is meant to live for a single run only, it keeps all artifacts ever added.
+ * The shared instances must not be modified.
+ *
+ * @author Juergen Kofler
+ */
+public class MavenArtifactTable {
+
+  private Map<String, String> strings = new HashMap<>();
+  private Map<Coordinates, MavenArtifact> artifacts = new HashMap<>();
+
+  /**
+   * Get the canonical instance of given string.
+   *
+   * @param string String
+   * @return String
+   */
+  public synchronized String intern(String string) {
+    if (string == null) {
+      return null;
+    }
+
+    String canonical = this.strings.get(string);
+    if (canonical == null) {
+      this.strings.put(string, string);
+      canonical = string;
+    }
+    return canonical;
+  }
+
+  /**
+   * Get the shared artifact instance with given coordinates. The artifact is added to the table if necessary.
+   *
+   * @param groupId String
+   * @param artifactId String
+   * @param version String
+   * @return MavenArtifact
+   */
+  public synchronized MavenArtifact getArtifact(String groupId, String artifactId, String version) {
+    Coordinates coordinates = new Coordinates(groupId, artifactId, version);
+    MavenArtifact artifact = this.artifacts.get(coordinates);
+    if (artifact == null) {
+      artifact = new MavenArtifact(intern(groupId), intern(artifactId), intern(version));
+      this.artifacts.put(coordinates, artifact);
+    }
+    return artifact;
+  }
+
+  /**
+   * @return int - The number of distinct artifacts
+   */
+  public synchronized int size() {
+    return this.artifacts.size();
+  }
+
+  private static final class Coordinates {
+    private final String groupId;
+    private final String artifactId;
+    private final String version;
+
+    private Coordinates(String groupId, String artifactId, String version) {
+      this.groupId = groupId;
+      this.artifactId = artifactId;
+      this.version = version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Coordinates)) {
+        return false;
+      }
+      Coordinates other = (Coordinates) o;
+      return equal(this.groupId, other.groupId) && equal(this.artifactId, other.artifactId) && equal(this.version, other.version);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = this.groupId != null ? this.groupId.hashCode() : 0;
+      result = 31 * result + (this.artifactId != null ? this.artifactId.hashCode() : 0);
+      result = 31 * result + (this.version != null ? this.version.hashCode() : 0);
+      return result;
+    }
+
+    private static boolean equal(String s1, String s2) {
+      return s1 == null ? s2 == null : s1.equals(s2);
+    }
+  }
+
+}
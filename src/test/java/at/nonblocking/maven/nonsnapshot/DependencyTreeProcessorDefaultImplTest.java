@@ -5,12 +5,14 @@ import static junit.framework.Assert.*;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.junit.Ignore;
 import org.junit.Test;
 
 import at.nonblocking.maven.nonsnapshot.impl.DependencyTreeProcessorDefaultImpl;
 import at.nonblocking.maven.nonsnapshot.model.MavenArtifact;
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
+import at.nonblocking.maven.nonsnapshot.model.UpdatedUpstreamMavenArtifact;
 
 public class DependencyTreeProcessorDefaultImplTest {
 
@@ -108,4 +110,88 @@ public class DependencyTreeProcessorDefaultImplTest {
 
     dependencyTreeProcessor.printMavenModulesTree(artifacts, System.out);
   }
+
+  @Test
+  public void testMarkAllArtifactsDirtyWithDirtyDependenciesSinglePass() {
+    MavenModule wsArtifact1 = new MavenModule(null, "at.nonblocking.at", "parent", "1.0.0");
+    MavenModule wsArtifact2 = new MavenModule(null, "at.nonblocking.at", "child", "1.0.0");
+    MavenModule wsArtifact3 = new MavenModule(null, "at.nonblocking.at", "test1", "1.0.0");
+    MavenModule wsArtifact4 = new MavenModule(null, "at.nonblocking.at", "test2", "1.0.0");
+    MavenModule wsArtifact5 = new MavenModule(null, "at.nonblocking.at", "test3", "1.0.0");
+    MavenModule wsArtifact6 = new MavenModule(null, "at.nonblocking.at", "unrelated", "1.0.0");
+
+    //5 -> 4 -> 3 -> 2 (child of 1) -> 1 (upstream dirty)
+    wsArtifact1.getDependencies().add(new MavenModuleDependency(0, new UpdatedUpstreamMavenArtifact("at.nonblocking.at", "upstream", "1.0.0", "1.0.1")));
+    wsArtifact2.setParent(wsArtifact1);
+    wsArtifact3.getDependencies().add(new MavenModuleDependency(0, wsArtifact2));
+    wsArtifact4.getDependencies().add(new MavenModuleDependency(0, wsArtifact3));
+    wsArtifact5.getDependencies().add(new MavenModuleDependency(0, wsArtifact4));
+
+    //Reverse order to make sure the propagation doesn't depend on the module order
+    List<MavenModule> artifacts = new ArrayList<>();
+    artifacts.add(wsArtifact6);
+    artifacts.add(wsArtifact5);
+    artifacts.add(wsArtifact4);
+    artifacts.add(wsArtifact3);
+    artifacts.add(wsArtifact2);
+    artifacts.add(wsArtifact1);
+
+    DependencyTreeProcessor dependencyTreeProcessor = new DependencyTreeProcessorDefaultImpl();
+
+    assertTrue(dependencyTreeProcessor.markAllArtifactsDirtyWithDirtyDependencies(artifacts));
+
+    assertTrue(wsArtifact1.isDirty());
+    assertTrue(wsArtifact2.isDirty());
+    assertTrue(wsArtifact3.isDirty());
+    assertTrue(wsArtifact4.isDirty());
+    assertTrue(wsArtifact5.isDirty());
+    assertFalse(wsArtifact6.isDirty());
+
+    assertFalse(dependencyTreeProcessor.markAllArtifactsDirtyWithDirtyDependencies(artifacts));
+  }
+
+  @Test
+  @Ignore("Benchmark")
+  public void testBuildDependencyTreeScalesLinearly() {
+    DependencyTreeProcessor dependencyTreeProcessor = new DependencyTreeProcessorDefaultImpl();
+
+    //Warm up
+    dependencyTreeProcessor.buildDependencyTree(createModules(5000, 20));
+
+    double nanosPerModule5k = 0;
+    for (int moduleCount : new int[]{ 5000, 10000, 20000, 50000 }) {
+      List<MavenModule> modules = createModules(moduleCount, 20);
+
+      long start = System.nanoTime();
+      dependencyTreeProcessor.buildDependencyTree(modules);
+      double nanosPerModule = (System.nanoTime() - start) / (double) moduleCount;
+
+      assertSame(modules.get(0), modules.get(moduleCount - 1).getParent());
+      assertSame(modules.get(moduleCount - 2), modules.get(moduleCount - 1).getDependencies().get(0).getArtifact());
+
+      if (moduleCount == 5000) {
+        nanosPerModule5k = nanosPerModule;
+      } else {
+        //A quadratic lookup would be 10 times slower per module with 50k modules
+        assertTrue("Dependency tree build doesn't scale linearly: " + (long) nanosPerModule + "ns per module with " + moduleCount
+            + " modules, " + (long) nanosPerModule5k + "ns with 5000", nanosPerModule < nanosPerModule5k * 5);
+      }
+    }
+  }
+
+  private List<MavenModule> createModules(int moduleCount, int dependencyCount) {
+    List<MavenModule> modules = new ArrayList<>(moduleCount);
+    for (int i = 0; i < moduleCount; i++) {
+      MavenModule module = new MavenModule(null, "at.nonblocking.at", "module" + i, "1.0.0");
+      if (i > 0) {
+        module.setParent(new MavenArtifact("at.nonblocking.at", "module0", "1.0.0"));
+      }
+      for (int j = 1; j <= dependencyCount; j++) {
+        String artifactId = i - j >= 0 ? "module" + (i - j) : "external" + j;
+        module.getDependencies().add(new MavenModuleDependency(0, new MavenArtifact("at.nonblocking.at", artifactId, "1.0.0")));
+      }
+      modules.add(module);
+    }
+    return modules;
+  }
 }
@@ -0,0 +1,127 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.nonblocking.maven.nonsnapshot.impl.GitDirectoryHistory;
+import at.nonblocking.maven.nonsnapshot.impl.GitHistoryWalker;
+
+public class GitHistoryWalkerTest {
+
+  private File repoDir = new File("target/git-history-walker-test");
+  private Git git;
+
+  @Before
+  public void setupRepo() throws Exception {
+    FileUtils.deleteDirectory(this.repoDir);
+    this.git = Git.init().setDirectory(this.repoDir).call();
+  }
+
+  @Test
+  public void testWalkAllDirectories() throws Exception {
+    RevCommit commit1 = commit(1000, "Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml", "module2/sub/pom.xml");
+    RevCommit commit2 = commit(2000, "Change module1", "module1/src/Foo.java");
+    commit(3000, ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module1/pom.xml");
+
+    Map<String, GitDirectoryHistory> histories = new GitHistoryWalker(this.git.getRepository()).walk(null);
+
+    assertEquals(new Date(3000 * 1000L), histories.get("").getLastCommitDate());
+    assertEquals(new Date(2000 * 1000L), histories.get("").getLastNonPluginCommitDate());
+
+    assertEquals(new Date(3000 * 1000L), histories.get("module1").getLastCommitDate());
+    assertEquals(commit2.getId(), histories.get("module1").getLastNonPluginCommitId());
+    assertEquals(new Date(2000 * 1000L), histories.get("module1/src").getLastCommitDate());
+
+    assertEquals(commit1.getId(), histories.get("module2").getLastCommitId());
+    assertEquals(commit1.getId(), histories.get("module2/sub").getLastNonPluginCommitId());
+  }
+
+  @Test
+  public void testWalkGivenDirectories() throws Exception {
+    commit(1000, "Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml", "module3/pom.xml");
+    RevCommit commit2 = commit(2000, "Change module1", "module1/src/Foo.java");
+    RevCommit commit3 = commit(3000, ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module2/pom.xml");
+
+    Map<String, GitDirectoryHistory> histories = new GitHistoryWalker(this.git.getRepository())
+        .walk(new HashSet<>(Arrays.asList("module1", "module2", "notExisting")));
+
+    assertEquals(2, histories.size());
+    assertEquals(commit2.getId(), histories.get("module1").getLastCommitId());
+    assertEquals(commit2.getId(), histories.get("module1").getLastNonPluginCommitId());
+    assertEquals(commit3.getId(), histories.get("module2").getLastCommitId());
+    assertEquals(new Date(1000 * 1000L), histories.get("module2").getLastNonPluginCommitDate());
+    assertNull(histories.get("module3"));
+  }
+
+  @Test
+  public void testWalkWithModuleBoundaries() throws Exception {
+    RevCommit commit1 = commit(1000, "Initial", "pom.xml", "module1/pom.xml", "module1/sub/pom.xml");
+    RevCommit commit2 = commit(2000, "Change sub module", "module1/sub/src/Foo.java");
+    RevCommit commit3 = commit(3000, "Change folder", "module1/folder/Bar.java");
+
+    Map<String, GitDirectoryHistory> histories = new GitHistoryWalker(this.git.getRepository(), new HashSet<>(Arrays.asList("module1", "module1/sub")))
+        .walk(new HashSet<>(Arrays.asList("", "module1", "module1/sub")));
+
+    assertEquals(commit1.getId(), histories.get("").getLastCommitId());
+    assertEquals(commit3.getId(), histories.get("module1").getLastCommitId());
+    assertEquals(commit2.getId(), histories.get("module1/sub").getLastCommitId());
+  }
+
+  @Test
+  public void testWalkWithMaxCommits() throws Exception {
+    RevCommit commit1 = commit(1000, "Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    commit(2000, ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module1/pom.xml");
+    commit(3000, "Change module2", "module2/src/Foo.java");
+    RevCommit commit4 = commit(4000, ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 2 artifacts updated", "module1/pom.xml");
+
+    // Commits which don't change the directory don't count
+    GitHistoryWalker walker = new GitHistoryWalker(this.git.getRepository());
+    walker.setMaxCommits(2);
+    Map<String, GitDirectoryHistory> histories = walker.walk(new HashSet<>(Arrays.asList("module1")));
+
+    assertTrue(walker.isTruncated());
+    assertEquals(commit4.getId(), histories.get("module1").getLastCommitId());
+    assertNull(histories.get("module1").getLastNonPluginCommitId());
+
+    walker.setMaxCommits(3);
+    histories = walker.walk(new HashSet<>(Arrays.asList("module1")));
+
+    assertFalse(walker.isTruncated());
+    assertEquals(commit1.getId(), histories.get("module1").getLastNonPluginCommitId());
+  }
+
+  @Test
+  public void testWalkEmptyRepository() throws Exception {
+    Map<String, GitDirectoryHistory> histories = new GitHistoryWalker(this.git.getRepository()).walk(null);
+
+    assertTrue(histories.isEmpty());
+  }
+
+  private RevCommit commit(int commitTime, String message, String... paths) throws Exception {
+    for (String path : paths) {
+      File file = new File(this.repoDir, path);
+      file.getParentFile().mkdirs();
+      PrintWriter writer = new PrintWriter(file);
+      writer.write(message);
+      writer.close();
+      this.git.add().addFilepattern(path).call();
+    }
+
+    PersonIdent ident = new PersonIdent("test", "test@nonblocking.at", new Date(commitTime * 1000L), TimeZone.getTimeZone("UTC"));
+    return this.git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+  }
+}
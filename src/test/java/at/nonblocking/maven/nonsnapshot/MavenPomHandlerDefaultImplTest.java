@@ -1,17 +1,31 @@
 package at.nonblocking.maven.nonsnapshot;
 
 import static junit.framework.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
-
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.model.InputSource;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.model.io.xpp3.MavenXpp3ReaderEx;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.junit.Test;
 
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
 import at.nonblocking.maven.nonsnapshot.impl.MavenPomHandlerDefaultImpl;
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 
@@ -88,6 +102,141 @@ public class MavenPomHandlerDefaultImplTest {
     assertEquals("5.0.1-555", pom.getDependencies().get(1).getVersion());
   }
 
+  @Test
+  public void testUpdateArtifactOnlyReplacesVersionBytes() throws Exception {
+    File baseDir = new File("target/pom-rewrite-test");
+    FileUtils.deleteDirectory(baseDir);
+    baseDir.mkdirs();
+
+    String original = FileUtils.fileRead(new File("src/test/resources/test-pom.xml"), "UTF-8").replace("\r\n", "\n").replace("\n", "\r\n");
+    File pomFile = new File(baseDir, "pom.xml");
+    FileUtils.fileWrite(pomFile.getAbsolutePath(), "UTF-8", original);
+
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact = pomHandler.readArtifact(pomFile);
+    wsArtifact.setDirty(true);
+    wsArtifact.setNewVersion("1.1.1-12345");
+
+    MavenModule dependentArtifact = new MavenModule(null, "at.nonblocking.at", "test2", "2.0.5-123");
+    dependentArtifact.setDirty(true);
+    dependentArtifact.setNewVersion("5.0.1-555");
+    wsArtifact.getDependencies().get(1).setArtifact(dependentArtifact);
+
+    pomHandler.updateArtifact(wsArtifact);
+
+    String expected = original
+        .replace("<version>1.0.0-SNAPSHOT</version>", "<version>1.1.1-12345</version>")
+        .replace("<version>2.0.5-123</version>", "<version>5.0.1-555</version>");
+    assertEquals(expected, FileUtils.fileRead(pomFile, "UTF-8"));
+    assertEquals(1, baseDir.list().length);
+  }
+
+  @Test
+  public void testUpdateArtifactKeepsPermissionsAndSymlinks() throws Exception {
+    assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+
+    File baseDir = new File("target/pom-permissions-test");
+    FileUtils.deleteDirectory(baseDir);
+    new File(baseDir, "shared").mkdirs();
+
+    File realPomFile = new File(baseDir, "shared/pom.xml");
+    FileUtils.copyFile(new File("src/test/resources/test-pom.xml"), realPomFile);
+    Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+    Files.setPosixFilePermissions(realPomFile.toPath(), permissions);
+
+    File pomFile = new File(baseDir, "pom.xml");
+    Files.createSymbolicLink(pomFile.toPath(), Paths.get("shared/pom.xml"));
+
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact = pomHandler.readArtifact(pomFile);
+    wsArtifact.setDirty(true);
+    wsArtifact.setNewVersion("1.1.1-12345");
+
+    assertTrue(pomHandler.updateArtifact(wsArtifact));
+
+    assertTrue(Files.isSymbolicLink(pomFile.toPath()));
+    assertEquals("1.1.1-12345", new MavenXpp3Reader().read(new FileInputStream(realPomFile)).getVersion());
+    assertEquals(permissions, Files.getPosixFilePermissions(realPomFile.toPath()));
+    assertEquals(1, new File(baseDir, "shared").list().length);
+  }
+
+  @Test
+  public void testUpdateArtifactSkipsUnchangedContent() throws Exception {
+    File baseDir = new File("target/pom-unchanged-test");
+    FileUtils.deleteDirectory(baseDir);
+    baseDir.mkdirs();
+
+    File pomFile1 = new File(baseDir, "pom1.xml");
+    File pomFile2 = new File(baseDir, "pom2.xml");
+    FileUtils.copyFile(new File("src/test/resources/test-pom.xml"), pomFile1);
+    FileUtils.copyFile(new File("src/test/resources/test-pom.xml"), pomFile2);
+    long lastModified = pomFile1.lastModified() - 60000;
+    pomFile1.setLastModified(lastModified);
+
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact1 = pomHandler.readArtifact(pomFile1);
+    wsArtifact1.setDirty(true);
+    wsArtifact1.setNewVersion(wsArtifact1.getVersion());
+    MavenModule wsArtifact2 = pomHandler.readArtifact(pomFile2);
+    wsArtifact2.setDirty(true);
+    wsArtifact2.setNewVersion("1.1.1-12345");
+
+    assertFalse(pomHandler.updateArtifact(wsArtifact1));
+    assertEquals(lastModified, pomFile1.lastModified());
+
+    List<MavenModule> changed = pomHandler.updateArtifacts(Arrays.asList(wsArtifact1, wsArtifact2), 1);
+
+    assertEquals(1, changed.size());
+    assertSame(wsArtifact2, changed.get(0));
+    assertEquals(lastModified, pomFile1.lastModified());
+    assertEquals("1.1.1-12345", new MavenXpp3Reader().read(new FileInputStream(pomFile2)).getVersion());
+  }
+
+  @Test
+  public void testUpdateArtifactsAllOrNothing() throws Exception {
+    File baseDir = new File("target/pom-transaction-test");
+    FileUtils.deleteDirectory(baseDir);
+    new File(baseDir, "module1").mkdirs();
+    new File(baseDir, "module2").mkdirs();
+
+    String original = FileUtils.fileRead(new File("src/test/resources/test-pom.xml"), "UTF-8");
+    File pomFile1 = new File(baseDir, "module1/pom.xml");
+    File pomFile2 = new File(baseDir, "module2/pom.xml");
+    FileUtils.fileWrite(pomFile1.getAbsolutePath(), "UTF-8", original);
+    FileUtils.fileWrite(pomFile2.getAbsolutePath(), "UTF-8", original);
+
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact1 = pomHandler.readArtifact(pomFile1);
+    wsArtifact1.setDirty(true);
+    wsArtifact1.setNewVersion("1.1.1-12345");
+    MavenModule wsArtifact2 = pomHandler.readArtifact(pomFile2);
+    wsArtifact2.setDirty(true);
+    wsArtifact2.setNewVersion("1.1.1-12345");
+    wsArtifact2.setVersionLocation(10000);
+
+    try {
+      pomHandler.updateArtifacts(Arrays.asList(wsArtifact1, wsArtifact2), 2);
+      fail("Exception expected");
+    } catch (NonSnapshotPluginException e) {
+      // Expected
+    }
+
+    assertEquals(original, FileUtils.fileRead(pomFile1, "UTF-8"));
+    assertEquals(original, FileUtils.fileRead(pomFile2, "UTF-8"));
+    assertEquals(1, new File(baseDir, "module1").list().length);
+    assertEquals(1, new File(baseDir, "module2").list().length);
+
+    wsArtifact2.setVersionLocation(wsArtifact1.getVersionLocation());
+    pomHandler.updateArtifacts(Arrays.asList(wsArtifact1, wsArtifact2), 2);
+
+    assertEquals("1.1.1-12345", new MavenXpp3Reader().read(new FileInputStream(pomFile1)).getVersion());
+    assertEquals("1.1.1-12345", new MavenXpp3Reader().read(new FileInputStream(pomFile2)).getVersion());
+  }
+
   @Test
   public void testReadAndUpdateArtifactWithParent() throws Exception {
     File pomFile = new File("target/test-pom-parent.xml");
@@ -162,4 +311,77 @@ public class MavenPomHandlerDefaultImplTest {
     assertEquals("1.1.1-12345", pom.getVersion());
     assertEquals("5.0.1-555", pom.getDependencies().get(1).getVersion());
   }
+  @Test
+  public void testApplyRecordedVersionEdits() throws Exception {
+    File baseDir = new File("target");
+    File pomFile = new File("target/pom-edits-test/pom.xml");
+    pomFile.getParentFile().mkdirs();
+    IOUtil.copy(new FileReader("src/test/resources/test-pom-parent.xml"), new FileOutputStream(pomFile));
+
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact = pomHandler.readArtifact(pomFile);
+    wsArtifact.setDirty(true);
+    wsArtifact.setNewVersion("1.1.1-12345");
+    MavenModule parentArtifact = new MavenModule(null, "at.nonblocking", "parent-test", "1.4.5-123");
+    parentArtifact.setDirty(true);
+    parentArtifact.setNewVersion("3.3.3-456");
+    wsArtifact.setParent(parentArtifact);
+
+    String registryLine = PomVersionEdits.fromModule(wsArtifact).toRegistryLine("pom-edits-test");
+    assertEquals("pom-edits-test\t1.1.1-12345\tat.nonblocking:parent-test=3.3.3-456", registryLine);
+
+    PomVersionEdits edits = PomVersionEdits.fromRegistryLine(baseDir, registryLine);
+    assertTrue(edits.isRecorded());
+    assertEquals(pomFile.getCanonicalFile(), edits.getPomFile());
+
+    // The latest remote state
+    IOUtil.copy(new FileReader("src/test/resources/test-pom-parent.xml"), new FileOutputStream(pomFile));
+
+    edits.apply(pomHandler);
+
+    Model pom = new MavenXpp3Reader().read(new FileInputStream(pomFile));
+    assertEquals("1.1.1-12345", pom.getVersion());
+    assertEquals("3.3.3-456", pom.getParent().getVersion());
+    assertEquals("1.1.1-123", pom.getDependencies().get(0).getVersion());
+
+    assertFalse(PomVersionEdits.fromRegistryLine(baseDir, "pom-edits-test").isRecorded());
+  }
+
+  @Test
+  public void testReadArtifactsShareInternedDependencies() throws Exception {
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    List<Model> models = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      Model model = new MavenXpp3ReaderEx().read(new FileInputStream("src/test/resources/test-pom.xml"), false, new InputSource());
+      model.setPomFile(new File("src/test/resources/test-pom.xml"));
+      models.add(model);
+    }
+
+    List<MavenModule> mavenModules = pomHandler.readArtifacts(models);
+    MavenModule wsArtifact1 = mavenModules.get(0);
+    MavenModule wsArtifact2 = mavenModules.get(1);
+
+    assertEquals(Arrays.asList(null, null), models);
+    assertNotSame(wsArtifact1, wsArtifact2);
+    assertSame(wsArtifact1.getGroupId(), wsArtifact2.getGroupId());
+    assertSame(wsArtifact1.getVersion(), wsArtifact2.getVersion());
+
+    for (int i = 0; i < wsArtifact1.getDependencies().size(); i++) {
+      assertNotSame(wsArtifact1.getDependencies().get(i), wsArtifact2.getDependencies().get(i));
+      assertSame(wsArtifact1.getDependencies().get(i).getArtifact(), wsArtifact2.getDependencies().get(i).getArtifact());
+    }
+  }
+
+  @Test
+  public void testArtifactsNotSharedAcrossRuns() throws Exception {
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact1 = pomHandler.readArtifact(new File("src/test/resources/test-pom.xml"));
+    MavenModule wsArtifact2 = pomHandler.readArtifact(new File("src/test/resources/test-pom.xml"));
+
+    assertNotSame(wsArtifact1.getDependencies().get(0).getArtifact(), wsArtifact2.getDependencies().get(0).getArtifact());
+  }
+
 }
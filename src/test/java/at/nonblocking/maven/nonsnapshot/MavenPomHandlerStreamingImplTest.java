@@ -0,0 +1,88 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.impl.MavenPomHandlerDefaultImpl;
+import at.nonblocking.maven.nonsnapshot.impl.MavenPomHandlerStreamingImpl;
+import at.nonblocking.maven.nonsnapshot.impl.ModuleTraverserDefaultImpl;
+import at.nonblocking.maven.nonsnapshot.impl.ModuleTraverserStreamingImpl;
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
+
+public class MavenPomHandlerStreamingImplTest {
+
+  private static final String[] TEST_POMS = {
+      "src/test/resources/test-pom.xml",
+      "src/test/resources/test-pom-parent.xml",
+      "src/test/resources/test-pom-noversion.xml",
+      "src/test/resources/testworkspace/project1/pom.xml",
+      "src/test/resources/testworkspace/project1/module1/pom.xml",
+      "src/test/resources/testworkspace/project1/module2/pom.xml",
+      "src/test/resources/testworkspace/project1/module3/pom.xml",
+      "src/test/resources/testworkspace/project2/pom.xml"
+  };
+
+  @Test
+  public void testReadArtifactSameAsDefault() {
+    MavenPomHandler defaultPomHandler = new MavenPomHandlerDefaultImpl();
+    MavenPomHandler streamingPomHandler = new MavenPomHandlerStreamingImpl();
+
+    for (String testPom : TEST_POMS) {
+      MavenModule expected = defaultPomHandler.readArtifact(new File(testPom));
+      MavenModule actual = streamingPomHandler.readArtifact(new File(testPom));
+
+      assertEquals(testPom, describe(expected), describe(actual));
+    }
+  }
+
+  @Test
+  public void testFindAllModulesSameAsDefault() {
+    MavenProject mavenProject = new MavenProject();
+    mavenProject.setFile(new File("src/test/resources/testworkspace/project1/pom.xml"));
+
+    Profile activeProfile = new Profile();
+    activeProfile.setId("foo");
+
+    List<Model> expected = new ModuleTraverserDefaultImpl().findAllModules(mavenProject, Arrays.asList(activeProfile));
+    List<Model> actual = new ModuleTraverserStreamingImpl().findAllModules(mavenProject, Arrays.asList(activeProfile));
+
+    assertEquals(expected.size(), actual.size());
+
+    MavenPomHandler pomHandler = new MavenPomHandlerStreamingImpl();
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getPomFile(), actual.get(i).getPomFile());
+      assertEquals(describe(pomHandler.readArtifact(expected.get(i))), describe(pomHandler.readArtifact(actual.get(i))));
+    }
+  }
+
+  @Test(expected = NonSnapshotPluginException.class)
+  public void testReadInvalidPom() {
+    new MavenPomHandlerStreamingImpl().readArtifact(new File("src/test/resources/testVersions.xml"));
+  }
+
+  private String describe(MavenModule module) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(module.getGroupId()).append(':').append(module.getArtifactId()).append(':').append(module.getVersion())
+        .append('@').append(module.getVersionLocation()).append(module.isInsertVersionTag() ? " insert" : "").append('\n');
+    if (module.getParent() != null) {
+      sb.append("parent ").append(module.getParent().getGroupId()).append(':').append(module.getParent().getArtifactId())
+          .append(':').append(module.getParent().getVersion()).append('@').append(module.getParentVersionLocation()).append('\n');
+    }
+    for (MavenModuleDependency dependency : module.getDependencies()) {
+      sb.append("dependency ").append(dependency.getArtifact().getGroupId()).append(':').append(dependency.getArtifact().getArtifactId())
+          .append(':').append(dependency.getArtifact().getVersion()).append('@').append(dependency.getVersionLocation()).append('\n');
+    }
+    return sb.toString();
+  }
+
+}
@@ -1,5 +1,6 @@
 package at.nonblocking.maven.nonsnapshot;
 
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
 import at.nonblocking.maven.nonsnapshot.impl.ModuleTraverserDefaultImpl;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.Profile;
@@ -11,6 +12,7 @@ import static junit.framework.Assert.*;
 import java.io.File;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
 
 public class ModuleTraverserDefaultImplTest {
 
@@ -52,4 +54,41 @@ public class ModuleTraverserDefaultImplTest {
     assertEquals("project2", mavenModels.get(3).getArtifactId());
     assertEquals("module3", mavenModels.get(4).getArtifactId());
   }
+
+  @Test
+  public void readModulesInParallelTest() {
+    MavenProject mavenProject = new MavenProject();
+    mavenProject.setFile(new File("src/test/resources/testworkspace/project1/pom.xml"));
+
+    ModuleTraverser moduleTraverser = new ModuleTraverserDefaultImpl();
+    Properties properties = new Properties();
+    properties.setProperty("parallelism", "4");
+    moduleTraverser.init(properties);
+
+    Profile activeProfile = new Profile();
+    activeProfile.setId("foo");
+    List<Model> mavenModels = moduleTraverser.findAllModules(mavenProject, Arrays.asList(activeProfile));
+
+    assertNotNull(mavenModels);
+    assertEquals(5, mavenModels.size());
+
+    assertEquals("project1", mavenModels.get(0).getArtifactId());
+    assertEquals("module1", mavenModels.get(1).getArtifactId());
+    assertEquals("module2", mavenModels.get(2).getArtifactId());
+    assertEquals("project2", mavenModels.get(3).getArtifactId());
+    assertEquals("module3", mavenModels.get(4).getArtifactId());
+  }
+
+  @Test(expected = NonSnapshotPluginException.class)
+  public void readModulesInParallelInvalidPathTest() {
+    MavenProject mavenProject = new MavenProject();
+    mavenProject.setFile(new File("src/test/resources/testworkspace/notExisting/pom.xml"));
+
+    ModuleTraverser moduleTraverser = new ModuleTraverserDefaultImpl();
+    Properties properties = new Properties();
+    properties.setProperty("parallelism", "4");
+    moduleTraverser.init(properties);
+
+    moduleTraverser.findAllModules(mavenProject, null);
+  }
 }
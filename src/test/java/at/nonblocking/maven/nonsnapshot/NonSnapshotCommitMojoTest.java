@@ -10,6 +10,10 @@ import java.util.Arrays;
 import org.apache.maven.project.MavenProject;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotCommitConflictException;
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 
 public class NonSnapshotCommitMojoTest {
 
@@ -17,7 +21,7 @@ public class NonSnapshotCommitMojoTest {
   private ModuleTraverser mockModuleTraverser = mock(ModuleTraverser.class);
   private DependencyTreeProcessor mockDependencyTreeProcessor = mock(DependencyTreeProcessor.class);
   private MavenPomHandler mockMavenPomHandler = mock(MavenPomHandler.class);
-  private ScmHandler mockScmHandler = mock(ScmHandler.class);
+  private ExtendedScmHandler mockScmHandler = mock(ExtendedScmHandler.class);
   private UpstreamDependencyHandler mockUpstreamDependencyHandler = mock(UpstreamDependencyHandler.class);
 
   @Before
@@ -79,6 +83,68 @@ public class NonSnapshotCommitMojoTest {
     assertFalse(pomFilesToCommit.exists());
   }
 
+  @Test
+  public void testCommitRetriedAfterConflict() throws Exception {
+    File pomFilesToCommit = new File("target/nonSnapshotDirtyModules.txt");
+    File pom1 = new File("target/test1/pom.xml").getAbsoluteFile();
+
+    PrintWriter writer = new PrintWriter(pomFilesToCommit);
+    writer.write("test1\t1.0.13-1234" + System.getProperty("line.separator"));
+    writer.close();
+
+    MavenModule module1 = new MavenModule(pom1, "nonblocking.at", "test1", "1.0.13-1230");
+    when(this.mockMavenPomHandler.readArtifact(pom1)).thenReturn(module1);
+    doThrow(new NonSnapshotCommitConflictException("test")).doNothing()
+        .when(this.mockScmHandler).commitFiles(Arrays.asList(pom1), "Nonsnapshot Plugin: Version of 1 modules updated");
+
+    this.nonSnapshotMojo.setCommitRetryBackoff(1);
+    this.nonSnapshotMojo.execute();
+
+    InOrder inOrder = inOrder(this.mockScmHandler, this.mockMavenPomHandler);
+    inOrder.verify(this.mockScmHandler).commitFiles(Arrays.asList(pom1), "Nonsnapshot Plugin: Version of 1 modules updated");
+    inOrder.verify(this.mockScmHandler).updateToRemote(Arrays.asList(pom1));
+    inOrder.verify(this.mockMavenPomHandler).updateArtifact(module1);
+    inOrder.verify(this.mockScmHandler).commitFiles(Arrays.asList(pom1), "Nonsnapshot Plugin: Version of 1 modules updated");
+
+    assertTrue(module1.isDirty());
+    assertEquals("1.0.13-1234", module1.getNewVersion());
+  }
+
+  @Test(expected = NonSnapshotCommitConflictException.class)
+  public void testCommitNotRetriedWithoutRecordedEdits() throws Exception {
+    File pomFilesToCommit = new File("target/nonSnapshotDirtyModules.txt");
+    File pom1 = new File("target/test1/pom.xml").getAbsoluteFile();
+
+    PrintWriter writer = new PrintWriter(pomFilesToCommit);
+    writer.write("test1" + System.getProperty("line.separator"));
+    writer.close();
+
+    doThrow(new NonSnapshotCommitConflictException("test"))
+        .when(this.mockScmHandler).commitFiles(Arrays.asList(pom1), "Nonsnapshot Plugin: Version of 1 modules updated");
+
+    this.nonSnapshotMojo.setCommitRetryBackoff(1);
+    this.nonSnapshotMojo.execute();
+  }
+
+  @Test(expected = NonSnapshotCommitConflictException.class)
+  public void testCommitNotRetriedWithoutExtendedScmHandler() throws Exception {
+    File pomFilesToCommit = new File("target/nonSnapshotDirtyModules.txt");
+    File pom1 = new File("target/test1/pom.xml").getAbsoluteFile();
+
+    PrintWriter writer = new PrintWriter(pomFilesToCommit);
+    writer.write("test1\t1.0.13-1234" + System.getProperty("line.separator"));
+    writer.close();
+
+    ScmHandler mockPlainScmHandler = mock(ScmHandler.class);
+    when(this.mockMavenPomHandler.readArtifact(pom1)).thenReturn(new MavenModule(pom1, "nonblocking.at", "test1", "1.0.13-1230"));
+    doThrow(new NonSnapshotCommitConflictException("test"))
+        .when(mockPlainScmHandler).commitFiles(Arrays.asList(pom1), "Nonsnapshot Plugin: Version of 1 modules updated");
+
+    this.nonSnapshotMojo.setScmHandler(mockPlainScmHandler);
+    this.nonSnapshotMojo.setCommitRetryBackoff(1);
+    this.nonSnapshotMojo.execute();
+  }
+
   @Test
   public void testDontFailOnCommitTrue() throws Exception {
     File pomFilesToCommit = new File("target/nonSnapshotDirtyModules.txt");
@@ -21,6 +21,7 @@ import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 
 public class NonSnapshotUpdateVersionsMojoTest {
@@ -29,11 +30,29 @@ public class NonSnapshotUpdateVersionsMojoTest {
   private ModuleTraverser mockModuleTraverser = mock(ModuleTraverser.class);
   private DependencyTreeProcessor mockDependencyTreeProcessor = mock(DependencyTreeProcessor.class);
   private MavenPomHandler mockMavenPomHandler = mock(MavenPomHandler.class);
-  private ScmHandler mockScmHandler = mock(ScmHandler.class);
+  private AbstractScmHandler mockScmHandler = mock(AbstractScmHandler.class);
   private UpstreamDependencyHandler mockUpstreamDependencyHandler = mock(UpstreamDependencyHandler.class);
 
   @Before
   public void setupMojo() {
+    when(this.mockScmHandler.checkChanges(anyListOf(ScmModuleQuery.class))).thenCallRealMethod();
+    when(this.mockMavenPomHandler.readArtifacts(anyListOf(Model.class))).thenAnswer(new Answer<List<MavenModule>>() {
+      @Override
+      public List<MavenModule> answer(InvocationOnMock invocation) throws Throwable {
+        List<MavenModule> mavenModules = new ArrayList<>();
+        for (Model model : (List<Model>) invocation.getArguments()[0]) {
+          mavenModules.add(mockMavenPomHandler.readArtifact(model));
+        }
+        return mavenModules;
+      }
+    });
+    when(this.mockMavenPomHandler.updateArtifacts(anyListOf(MavenModule.class), anyInt())).thenAnswer(new Answer<List<MavenModule>>() {
+      @Override
+      public List<MavenModule> answer(InvocationOnMock invocation) throws Throwable {
+        return (List<MavenModule>) invocation.getArguments()[0];
+      }
+    });
+
     MavenProject mavenProject = new MavenProject();
     mavenProject.setFile(new File("target/pom.xml"));
     this.nonSnapshotMojo.setMavenProject(mavenProject);
@@ -115,11 +134,7 @@ public class NonSnapshotUpdateVersionsMojoTest {
 
     inOrder.verify(this.mockScmHandler, times(1)).checkChangesSinceRevision(pom4.getParentFile(), 1234, 1356);
 
-    inOrder.verify(this.mockMavenPomHandler, times(1)).updateArtifact(wsArtifact1);
-    verify(this.mockMavenPomHandler, never()).updateArtifact(wsArtifact2);
-    verify(this.mockMavenPomHandler, times(1)).updateArtifact(wsArtifact3);
-    inOrder.verify(this.mockMavenPomHandler, times(1)).updateArtifact(wsArtifact4);
-    inOrder.verify(this.mockMavenPomHandler, times(1)).updateArtifact(wsArtifact5);
+    inOrder.verify(this.mockMavenPomHandler, times(1)).updateArtifacts(Arrays.asList(wsArtifact1, wsArtifact3, wsArtifact4, wsArtifact5), 1);
 
     inOrder.verify(this.mockScmHandler).commitFiles(Arrays.asList(pom1, pom3, pom4, pom5), ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 4 artifacts updated");
   }
@@ -199,15 +214,150 @@ public class NonSnapshotUpdateVersionsMojoTest {
     when(this.mockScmHandler.checkChangesSinceRevision(pom2.getParentFile(), 1234, 10000)).thenReturn(false);
     when(this.mockScmHandler.checkChangesSinceRevision(pom4.getParentFile(), 1234, 10000)).thenReturn(true);
 
-    inOrder.verify(this.mockMavenPomHandler, times(1)).updateArtifact(wsArtifact1);
-    verify(this.mockMavenPomHandler, never()).updateArtifact(wsArtifact2);
-    verify(this.mockMavenPomHandler, times(1)).updateArtifact(wsArtifact3);
-    inOrder.verify(this.mockMavenPomHandler, times(1)).updateArtifact(wsArtifact4);
-    inOrder.verify(this.mockMavenPomHandler, times(1)).updateArtifact(wsArtifact5);
+    inOrder.verify(this.mockMavenPomHandler, times(1)).updateArtifacts(Arrays.asList(wsArtifact1, wsArtifact3, wsArtifact4, wsArtifact5), 1);
 
     inOrder.verify(this.mockScmHandler).commitFiles(Arrays.asList(pom1, pom3, pom4, pom5), ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 4 artifacts updated");
   }
 
+  @Test
+  public void testScmHistoryQueriedOncePerModule() throws Exception {
+    String pattern = "yyyyMMddHHmmss";
+    Date lastCommitDate = new Date();
+    Date qualifierDate = new Date(lastCommitDate.getTime() - 3600000);
+
+    Model model1 = new Model();
+    File pom1 = new File("test1/pom.xm");
+    MavenModule wsArtifact1 = new MavenModule(pom1, "nonblocking.at", "test1", "1.1.0-" + new SimpleDateFormat(pattern).format(qualifierDate));
+
+    when(this.mockModuleTraverser.findAllModules(any(MavenProject.class), anyListOf(Profile.class))).thenReturn(Arrays.asList(model1));
+    when(this.mockMavenPomHandler.readArtifact(model1)).thenReturn(wsArtifact1);
+    when(this.mockScmHandler.isWorkingCopy(any(File.class))).thenReturn(true);
+    when(this.mockScmHandler.getLastCommitDate(pom1.getParentFile())).thenReturn(lastCommitDate);
+    when(this.mockScmHandler.checkChangesSinceDate(eq(pom1.getParentFile()), any(Date.class), eq(lastCommitDate))).thenReturn(true);
+
+    this.nonSnapshotMojo.setUseSvnRevisionQualifier(false);
+    this.nonSnapshotMojo.setTimestampQualifierPattern(pattern);
+    this.nonSnapshotMojo.execute();
+
+    assertEquals("1.0.13-" + new SimpleDateFormat(pattern).format(lastCommitDate), wsArtifact1.getNewVersion());
+
+    verify(this.mockScmHandler, times(1)).getLastCommitDate(pom1.getParentFile());
+    verify(this.mockScmHandler, times(1)).checkChangesSinceDate(eq(pom1.getParentFile()), any(Date.class), eq(lastCommitDate));
+    verify(this.mockScmHandler, times(1)).isWorkingCopy(pom1.getParentFile());
+  }
+
+  @Test
+  public void testContentFingerprint() throws Exception {
+    String pattern = "yyyyMMddHHmmss";
+    Date lastCommitDate = new Date();
+    String qualifier = new SimpleDateFormat(pattern).format(new Date(lastCommitDate.getTime() - 3600000));
+
+    File baseDir = new File("target/fingerprint-test");
+    FileUtils.deleteDirectory(baseDir);
+    File pom1 = new File(baseDir, "module1/pom.xml");
+    File pom2 = new File(baseDir, "module2/pom.xml");
+    pom1.getParentFile().mkdirs();
+    pom2.getParentFile().mkdirs();
+    ContentFingerprint.write(pom1.getParentFile(), "fingerprint1");
+    ContentFingerprint.write(pom2.getParentFile(), "outdated");
+
+    Model model1 = new Model();
+    Model model2 = new Model();
+    MavenModule wsArtifact1 = new MavenModule(pom1, "nonblocking.at", "test1", "1.1.0-" + qualifier);
+    MavenModule wsArtifact2 = new MavenModule(pom2, "nonblocking.at", "test2", "1.1.0-" + qualifier);
+
+    when(this.mockModuleTraverser.findAllModules(any(MavenProject.class), anyListOf(Profile.class))).thenReturn(Arrays.asList(model1, model2));
+    when(this.mockMavenPomHandler.readArtifact(model1)).thenReturn(wsArtifact1);
+    when(this.mockMavenPomHandler.readArtifact(model2)).thenReturn(wsArtifact2);
+    Map<File, String> fingerprints = new HashMap<>();
+    fingerprints.put(pom1.getParentFile(), "fingerprint1");
+    fingerprints.put(pom2.getParentFile(), "fingerprint2");
+    when(this.mockScmHandler.getContentFingerprints(anyMap(), eq(new HashSet<>(Arrays.asList("nonblocking.at:test1", "nonblocking.at:test2")))))
+        .thenReturn(fingerprints);
+    when(this.mockScmHandler.isWorkingCopy(any(File.class))).thenReturn(true);
+    when(this.mockScmHandler.getLastCommitDate(pom2.getParentFile())).thenReturn(lastCommitDate);
+
+    this.nonSnapshotMojo.setUseSvnRevisionQualifier(false);
+    this.nonSnapshotMojo.setTimestampQualifierPattern(pattern);
+    this.nonSnapshotMojo.setUseContentFingerprint(true);
+    this.nonSnapshotMojo.execute();
+
+    assertFalse(wsArtifact1.isDirty());
+    assertTrue(wsArtifact2.isDirty());
+    assertEquals("1.0.13-" + new SimpleDateFormat(pattern).format(lastCommitDate), wsArtifact2.getNewVersion());
+    assertEquals("fingerprint1", ContentFingerprint.read(pom1.getParentFile()));
+    assertEquals("fingerprint2", ContentFingerprint.read(pom2.getParentFile()));
+
+    verify(this.mockScmHandler, never()).checkChanges(anyListOf(ScmModuleQuery.class));
+    verify(this.mockScmHandler).commitFiles(Arrays.asList(pom2, ContentFingerprint.getFile(pom2.getParentFile())),
+        ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated");
+  }
+
+  @Test
+  public void testContentFingerprintWrittenForUnchangedPom() throws Exception {
+    String pattern = "yyyyMMddHHmmss";
+    Date lastCommitDate = new Date();
+
+    File baseDir = new File("target/fingerprint-test");
+    FileUtils.deleteDirectory(baseDir);
+    File pom1 = new File(baseDir, "module1/pom.xml");
+    pom1.getParentFile().mkdirs();
+
+    // No fingerprint file yet and the new version equals the current one
+    Model model1 = new Model();
+    MavenModule wsArtifact1 = new MavenModule(pom1, "nonblocking.at", "test1", "1.0.13-" + new SimpleDateFormat(pattern).format(lastCommitDate));
+
+    when(this.mockModuleTraverser.findAllModules(any(MavenProject.class), anyListOf(Profile.class))).thenReturn(Arrays.asList(model1));
+    when(this.mockMavenPomHandler.readArtifact(model1)).thenReturn(wsArtifact1);
+    when(this.mockMavenPomHandler.updateArtifacts(Arrays.asList(wsArtifact1), 1)).thenReturn(Collections.<MavenModule>emptyList());
+    when(this.mockScmHandler.getContentFingerprints(anyMap(), eq(new HashSet<>(Arrays.asList("nonblocking.at:test1")))))
+        .thenReturn(Collections.singletonMap(pom1.getParentFile(), "fingerprint1"));
+    when(this.mockScmHandler.isWorkingCopy(any(File.class))).thenReturn(true);
+    when(this.mockScmHandler.getLastCommitDate(pom1.getParentFile())).thenReturn(lastCommitDate);
+
+    this.nonSnapshotMojo.setUseSvnRevisionQualifier(false);
+    this.nonSnapshotMojo.setTimestampQualifierPattern(pattern);
+    this.nonSnapshotMojo.setUseContentFingerprint(true);
+    this.nonSnapshotMojo.execute();
+
+    assertTrue(wsArtifact1.isDirty());
+    assertEquals(wsArtifact1.getVersion(), wsArtifact1.getNewVersion());
+    assertEquals("fingerprint1", ContentFingerprint.read(pom1.getParentFile()));
+
+    verify(this.mockScmHandler).commitFiles(Arrays.asList(pom1, ContentFingerprint.getFile(pom1.getParentFile())),
+        ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Content fingerprint of 1 artifacts updated");
+  }
+
+  @Test
+  public void testScmHandlerWithoutExtensions() throws Exception {
+    String pattern = "yyyyMMddHHmmss";
+    Date lastCommitDate = new Date();
+    Date qualifierDate = new Date(lastCommitDate.getTime() - 3600000);
+
+    Model model1 = new Model();
+    File pom1 = new File("test1/pom.xm");
+    MavenModule wsArtifact1 = new MavenModule(pom1, "nonblocking.at", "test1", "1.1.0-" + new SimpleDateFormat(pattern).format(qualifierDate));
+
+    // A custom handler which implements only the per module methods
+    ScmHandler mockPlainScmHandler = mock(ScmHandler.class);
+    when(this.mockModuleTraverser.findAllModules(any(MavenProject.class), anyListOf(Profile.class))).thenReturn(Arrays.asList(model1));
+    when(this.mockMavenPomHandler.readArtifact(model1)).thenReturn(wsArtifact1);
+    when(mockPlainScmHandler.isWorkingCopy(any(File.class))).thenReturn(true);
+    when(mockPlainScmHandler.getLastCommitDate(pom1.getParentFile())).thenReturn(lastCommitDate);
+    when(mockPlainScmHandler.checkChangesSinceDate(eq(pom1.getParentFile()), any(Date.class), eq(lastCommitDate))).thenReturn(true);
+
+    this.nonSnapshotMojo.setScmHandler(mockPlainScmHandler);
+    this.nonSnapshotMojo.setUseSvnRevisionQualifier(false);
+    this.nonSnapshotMojo.setTimestampQualifierPattern(pattern);
+    this.nonSnapshotMojo.setUseContentFingerprint(true);
+    this.nonSnapshotMojo.execute();
+
+    assertEquals("1.0.13-" + new SimpleDateFormat(pattern).format(lastCommitDate), wsArtifact1.getNewVersion());
+
+    verify(mockPlainScmHandler, times(1)).checkChangesSinceDate(eq(pom1.getParentFile()), any(Date.class), eq(lastCommitDate));
+    verify(mockPlainScmHandler).commitFiles(Arrays.asList(pom1), ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated");
+  }
+
   @Test
   public void testIncrementalBuildScript() throws Exception {
 
@@ -491,10 +641,68 @@ public class NonSnapshotUpdateVersionsMojoTest {
 
     verify(this.mockMavenPomHandler).readArtifact(model1);
     verify(this.mockDependencyTreeProcessor).buildDependencyTree(artifactList);
-    verify(this.mockMavenPomHandler, times(0)).updateArtifact(wsArtifact1);
+    verify(this.mockMavenPomHandler, times(0)).updateArtifacts(anyListOf(MavenModule.class), anyInt());
     verify(this.mockScmHandler, times(0)).commitFiles(anyListOf(File.class), anyString());
   }
 
+  @Test
+  public void testUnchangedPomNotCommitted() throws Exception {
+    String pattern = "yyyyMMddHHmmss";
+    Date lastCommitDate = new Date();
+
+    Model model1 = new Model();
+    Model model2 = new Model();
+    File pom1 = new File("target/test1/pom.xml");
+    File pom2 = new File("target/test2/pom.xml");
+    MavenModule wsArtifact1 = new MavenModule(pom1, "nonblocking.at", "test1", "1.0.0-1222");
+    MavenModule wsArtifact2 = new MavenModule(pom2, "nonblocking.at", "test2", "1.0.0-1222");
+
+    when(this.mockModuleTraverser.findAllModules(any(MavenProject.class), anyListOf(Profile.class))).thenReturn(Arrays.asList(model1, model2));
+    when(this.mockMavenPomHandler.readArtifact(model1)).thenReturn(wsArtifact1);
+    when(this.mockMavenPomHandler.readArtifact(model2)).thenReturn(wsArtifact2);
+    when(this.mockScmHandler.isWorkingCopy(any(File.class))).thenReturn(true);
+    when(this.mockScmHandler.getLastCommitDate(any(File.class))).thenReturn(lastCommitDate);
+    when(this.mockScmHandler.checkChangesSinceDate(any(File.class), any(Date.class), eq(lastCommitDate))).thenReturn(true);
+    when(this.mockMavenPomHandler.updateArtifacts(Arrays.asList(wsArtifact1, wsArtifact2), 1)).thenReturn(Arrays.asList(wsArtifact1));
+
+    this.nonSnapshotMojo.setUseSvnRevisionQualifier(false);
+    this.nonSnapshotMojo.setTimestampQualifierPattern(pattern);
+    this.nonSnapshotMojo.execute();
+
+    assertTrue(wsArtifact1.isDirty());
+    assertTrue(wsArtifact2.isDirty());
+
+    verify(this.mockScmHandler).commitFiles(Arrays.asList(pom1), ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated");
+
+    BufferedReader reader = new BufferedReader(new FileReader(new File("target/nonSnapshotDirtyModules.txt")));
+    assertEquals("test1\t1.0.13-" + new SimpleDateFormat(pattern).format(lastCommitDate), reader.readLine());
+    assertNull(reader.readLine());
+    reader.close();
+  }
+
+  @Test
+  public void testDontFailOnCommit() throws Exception {
+    Date lastCommitDate = new Date();
+
+    Model model1 = new Model();
+    File pom1 = new File("target/test1/pom.xml");
+    MavenModule wsArtifact1 = new MavenModule(pom1, "nonblocking.at", "test1", "1.0.0-1222");
+
+    when(this.mockModuleTraverser.findAllModules(any(MavenProject.class), anyListOf(Profile.class))).thenReturn(Arrays.asList(model1));
+    when(this.mockMavenPomHandler.readArtifact(model1)).thenReturn(wsArtifact1);
+    when(this.mockScmHandler.isWorkingCopy(any(File.class))).thenReturn(true);
+    when(this.mockScmHandler.getLastCommitDate(any(File.class))).thenReturn(lastCommitDate);
+    when(this.mockScmHandler.checkChangesSinceDate(any(File.class), any(Date.class), eq(lastCommitDate))).thenReturn(true);
+    doThrow(new NonSnapshotPluginException("Push failed")).when(this.mockScmHandler).commitFiles(anyListOf(File.class), anyString());
+
+    this.nonSnapshotMojo.setUseSvnRevisionQualifier(false);
+    this.nonSnapshotMojo.setDontFailOnCommit(true);
+    this.nonSnapshotMojo.execute();
+
+    verify(this.mockScmHandler).commitFiles(Arrays.asList(pom1), ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated");
+    verify(this.mockScmHandler, times(0)).updateToRemote(anyListOf(File.class));
+  }
+
   @Test
   public void testUpdateDeferCommit() throws Exception {
     Model model1 = new Model();
@@ -0,0 +1,116 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import at.nonblocking.maven.nonsnapshot.impl.MavenPomHandlerDefaultImpl;
+import at.nonblocking.maven.nonsnapshot.impl.ModuleTraverserDefaultImpl;
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
+
+public class PomCacheTest {
+
+  private File baseDir = new File("target/pom-cache-test");
+  private File pomFile = new File(baseDir, "pom.xml");
+  private File cacheFile = new File(baseDir, "target/nonsnapshot-pom-cache.bin");
+
+  @Before
+  public void setUp() throws Exception {
+    FileUtils.deleteDirectory(this.baseDir);
+    this.baseDir.mkdirs();
+    Files.copy(new File("src/test/resources/test-pom.xml").toPath(), this.pomFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @Test
+  public void testCacheHit() {
+    CountingModuleTraverser moduleTraverser = createModuleTraverser();
+
+    List<Model> models1 = moduleTraverser.findAllModules(createMavenProject(), null);
+    assertEquals(1, moduleTraverser.parsed);
+    assertTrue(this.cacheFile.exists());
+
+    moduleTraverser = createModuleTraverser();
+    List<Model> models2 = moduleTraverser.findAllModules(createMavenProject(), null);
+    assertEquals(0, moduleTraverser.parsed);
+
+    assertEquals(models1.get(0).getPomFile(), models2.get(0).getPomFile());
+    assertEquals(describe(models1.get(0)), describe(models2.get(0)));
+  }
+
+  @Test
+  public void testModificationTimeChangedButSameContent() {
+    createModuleTraverser().findAllModules(createMavenProject(), null);
+
+    this.pomFile.setLastModified(this.pomFile.lastModified() - 60000);
+
+    CountingModuleTraverser moduleTraverser = createModuleTraverser();
+    moduleTraverser.findAllModules(createMavenProject(), null);
+    assertEquals(0, moduleTraverser.parsed);
+  }
+
+  @Test
+  public void testContentChanged() throws Exception {
+    createModuleTraverser().findAllModules(createMavenProject(), null);
+
+    long lastModified = this.pomFile.lastModified();
+    String pom = FileUtils.fileRead(this.pomFile, "UTF-8");
+    FileUtils.fileWrite(this.pomFile.getAbsolutePath(), "UTF-8", pom.replaceFirst("<version>[^<]*</version>", "<version>9.9.9</version>"));
+    this.pomFile.setLastModified(lastModified);
+
+    CountingModuleTraverser moduleTraverser = createModuleTraverser();
+    List<Model> models = moduleTraverser.findAllModules(createMavenProject(), null);
+    assertEquals(1, moduleTraverser.parsed);
+    assertEquals("9.9.9", new MavenPomHandlerDefaultImpl().readArtifact(models.get(0)).getVersion());
+  }
+
+  private CountingModuleTraverser createModuleTraverser() {
+    CountingModuleTraverser moduleTraverser = new CountingModuleTraverser();
+    Properties properties = new Properties();
+    properties.setProperty("pomCacheFile", this.cacheFile.getAbsolutePath());
+    moduleTraverser.init(properties);
+    return moduleTraverser;
+  }
+
+  private MavenProject createMavenProject() {
+    MavenProject mavenProject = new MavenProject();
+    mavenProject.setFile(this.pomFile);
+    return mavenProject;
+  }
+
+  private String describe(Model model) {
+    MavenModule module = new MavenPomHandlerDefaultImpl().readArtifact(model);
+    StringBuilder sb = new StringBuilder();
+    sb.append(module.getGroupId()).append(':').append(module.getArtifactId()).append(':').append(module.getVersion())
+        .append('@').append(module.getVersionLocation()).append('\n');
+    if (module.getParent() != null) {
+      sb.append("parent ").append(module.getParent().getArtifactId()).append('@').append(module.getParentVersionLocation()).append('\n');
+    }
+    for (MavenModuleDependency dependency : module.getDependencies()) {
+      sb.append("dependency ").append(dependency.getArtifact().getArtifactId()).append(':').append(dependency.getArtifact().getVersion())
+          .append('@').append(dependency.getVersionLocation()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static class CountingModuleTraverser extends ModuleTraverserDefaultImpl {
+    private int parsed;
+
+    @Override
+    protected Model readModel(File baseDir) {
+      this.parsed++;
+      return super.readModel(baseDir);
+    }
+  }
+
+}
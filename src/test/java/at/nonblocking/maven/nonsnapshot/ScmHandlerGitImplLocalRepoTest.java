@@ -0,0 +1,395 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotCommitConflictException;
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.impl.GitHistoryIndex;
+import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerGitImpl;
+
+public class ScmHandlerGitImplLocalRepoTest {
+
+  private File repoDir = new File("target/git-local-repo-test");
+  private File indexFile = new File(repoDir, ".git/nonsnapshot/history-index");
+  private Git git;
+
+  @Before
+  public void setupRepo() throws Exception {
+    FileUtils.deleteDirectory(this.repoDir);
+    this.git = Git.init().setDirectory(this.repoDir).call();
+  }
+
+  @Test
+  public void testHistoryIndexIsUpdatedIncrementally() throws Exception {
+    commit(1000, "Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    RevCommit commit2 = commit(2000, "Change module1", "module1/src/Foo.java");
+
+    Map<File, ScmModuleStatus> result = createScmHandler().checkChanges(queries(1500));
+    assertTrue(result.get(module(1)).isChanged());
+    assertFalse(result.get(module(2)).isChanged());
+
+    GitHistoryIndex index = GitHistoryIndex.load(this.indexFile);
+    assertEquals(commit2.getId(), index.getHead());
+    assertEquals(commit2.getId(), index.getHistories().get("module1").getLastNonPluginCommitId());
+
+    RevCommit commit3 = commit(3000, "Change module2", "module2/src/Foo.java");
+    commit(4000, ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module2/pom.xml");
+
+    result = createScmHandler().checkChanges(queries(2500));
+    assertFalse(result.get(module(1)).isChanged());
+    assertTrue(result.get(module(2)).isChanged());
+    assertEquals(new Date(4000 * 1000L), result.get(module(2)).getLastCommitDate());
+
+    index = GitHistoryIndex.load(this.indexFile);
+    assertEquals(commit2.getId(), index.getHistories().get("module1").getLastNonPluginCommitId());
+    assertEquals(commit3.getId(), index.getHistories().get("module2").getLastNonPluginCommitId());
+  }
+
+  @Test
+  public void testHistoryIndexIsRebuiltAfterRewrite() throws Exception {
+    RevCommit commit1 = commit(1000, "Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    commit(2000, "Change module1", "module1/src/Foo.java");
+
+    Map<File, ScmModuleStatus> result = createScmHandler().checkChanges(queries(1500));
+    assertTrue(result.get(module(1)).isChanged());
+
+    this.git.reset().setMode(ResetCommand.ResetType.HARD).setRef(commit1.getName()).call();
+    RevCommit commit3 = commit(3000, "Change module2", "module2/src/Foo.java");
+
+    result = createScmHandler().checkChanges(queries(1500));
+    assertFalse(result.get(module(1)).isChanged());
+    assertTrue(result.get(module(2)).isChanged());
+
+    GitHistoryIndex index = GitHistoryIndex.load(this.indexFile);
+    assertEquals(commit3.getId(), index.getHead());
+    assertEquals(commit1.getId(), index.getHistories().get("module1").getLastCommitId());
+  }
+
+  @Test
+  public void testNestedModulesExcluded() throws Exception {
+    commit(1000, "Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    commit(2000, "Change module1", "module1/src/Foo.java");
+
+    ScmModuleQuery rootQuery = new ScmModuleQuery(this.repoDir, new Date(1500 * 1000L));
+    rootQuery.setExcludedDirectories(Arrays.asList(module(1), module(2)));
+
+    Map<File, ScmModuleStatus> result = createScmHandler().checkChanges(Arrays.asList(rootQuery));
+    assertFalse(result.get(this.repoDir).isChanged());
+    assertEquals(new Date(1000 * 1000L), result.get(this.repoDir).getLastCommitDate());
+  }
+
+  @Test
+  public void testCommitFiles() throws Exception {
+    RevCommit commit1 = commit(1000, "Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+
+    write("module1/pom.xml", "Updated module1");
+    write("module2/pom.xml", "Updated module2");
+
+    String commitMessage = ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 2 artifacts updated";
+    createScmHandler().commitFiles(Arrays.asList(new File(module(1), "pom.xml"), new File(module(2), "pom.xml")), commitMessage);
+
+    RevCommit head = this.git.log().setMaxCount(1).call().iterator().next();
+    assertEquals(commitMessage, head.getFullMessage());
+    assertEquals(commit1.getId(), head.getParent(0).getId());
+    assertEquals("Updated module1", readCommitted(head, "module1/pom.xml"));
+    assertEquals("Updated module2", readCommitted(head, "module2/pom.xml"));
+    assertEquals("Initial", readCommitted(head, "pom.xml"));
+
+    assertTrue(this.git.status().call().isClean());
+  }
+
+  @Test
+  public void testCommitRejectedByConcurrentPush() throws Exception {
+    Git other = setupRemoteWithConcurrentChange();
+
+    ExtendedScmHandler scmHandler = createScmHandler(true);
+    List<File> files = Arrays.asList(new File(module(1), "pom.xml"));
+    write("module1/pom.xml", "Updated module1");
+
+    try {
+      scmHandler.commitFiles(files, "Update module1");
+      fail("NonSnapshotCommitConflictException expected");
+    } catch (NonSnapshotCommitConflictException e) {
+      // Expected
+    }
+
+    scmHandler.updateToRemote(files);
+    assertEquals("Concurrent change", FileUtils.fileRead(new File(module(2), "pom.xml")));
+    assertEquals("Initial", FileUtils.fileRead(new File(module(1), "pom.xml")));
+
+    write("module1/pom.xml", "Updated module1");
+    scmHandler.commitFiles(files, "Update module1");
+
+    other.pull().call();
+    assertEquals("Updated module1", FileUtils.fileRead(new File(otherDir(), "module1/pom.xml")));
+    assertEquals("Concurrent change", FileUtils.fileRead(new File(otherDir(), "module2/pom.xml")));
+  }
+
+  @Test
+  public void testUpdateToRemoteKeepsLocalCommits() throws Exception {
+    Git other = setupRemoteWithConcurrentChange();
+    RevCommit localCommit = commit(2000, "Local change", "module1/src/Foo.java");
+
+    ExtendedScmHandler scmHandler = createScmHandler(true);
+    List<File> files = Arrays.asList(new File(module(1), "pom.xml"));
+    write("module1/pom.xml", "Updated module1");
+
+    try {
+      scmHandler.commitFiles(files, "Update module1");
+      fail("NonSnapshotCommitConflictException expected");
+    } catch (NonSnapshotCommitConflictException e) {
+      // Expected
+    }
+
+    // Only the rejected commit is dropped, the unpushed local commit is rebased onto the remote branch
+    scmHandler.updateToRemote(files);
+    assertEquals("Concurrent change", FileUtils.fileRead(new File(module(2), "pom.xml")));
+    assertEquals("Initial", FileUtils.fileRead(new File(module(1), "pom.xml")));
+    assertEquals("Local change", FileUtils.fileRead(new File(module(1), "src/Foo.java")));
+    RevCommit head = this.git.log().setMaxCount(1).call().iterator().next();
+    assertEquals("Local change", head.getFullMessage());
+    assertFalse(localCommit.getId().equals(head.getId()));
+
+    write("module1/pom.xml", "Updated module1");
+    scmHandler.commitFiles(files, "Update module1");
+
+    other.pull().call();
+    assertEquals("Updated module1", FileUtils.fileRead(new File(otherDir(), "module1/pom.xml")));
+    assertEquals("Local change", FileUtils.fileRead(new File(otherDir(), "module1/src/Foo.java")));
+  }
+
+  @Test
+  public void testUpdateToRemoteRefusedWithoutPluginCommit() throws Exception {
+    setupRemoteWithConcurrentChange();
+    commit(2000, "Local change", "module1/src/Foo.java");
+
+    try {
+      createScmHandler(true).updateToRemote(Arrays.asList(new File(module(1), "pom.xml")));
+      fail("NonSnapshotPluginException expected");
+    } catch (NonSnapshotPluginException e) {
+      // Expected
+    }
+
+    assertEquals("Local change", FileUtils.fileRead(new File(module(1), "src/Foo.java")));
+    assertEquals("Initial", FileUtils.fileRead(new File(module(2), "pom.xml")));
+  }
+
+  @Test
+  public void testContentFingerprint() throws Exception {
+    commit(1000, "Initial", "pom.xml", "module1/src/Foo.java", "module1/sub/pom.xml", "module2/pom.xml");
+    write("module1/pom.xml", pom("1.0.0-1", "1.0.0-1", "4.11"));
+    commit(1000, "Initial module1");
+
+    ExtendedScmHandler scmHandler = createScmHandler();
+
+    Map<File, String> fingerprints = fingerprints(scmHandler);
+    String fingerprint1 = fingerprints.get(module(1));
+    String fingerprint2 = fingerprints.get(module(2));
+    String rootFingerprint = fingerprints.get(this.repoDir);
+    assertNotNull(fingerprint1);
+    assertFalse(fingerprint1.equals(fingerprint2));
+
+    // Nested modules, versions rewritten by the plugin and the fingerprint file don't count
+    commit(2000, "Change sub module", "module1/sub/src/Bar.java");
+    write("module1/pom.xml", pom("1.0.0-123", "1.0.0-123", "4.11"));
+    write("module1/" + ContentFingerprint.FINGERPRINT_FILE, fingerprint1);
+    commit(3000, ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated");
+    fingerprints = fingerprints(scmHandler);
+    assertEquals(fingerprint1, fingerprints.get(module(1)));
+    assertEquals(rootFingerprint, fingerprints.get(this.repoDir));
+
+    // Uncommitted changes don't count
+    write("module1/src/Foo.java", "Local change");
+    assertEquals(fingerprint1, fingerprints(scmHandler).get(module(1)));
+
+    commit(4000, "Change module1", "module1/src/Foo.java");
+    fingerprints = fingerprints(scmHandler);
+    assertFalse(fingerprint1.equals(fingerprints.get(module(1))));
+    assertEquals(fingerprint2, fingerprints.get(module(2)));
+    assertFalse(fingerprints.containsKey(module(3)));
+  }
+
+  @Test
+  public void testContentFingerprintThirdPartyVersionChanged() throws Exception {
+    commit(1000, "Initial", "pom.xml", "module2/pom.xml");
+    write("module1/pom.xml", pom("1.0.0-1", "1.0.0-1", "4.11"));
+    commit(1000, "Initial module1");
+
+    ExtendedScmHandler scmHandler = createScmHandler();
+    String fingerprint1 = fingerprints(scmHandler).get(module(1));
+
+    write("module1/pom.xml", pom("1.0.0-1", "1.0.0-1", "4.12"));
+    commit(2000, "Update junit");
+
+    assertFalse(fingerprint1.equals(fingerprints(scmHandler).get(module(1))));
+  }
+
+  @Ignore("Benchmark")
+  @Test
+  public void benchmarkCommitFiles() throws Exception {
+    int count = 1500;
+    String[] paths = new String[count];
+    for (int i = 0; i < count; i++) {
+      paths[i] = "module" + i + "/pom.xml";
+    }
+    commit(1000, "Initial", paths);
+
+    List<File> files = new ArrayList<>();
+    for (String path : paths) {
+      write(path, "Per file add");
+      files.add(new File(this.repoDir, path));
+    }
+    long start = System.currentTimeMillis();
+    for (String path : paths) {
+      this.git.add().addFilepattern(path).call();
+    }
+    this.git.commit().setMessage("Per file add").call();
+    long perFileAddTime = System.currentTimeMillis() - start;
+
+    for (String path : paths) {
+      write(path, "Single index edit");
+    }
+    start = System.currentTimeMillis();
+    createScmHandler().commitFiles(files, "Single index edit");
+    long singleEditTime = System.currentTimeMillis() - start;
+
+    assertTrue(this.git.status().call().isClean());
+    assertTrue("Commit of " + count + " POM files: per file add: " + perFileAddTime + "ms, single index edit: " + singleEditTime + "ms",
+        singleEditTime < perFileAddTime);
+  }
+
+  /**
+   * Create a bare remote for the test repository and push a concurrent change of module2 from another clone.
+   */
+  private Git setupRemoteWithConcurrentChange() throws Exception {
+    File remoteDir = new File("target/git-local-repo-test-remote");
+    FileUtils.deleteDirectory(remoteDir);
+    FileUtils.deleteDirectory(otherDir());
+
+    commit(1000, "Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    Git.init().setBare(true).setDirectory(remoteDir).call();
+    StoredConfig config = this.git.getRepository().getConfig();
+    config.setString("remote", "origin", "url", remoteDir.getAbsoluteFile().toURI().toString());
+    config.setString("remote", "origin", "fetch", "+refs/heads/*:refs/remotes/origin/*");
+    config.setString("branch", "master", "remote", "origin");
+    config.setString("branch", "master", "merge", "refs/heads/master");
+    config.save();
+    this.git.push().call();
+
+    Git other = Git.cloneRepository().setURI(remoteDir.getAbsoluteFile().toURI().toString()).setDirectory(otherDir()).call();
+    FileUtils.fileWrite(new File(otherDir(), "module2/pom.xml").getAbsolutePath(), "Concurrent change");
+    other.add().addFilepattern("module2/pom.xml").call();
+    other.commit().setMessage("Concurrent change").call();
+    other.push().call();
+    return other;
+  }
+
+  private File otherDir() {
+    return new File("target/git-local-repo-test-other");
+  }
+
+  private ExtendedScmHandler createScmHandler() {
+    return createScmHandler(false);
+  }
+
+  private ExtendedScmHandler createScmHandler(boolean doPush) {
+    Properties properties = new Properties();
+    properties.setProperty("gitDoPush", String.valueOf(doPush));
+
+    ExtendedScmHandler scmHandler = new ScmHandlerGitImpl();
+    scmHandler.init(this.repoDir, null, null, properties);
+    return scmHandler;
+  }
+
+  private File module(int number) {
+    return new File(this.repoDir, "module" + number);
+  }
+
+  private List<ScmModuleQuery> queries(int sinceTime) {
+    Date since = new Date(sinceTime * 1000L);
+    return Arrays.asList(new ScmModuleQuery(module(1), since), new ScmModuleQuery(module(2), since));
+  }
+
+  private Map<File, String> fingerprints(ExtendedScmHandler scmHandler) {
+    Map<File, List<File>> moduleDirectories = new LinkedHashMap<>();
+    moduleDirectories.put(this.repoDir, Arrays.asList(module(1), module(2), module(3)));
+    moduleDirectories.put(module(1), Arrays.asList(new File(module(1), "sub")));
+    moduleDirectories.put(module(2), null);
+    moduleDirectories.put(module(3), null);
+    return scmHandler.getContentFingerprints(moduleDirectories,
+        new HashSet<>(Arrays.asList("at.nonblocking:parent", "at.nonblocking:module1", "at.nonblocking:module2")));
+  }
+
+  private static String pom(String version, String module2Version, String junitVersion) {
+    return "<project>\n" +
+        "  <parent>\n" +
+        "    <groupId>at.nonblocking</groupId>\n" +
+        "    <artifactId>parent</artifactId>\n" +
+        "    <version>" + version + "</version>\n" +
+        "  </parent>\n" +
+        "  <artifactId>module1</artifactId>\n" +
+        "  <version>" + version + "</version>\n" +
+        "  <dependencies>\n" +
+        "    <dependency>\n" +
+        "      <groupId>at.nonblocking</groupId>\n" +
+        "      <artifactId>module2</artifactId>\n" +
+        "      <version>" + module2Version + "</version>\n" +
+        "    </dependency>\n" +
+        "    <dependency>\n" +
+        "      <groupId>junit</groupId>\n" +
+        "      <artifactId>junit</artifactId>\n" +
+        "      <version>" + junitVersion + "</version>\n" +
+        "    </dependency>\n" +
+        "  </dependencies>\n" +
+        "</project>\n";
+  }
+
+  private RevCommit commit(int commitTime, String message, String... paths) throws Exception {
+    for (String path : paths) {
+      write(path, message);
+      this.git.add().addFilepattern(path).call();
+    }
+    if (paths.length == 0) {
+      this.git.add().addFilepattern(".").call();
+    }
+
+    PersonIdent ident = new PersonIdent("test", "test@nonblocking.at", new Date(commitTime * 1000L), TimeZone.getTimeZone("UTC"));
+    return this.git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+  }
+
+  private void write(String path, String content) throws Exception {
+    File file = new File(this.repoDir, path);
+    file.getParentFile().mkdirs();
+    PrintWriter writer = new PrintWriter(file);
+    writer.write(content);
+    writer.close();
+  }
+
+  private String readCommitted(RevCommit commit, String path) throws Exception {
+    TreeWalk treeWalk = TreeWalk.forPath(this.git.getRepository(), path, commit.getTree());
+    return new String(this.git.getRepository().open(treeWalk.getObjectId(0)).getBytes(), "UTF-8");
+  }
+}
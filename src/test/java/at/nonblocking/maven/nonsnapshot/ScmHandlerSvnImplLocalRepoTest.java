@@ -0,0 +1,381 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+
+import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerSvnImpl;
+
+public class ScmHandlerSvnImplLocalRepoTest {
+
+  private File testDir = new File("target/svn-local-repo-test");
+  private File workingCopy = new File(testDir, "wc");
+  private SVNClientManager svnClientManager = SVNClientManager.newInstance();
+
+  @Before
+  public void setupRepo() throws Exception {
+    FileUtils.deleteDirectory(this.testDir);
+    SVNURL repoUrl = this.svnClientManager.getAdminClient().doCreateRepository(new File(this.testDir, "repo"), null, true, false);
+    this.svnClientManager.getUpdateClient().doCheckout(repoUrl, this.workingCopy, SVNRevision.HEAD, SVNRevision.HEAD, SVNDepth.INFINITY, false);
+  }
+
+  @Test
+  public void testCheckChanges() throws Exception {
+    long rev1 = commit("Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml", "module3/pom.xml");
+    commit("Change module1", "module1/src/Foo.java");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module2/pom.xml");
+    long rev4 = commit("Change module3", "module3/pom.xml");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    File module1 = new File(this.workingCopy, "module1");
+    File module2 = new File(this.workingCopy, "module2");
+    File module3 = new File(this.workingCopy, "module3");
+
+    ExtendedScmHandler scmHandler = new ScmHandlerSvnImpl();
+    scmHandler.init(this.workingCopy, "foo", "bar", null);
+
+    Map<File, ScmModuleStatus> result = scmHandler.checkChanges(Arrays.asList(
+        new ScmModuleQuery(module1, rev1),
+        new ScmModuleQuery(module2, rev1),
+        new ScmModuleQuery(module3, rev4)));
+
+    assertEquals(3, result.size());
+    assertTrue(result.get(module1).isChanged());
+    assertFalse(result.get(module2).isChanged());
+    assertFalse(result.get(module3).isChanged());
+    assertEquals(Long.valueOf(rev4), result.get(module3).getCurrentRevision());
+  }
+
+  @Test
+  public void testCheckChangesExcludesNestedModules() throws Exception {
+    long rev1 = commit("Initial", "pom.xml", "module1/pom.xml", "module1/sub/pom.xml");
+    commit("Change sub module", "module1/sub/src/Foo.java");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    File module1 = new File(this.workingCopy, "module1");
+    File subModule = new File(module1, "sub");
+
+    ExtendedScmHandler scmHandler = new ScmHandlerSvnImpl();
+    scmHandler.init(this.workingCopy, "foo", "bar", null);
+
+    ScmModuleQuery rootQuery = new ScmModuleQuery(this.workingCopy, rev1);
+    rootQuery.setExcludedDirectories(Arrays.asList(module1));
+    ScmModuleQuery module1Query = new ScmModuleQuery(module1, rev1);
+    module1Query.setExcludedDirectories(Arrays.asList(subModule));
+
+    Map<File, ScmModuleStatus> result = scmHandler.checkChanges(Arrays.asList(
+        rootQuery, module1Query, new ScmModuleQuery(subModule, rev1)));
+
+    assertFalse(result.get(this.workingCopy).isChanged());
+    assertFalse(result.get(module1).isChanged());
+    assertTrue(result.get(subModule).isChanged());
+  }
+
+  @Test
+  public void testCheckChangesDifferentRevisionRanges() throws Exception {
+    long rev1 = commit("Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    commit("Change both modules", "module1/src/Foo.java", "module2/src/Foo.java");
+    long rev3 = commit("Change module1 again", "module1/src/Bar.java");
+    commit("Change root", "src/Foo.java");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    File module1 = new File(this.workingCopy, "module1");
+    File module2 = new File(this.workingCopy, "module2");
+
+    ExtendedScmHandler scmHandler = new ScmHandlerSvnImpl();
+    scmHandler.init(this.workingCopy, "foo", "bar", null);
+
+    // A single log from rev2 is requested, the change in rev2 must not count for module2
+    Map<File, ScmModuleStatus> result = scmHandler.checkChanges(Arrays.asList(
+        new ScmModuleQuery(module1, rev1),
+        new ScmModuleQuery(module2, rev3)));
+
+    assertTrue(result.get(module1).isChanged());
+    assertFalse(result.get(module2).isChanged());
+  }
+
+  @Test
+  public void testCheckChangesConcurrently() throws Exception {
+    long rev1 = commit("Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml", "module3/pom.xml", "module4/pom.xml");
+    long rev2 = commit("Change module1", "module1/src/Foo.java");
+    commit("Change module3", "module3/src/Foo.java");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    List<File> modules = new ArrayList<>();
+    for (int i = 1; i <= 4; i++) {
+      modules.add(new File(this.workingCopy, "module" + i));
+    }
+
+    ExtendedScmHandler scmHandler = new ScmHandlerSvnImpl();
+    Properties properties = new Properties();
+    properties.setProperty("parallelism", "4");
+    scmHandler.init(this.workingCopy, "foo", "bar", properties);
+
+    Map<File, ScmModuleStatus> result = scmHandler.checkChanges(Arrays.asList(
+        new ScmModuleQuery(modules.get(0), rev1),
+        new ScmModuleQuery(modules.get(1), rev1),
+        new ScmModuleQuery(modules.get(2), rev2),
+        new ScmModuleQuery(modules.get(3), rev2)));
+
+    assertEquals(modules, new ArrayList<>(result.keySet()));
+    assertTrue(result.get(modules.get(0)).isChanged());
+    assertFalse(result.get(modules.get(1)).isChanged());
+    assertTrue(result.get(modules.get(2)).isChanged());
+    assertFalse(result.get(modules.get(3)).isChanged());
+  }
+
+  @Test
+  public void testCheckChangesExternals() throws Exception {
+    SVNURL externalRepoUrl = this.svnClientManager.getAdminClient().doCreateRepository(new File(this.testDir, "external-repo"), null, true, false);
+    File externalWorkingCopy = new File(this.testDir, "external-wc");
+    this.svnClientManager.getUpdateClient().doCheckout(externalRepoUrl, externalWorkingCopy, SVNRevision.HEAD, SVNRevision.HEAD, SVNDepth.INFINITY, false);
+    long externalRev1 = commit(externalWorkingCopy, "Initial external", "lib/pom.xml");
+    commit(externalWorkingCopy, "Change external", "lib/src/Foo.java");
+
+    long rev1 = commit("Initial", "pom.xml", "module1/pom.xml");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+    this.svnClientManager.getWCClient().doSetProperty(this.workingCopy, SVNProperty.EXTERNALS,
+        SVNPropertyValue.create(externalRepoUrl.appendPath("lib", false) + " lib"), false, SVNDepth.EMPTY, null, null);
+    commit("Add external");
+    commit("Change root", "src/Foo.java");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    File module1 = new File(this.workingCopy, "module1");
+    File lib = new File(this.workingCopy, "lib");
+
+    ExtendedScmHandler scmHandler = new ScmHandlerSvnImpl();
+    scmHandler.init(this.workingCopy, "foo", "bar", null);
+
+    // The modules belong to different repositories, so the log of each repository is requested
+    Map<File, ScmModuleStatus> result = scmHandler.checkChanges(Arrays.asList(
+        new ScmModuleQuery(module1, rev1),
+        new ScmModuleQuery(lib, externalRev1)));
+
+    assertFalse(result.get(module1).isChanged());
+    assertTrue(result.get(lib).isChanged());
+  }
+
+  @Test
+  public void testCrawlWorkingCopy() throws Exception {
+    long rev1 = commit("Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    long rev2 = commit("Change module1", "module1/src/Foo.java");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    File module1 = new File(this.workingCopy, "module1");
+    File module2 = new File(this.workingCopy, "module2");
+    File unversioned = new File(this.workingCopy, "unversioned");
+    unversioned.mkdirs();
+
+    ExtendedScmHandler scmHandler = new ScmHandlerSvnImpl();
+    scmHandler.init(this.workingCopy, "foo", "bar", null);
+
+    ExtendedScmHandler crawlingScmHandler = new ScmHandlerSvnImpl();
+    Properties properties = new Properties();
+    properties.setProperty("svnCrawlWorkingCopy", "true");
+    crawlingScmHandler.init(this.workingCopy, "foo", "bar", properties);
+
+    for (File moduleDirectory : Arrays.asList(this.workingCopy, module1, module2)) {
+      assertTrue(crawlingScmHandler.isWorkingCopy(moduleDirectory));
+      assertEquals(scmHandler.getCurrentRevisionId(moduleDirectory), crawlingScmHandler.getCurrentRevisionId(moduleDirectory));
+      assertEquals(scmHandler.getLastCommitDate(moduleDirectory), crawlingScmHandler.getLastCommitDate(moduleDirectory));
+    }
+    assertFalse(crawlingScmHandler.isWorkingCopy(unversioned));
+    assertEquals(rev2, crawlingScmHandler.getCurrentRevisionId(module1));
+
+    Map<File, ScmModuleStatus> result = crawlingScmHandler.checkChanges(Arrays.asList(
+        new ScmModuleQuery(module1, rev1),
+        new ScmModuleQuery(module2, rev1)));
+
+    assertTrue(result.get(module1).isChanged());
+    assertFalse(result.get(module2).isChanged());
+  }
+
+  @Test
+  public void testLogCache() throws Exception {
+    long rev1 = commit("Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    long rev2 = commit("Change module1", "module1/src/Foo.java");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    File module1 = new File(this.workingCopy, "module1");
+    File module2 = new File(this.workingCopy, "module2");
+    File cacheDir = new File(this.workingCopy, ".svn/nonsnapshot");
+
+    Properties properties = new Properties();
+    properties.setProperty("svnLogCache", "true");
+
+    ExtendedScmHandler scmHandler = new ScmHandlerSvnImpl();
+    scmHandler.init(this.workingCopy, "foo", "bar", properties);
+
+    Map<File, ScmModuleStatus> result = scmHandler.checkChanges(Arrays.asList(
+        new ScmModuleQuery(module1, rev1),
+        new ScmModuleQuery(module2, rev1)));
+
+    assertTrue(result.get(module1).isChanged());
+    assertFalse(result.get(module2).isChanged());
+    assertEquals(1, cacheDir.listFiles().length);
+    long cacheFileSize = cacheDir.listFiles()[0].length();
+
+    commit("Change module2", "module2/src/Foo.java");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    // New build: Only the new revision is appended to the cache
+    scmHandler = new ScmHandlerSvnImpl();
+    scmHandler.init(this.workingCopy, "foo", "bar", properties);
+
+    result = scmHandler.checkChanges(Arrays.asList(
+        new ScmModuleQuery(module1, rev2),
+        new ScmModuleQuery(module2, rev1)));
+
+    assertFalse(result.get(module1).isChanged());
+    assertTrue(result.get(module2).isChanged());
+    assertEquals(1, cacheDir.listFiles().length);
+    assertTrue(cacheDir.listFiles()[0].length() > cacheFileSize);
+
+    assertTrue(scmHandler.checkChangesSinceRevision(module1, rev1, scmHandler.getCurrentRevisionId(module1)));
+    assertFalse(scmHandler.checkChangesSinceRevision(module1, rev2, scmHandler.getCurrentRevisionId(module1)));
+
+    Date module1CommitDate = scmHandler.getLastCommitDate(module1);
+    assertFalse(scmHandler.checkChangesSinceDate(module1, new Date(module1CommitDate.getTime() + 1), module1CommitDate));
+    assertTrue(scmHandler.checkChangesSinceDate(module2, module1CommitDate, scmHandler.getLastCommitDate(module2)));
+  }
+
+  @Test
+  public void testCheckChangesSinceDate() throws Exception {
+    commit("Initial", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    File module1 = new File(this.workingCopy, "module1");
+    File module2 = new File(this.workingCopy, "module2");
+
+    ExtendedScmHandler scmHandler = new ScmHandlerSvnImpl();
+    scmHandler.init(this.workingCopy, "foo", "bar", null);
+    Date qualifierDate = new Date(scmHandler.getLastCommitDate(module1).getTime() + 1);
+
+    Thread.sleep(10);
+    commit("Change module1", "module1/src/Foo.java");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module2/pom.xml");
+    this.svnClientManager.getUpdateClient().doUpdate(this.workingCopy, SVNRevision.HEAD, SVNDepth.INFINITY, false, false);
+
+    scmHandler = new ScmHandlerSvnImpl();
+    scmHandler.init(this.workingCopy, "foo", "bar", null);
+
+    assertTrue(scmHandler.checkChangesSinceDate(module1, qualifierDate, scmHandler.getLastCommitDate(module1)));
+
+    Map<File, ScmModuleStatus> result = scmHandler.checkChanges(Arrays.asList(
+        new ScmModuleQuery(module1, qualifierDate),
+        new ScmModuleQuery(module2, qualifierDate)));
+
+    assertTrue(result.get(module1).isChanged());
+    assertFalse(result.get(module2).isChanged());
+  }
+
+  @Test
+  public void testContentFingerprint() throws Exception {
+    commit("Initial", "pom.xml", "module1/pom.xml", "module1/src/Foo.java", "module1/sub/pom.xml", "module2/pom.xml");
+    File module1 = new File(this.workingCopy, "module1");
+    File module2 = new File(this.workingCopy, "module2");
+    FileUtils.fileWrite(new File(module1, "pom.xml").getAbsolutePath(), pom("1.0.0-1", "4.11"));
+    commit("Initial module1");
+
+    Map<File, List<File>> moduleDirectories = new LinkedHashMap<>();
+    moduleDirectories.put(module1, Arrays.asList(new File(module1, "sub")));
+    moduleDirectories.put(module2, null);
+    Set<String> rewrittenArtifacts = new HashSet<>(Arrays.asList("at.nonblocking:parent", "at.nonblocking:module1"));
+
+    ExtendedScmHandler scmHandler = new ScmHandlerSvnImpl();
+    Properties properties = new Properties();
+    properties.setProperty("parallelism", "4");
+    scmHandler.init(this.workingCopy, "foo", "bar", properties);
+
+    Map<File, String> fingerprints = scmHandler.getContentFingerprints(moduleDirectories, rewrittenArtifacts);
+    String fingerprint1 = fingerprints.get(module1);
+    String fingerprint2 = fingerprints.get(module2);
+    assertNotNull(fingerprint1);
+    assertFalse(fingerprint1.equals(fingerprint2));
+
+    // Unversioned files, local modifications and nested modules don't count
+    commit("Change sub module", "module1/sub/src/Bar.java");
+    new File(module1, "target").mkdirs();
+    FileUtils.fileWrite(new File(module1, "target/out.txt").getAbsolutePath(), "Build output");
+    FileUtils.fileWrite(new File(module1, "src/Foo.java").getAbsolutePath(), "Local change");
+    FileUtils.fileWrite(new File(module2, "pom.xml").getAbsolutePath(), "Local change");
+    fingerprints = scmHandler.getContentFingerprints(moduleDirectories, rewrittenArtifacts);
+    assertEquals(fingerprint1, fingerprints.get(module1));
+    assertEquals(fingerprint2, fingerprints.get(module2));
+
+    // Versions rewritten by the plugin and the fingerprint file (added on commit) don't count either
+    FileUtils.fileWrite(new File(module1, "pom.xml").getAbsolutePath(), pom("1.0.0-123", "4.11"));
+    ContentFingerprint.write(module1, fingerprint1);
+    scmHandler.commitFiles(Arrays.asList(new File(module1, "pom.xml"), ContentFingerprint.getFile(module1)), "Update module1");
+    assertEquals(fingerprint1, scmHandler.getContentFingerprints(moduleDirectories, rewrittenArtifacts).get(module1));
+    assertEquals(fingerprint1, ContentFingerprint.read(module1));
+
+    // Committed changes and third party versions count
+    scmHandler.commitFiles(Arrays.asList(new File(module2, "pom.xml")), "Change module2");
+    FileUtils.fileWrite(new File(module1, "pom.xml").getAbsolutePath(), pom("1.0.0-123", "4.12"));
+    scmHandler.commitFiles(Arrays.asList(new File(module1, "pom.xml")), "Update junit");
+    fingerprints = scmHandler.getContentFingerprints(moduleDirectories, rewrittenArtifacts);
+    assertFalse(fingerprint1.equals(fingerprints.get(module1)));
+    assertFalse(fingerprint2.equals(fingerprints.get(module2)));
+  }
+
+  private static String pom(String version, String junitVersion) {
+    return "<project>\n" +
+        "  <parent>\n" +
+        "    <groupId>at.nonblocking</groupId>\n" +
+        "    <artifactId>parent</artifactId>\n" +
+        "    <version>" + version + "</version>\n" +
+        "  </parent>\n" +
+        "  <artifactId>module1</artifactId>\n" +
+        "  <version>" + version + "</version>\n" +
+        "  <dependencies>\n" +
+        "    <dependency>\n" +
+        "      <groupId>junit</groupId>\n" +
+        "      <artifactId>junit</artifactId>\n" +
+        "      <version>" + junitVersion + "</version>\n" +
+        "    </dependency>\n" +
+        "  </dependencies>\n" +
+        "</project>\n";
+  }
+
+  private long commit(String message, String... paths) throws Exception {
+    return commit(this.workingCopy, message, paths);
+  }
+
+  private long commit(File workingCopy, String message, String... paths) throws Exception {
+    for (String path : paths) {
+      File file = new File(workingCopy, path);
+      boolean newFile = !file.exists();
+      file.getParentFile().mkdirs();
+      PrintWriter writer = new PrintWriter(file);
+      writer.write(message);
+      writer.close();
+      if (newFile) {
+        this.svnClientManager.getWCClient().doAdd(file, false, false, false, SVNDepth.EMPTY, false, true);
+      }
+    }
+
+    return this.svnClientManager.getCommitClient().doCommit(new File[] { workingCopy }, false, message,
+        null, null, false, false, SVNDepth.INFINITY).getNewRevision();
+  }
+}
@@ -0,0 +1,291 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import static junit.framework.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotDependencyResolverException;
+import at.nonblocking.maven.nonsnapshot.impl.UpstreamDependencyHandlerDefaultImpl;
+import at.nonblocking.maven.nonsnapshot.model.MavenArtifact;
+
+public class UpstreamVersionCacheTest {
+
+  private UpstreamDependencyHandler mockUpstreamDependencyHandler = mock(UpstreamDependencyHandler.class);
+
+  private ProcessedUpstreamDependency upstreamDependency = new ProcessedUpstreamDependency(null, null, 1, null, null);
+
+  @Test
+  public void testResolveOncePerQuery() {
+    MavenArtifact artifact1 = new MavenArtifact("at.nonblocking", "upstream1", "1.0.0");
+    MavenArtifact artifact1Copy = new MavenArtifact("at.nonblocking", "upstream1", "1.0.0");
+    MavenArtifact artifact1OtherVersion = new MavenArtifact("at.nonblocking", "upstream1", "1.0.1");
+
+    when(this.mockUpstreamDependencyHandler.resolveLatestVersion(any(MavenArtifact.class), eq(this.upstreamDependency),
+        any(RepositorySystem.class), any(RepositorySystemSession.class), anyListOf(RemoteRepository.class))).thenReturn("1.2.0");
+
+    UpstreamVersionCache cache = new UpstreamVersionCache(this.mockUpstreamDependencyHandler, null, null, null);
+
+    assertEquals("1.2.0", cache.resolveLatestVersion(artifact1, this.upstreamDependency));
+    assertEquals("1.2.0", cache.resolveLatestVersion(artifact1Copy, this.upstreamDependency));
+    assertEquals("1.2.0", cache.resolveLatestVersion(artifact1, this.upstreamDependency));
+    assertEquals("1.2.0", cache.resolveLatestVersion(artifact1OtherVersion, this.upstreamDependency));
+
+    verify(this.mockUpstreamDependencyHandler, times(1)).resolveLatestVersion(artifact1, this.upstreamDependency, null, null, null);
+    verify(this.mockUpstreamDependencyHandler, times(1)).resolveLatestVersion(artifact1OtherVersion, this.upstreamDependency, null, null, null);
+    verify(this.mockUpstreamDependencyHandler, never()).resolveLatestVersion(artifact1Copy, this.upstreamDependency, null, null, null);
+    assertEquals(2, cache.getMisses());
+    assertEquals(2, cache.getHits());
+  }
+
+  @Test
+  public void testFailureCached() {
+    MavenArtifact artifact = new MavenArtifact("at.nonblocking", "upstream1", "1.0.0");
+
+    when(this.mockUpstreamDependencyHandler.resolveLatestVersion(artifact, this.upstreamDependency, null, null, null))
+        .thenThrow(new NonSnapshotDependencyResolverException("Not found"));
+
+    UpstreamVersionCache cache = new UpstreamVersionCache(this.mockUpstreamDependencyHandler, null, null, null);
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.resolveLatestVersion(artifact, this.upstreamDependency);
+        fail("Exception expected");
+      } catch (NonSnapshotDependencyResolverException e) {
+        assertEquals("Not found", e.getMessage());
+      }
+    }
+
+    verify(this.mockUpstreamDependencyHandler, times(1)).resolveLatestVersion(artifact, this.upstreamDependency, null, null, null);
+  }
+
+  @Test
+  public void testConcurrentCallersShareResolution() throws Exception {
+    final MavenArtifact artifact = new MavenArtifact("at.nonblocking", "upstream1", "1.0.0");
+    final CountDownLatch resolutionStarted = new CountDownLatch(1);
+    final CountDownLatch releaseResolution = new CountDownLatch(1);
+
+    when(this.mockUpstreamDependencyHandler.resolveLatestVersion(artifact, this.upstreamDependency, null, null, null)).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) throws Throwable {
+        resolutionStarted.countDown();
+        releaseResolution.await(10, TimeUnit.SECONDS);
+        return "1.2.0";
+      }
+    });
+
+    final UpstreamVersionCache cache = new UpstreamVersionCache(this.mockUpstreamDependencyHandler, null, null, null);
+
+    List<Callable<String>> tasks = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      tasks.add(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          if (!resolutionStarted.await(10, TimeUnit.SECONDS)) {
+            fail("Resolution not started");
+          }
+          return cache.resolveLatestVersion(artifact, upstreamDependency);
+        }
+      });
+    }
+    tasks.add(new Callable<String>() {
+      @Override
+      public String call() {
+        return cache.resolveLatestVersion(artifact, upstreamDependency);
+      }
+    });
+
+    Thread releaser = new Thread() {
+      @Override
+      public void run() {
+        try {
+          resolutionStarted.await(10, TimeUnit.SECONDS);
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          // Ignore
+        }
+        releaseResolution.countDown();
+      }
+    };
+    releaser.start();
+
+    List<String> versions = ConcurrencyUtil.invokeAll(tasks, tasks.size());
+    releaser.join();
+
+    for (String version : versions) {
+      assertEquals("1.2.0", version);
+    }
+    verify(this.mockUpstreamDependencyHandler, times(1)).resolveLatestVersion(artifact, this.upstreamDependency, null, null, null);
+    assertEquals(1, cache.getMisses());
+    assertEquals(4, cache.getHits());
+  }
+
+  @Test
+  public void testPrefetchFromLocalRepository() throws Exception {
+    File repositoryDir = new File("target/upstream-repo");
+    FileUtils.deleteDirectory(repositoryDir);
+    writeVersionsMetadata(repositoryDir, "upstream1", "1.0.0", "1.1.0", "1.2.0", "2.0.0");
+    writeVersionsMetadata(repositoryDir, "upstream2", "1.0.0", "1.0.1");
+
+    RepositorySystem repositorySystem = MavenRepositorySystemUtils.newServiceLocator().getService(RepositorySystem.class);
+    DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+    session.setLocalRepositoryManager(repositorySystem.newLocalRepositoryManager(session, new LocalRepository(repositoryDir)));
+
+    UpstreamDependencyHandler upstreamDependencyHandler = spy(new UpstreamDependencyHandlerDefaultImpl());
+
+    MavenArtifact upstream1 = new MavenArtifact("at.nonblocking", "upstream1", "1.0.0");
+    MavenArtifact upstream1Copy = new MavenArtifact("at.nonblocking", "upstream1", "1.0.0");
+    MavenArtifact upstream2 = new MavenArtifact("at.nonblocking", "upstream2", "1.0.1");
+
+    Map<MavenArtifact, ProcessedUpstreamDependency> upstreamArtifacts = new IdentityHashMap<>();
+    upstreamArtifacts.put(upstream1, this.upstreamDependency);
+    upstreamArtifacts.put(upstream1Copy, this.upstreamDependency);
+    upstreamArtifacts.put(upstream2, this.upstreamDependency);
+
+    UpstreamVersionCache cache = new UpstreamVersionCache(upstreamDependencyHandler, repositorySystem, session,
+        Collections.<RemoteRepository>emptyList(), 4, 10000);
+    try {
+      cache.prefetch(upstreamArtifacts);
+      assertEquals(2, cache.getMisses());
+
+      assertEquals("1.2.0", cache.resolveLatestVersion(upstream1, this.upstreamDependency));
+      assertEquals("1.2.0", cache.resolveLatestVersion(upstream1Copy, this.upstreamDependency));
+      assertNull(cache.resolveLatestVersion(upstream2, this.upstreamDependency));
+    } finally {
+      cache.close();
+    }
+
+    assertEquals(2, cache.getMisses());
+    verify(upstreamDependencyHandler, times(2)).resolveLatestVersion(any(MavenArtifact.class), eq(this.upstreamDependency),
+        eq(repositorySystem), eq(session), anyListOf(RemoteRepository.class));
+  }
+
+  @Test
+  public void testTimeout() {
+    MavenArtifact artifact = new MavenArtifact("at.nonblocking", "upstream1", "1.0.0");
+
+    when(this.mockUpstreamDependencyHandler.resolveLatestVersion(artifact, this.upstreamDependency, null, null, null)).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(10000);
+        return "1.2.0";
+      }
+    });
+
+    UpstreamVersionCache cache = new UpstreamVersionCache(this.mockUpstreamDependencyHandler, null, null, null, 2, 100);
+    long start = System.currentTimeMillis();
+    try {
+      cache.prefetch(Collections.singletonMap(artifact, this.upstreamDependency));
+      cache.resolveLatestVersion(artifact, this.upstreamDependency);
+      fail("Exception expected");
+    } catch (NonSnapshotDependencyResolverException e) {
+      assertTrue(System.currentTimeMillis() - start < 5000);
+    } finally {
+      cache.close();
+    }
+
+    verify(this.mockUpstreamDependencyHandler, times(1)).resolveLatestVersion(artifact, this.upstreamDependency, null, null, null);
+  }
+
+  @Test
+  public void testPersistentCache() {
+    File cacheFile = new File("target/upstream-version-cache-test.bin");
+    cacheFile.delete();
+
+    MavenArtifact newerVersion = new MavenArtifact("at.nonblocking", "upstream1", "1.0.0");
+    MavenArtifact noNewerVersion = new MavenArtifact("at.nonblocking", "upstream2", "1.0.0");
+    MavenArtifact failure = new MavenArtifact("at.nonblocking", "upstream3", "1.0.0");
+
+    when(this.mockUpstreamDependencyHandler.resolveLatestVersion(newerVersion, this.upstreamDependency, null, null, null)).thenReturn("1.2.0");
+    when(this.mockUpstreamDependencyHandler.resolveLatestVersion(noNewerVersion, this.upstreamDependency, null, null, null)).thenReturn(null);
+    when(this.mockUpstreamDependencyHandler.resolveLatestVersion(failure, this.upstreamDependency, null, null, null))
+        .thenThrow(new NonSnapshotDependencyResolverException("Connection refused"));
+
+    // First build: Everything is resolved
+    resolveAll(cacheFile, "repo1", 3600000, true, newerVersion, noNewerVersion, failure);
+    verify(this.mockUpstreamDependencyHandler, times(3)).resolveLatestVersion(any(MavenArtifact.class), eq(this.upstreamDependency),
+        any(RepositorySystem.class), any(RepositorySystemSession.class), anyListOf(RemoteRepository.class));
+
+    // Second build: Only the failed resolution is repeated
+    reset(this.mockUpstreamDependencyHandler);
+    UpstreamVersionCache cache = resolveAll(cacheFile, "repo1", 3600000, true, newerVersion, noNewerVersion, failure);
+    assertEquals(2, cache.getPersistentHits());
+    assertEquals("1.2.0", cache.resolveLatestVersion(newerVersion, this.upstreamDependency));
+    assertNull(cache.resolveLatestVersion(noNewerVersion, this.upstreamDependency));
+    verify(this.mockUpstreamDependencyHandler, never()).resolveLatestVersion(newerVersion, this.upstreamDependency, null, null, null);
+    verify(this.mockUpstreamDependencyHandler, never()).resolveLatestVersion(noNewerVersion, this.upstreamDependency, null, null, null);
+    verify(this.mockUpstreamDependencyHandler, times(1)).resolveLatestVersion(failure, this.upstreamDependency, null, null, null);
+
+    // Bypass
+    reset(this.mockUpstreamDependencyHandler);
+    cache = resolveAll(cacheFile, "repo1", 3600000, false, newerVersion, noNewerVersion);
+    assertEquals(0, cache.getPersistentHits());
+    verify(this.mockUpstreamDependencyHandler, times(1)).resolveLatestVersion(newerVersion, this.upstreamDependency, null, null, null);
+    verify(this.mockUpstreamDependencyHandler, times(1)).resolveLatestVersion(noNewerVersion, this.upstreamDependency, null, null, null);
+
+    // Other repositories
+    assertEquals(0, resolveAll(cacheFile, "repo2", 3600000, true, newerVersion).getPersistentHits());
+  }
+
+  @Test
+  public void testPersistentCacheEntryExpires() throws Exception {
+    PersistentUpstreamVersionCache persistentCache = new PersistentUpstreamVersionCache("repo1", 50);
+    persistentCache.put("key", "1.2.0");
+    assertEquals("1.2.0", persistentCache.get("key").getVersion());
+
+    Thread.sleep(100);
+
+    assertNull(persistentCache.get("key"));
+  }
+
+  private UpstreamVersionCache resolveAll(File cacheFile, String context, long timeToLive, boolean readPersistentCache, MavenArtifact... artifacts) {
+    PersistentUpstreamVersionCache persistentCache = PersistentUpstreamVersionCache.load(cacheFile, context, timeToLive);
+    UpstreamVersionCache cache = new UpstreamVersionCache(this.mockUpstreamDependencyHandler, null, null, null);
+    cache.setPersistentCache(persistentCache, readPersistentCache);
+
+    for (MavenArtifact artifact : artifacts) {
+      try {
+        cache.resolveLatestVersion(artifact, this.upstreamDependency);
+      } catch (NonSnapshotDependencyResolverException e) {
+        // Ignore
+      }
+    }
+
+    persistentCache.save(cacheFile);
+    return cache;
+  }
+
+  private static void writeVersionsMetadata(File repositoryDir, String artifactId, String... versions) throws Exception {
+    StringBuilder metadata = new StringBuilder();
+    metadata.append("<metadata>\n  <groupId>at.nonblocking</groupId>\n  <artifactId>").append(artifactId).append("</artifactId>\n");
+    metadata.append("  <versioning>\n    <versions>\n");
+    for (String version : versions) {
+      metadata.append("      <version>").append(version).append("</version>\n");
+    }
+    metadata.append("    </versions>\n  </versioning>\n</metadata>\n");
+
+    File artifactDir = new File(repositoryDir, "at/nonblocking/" + artifactId);
+    artifactDir.mkdirs();
+    FileUtils.fileWrite(new File(artifactDir, "maven-metadata-local.xml").getAbsolutePath(), "UTF-8", metadata.toString());
+  }
+
+}